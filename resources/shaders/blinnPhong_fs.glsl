@@ -3,6 +3,8 @@
 struct Material {
     sampler2D diffuse_tex1;    // diffuse map (for diffuse colour)
     sampler2D specular_tex1;   // specular map (for specular reflection)
+    sampler2DArray diffuse_array;      // texture arrays of the maps (when materialUsesTextureArrays: sampled at fs_in.TexLayers)
+    sampler2DArray specular_array;
     vec3 diffuseColour;        // diffuse colour
     vec3 specularColour;       // specular colour
     float K_a;          // ambient reflection coefficient
@@ -45,6 +47,7 @@ in VS_OUT {
     vec2 TexCoords;   // texture UV coord
     vec3 wc_normal;  // fragment normal in world coord
     vec3 wc_fragPos; // fragment position in world coord
+    flat vec4 TexLayers;        // layers of the material's texture arrays (diffuse, specular, reflection, refraction)
 } fs_in;
 
 out vec4 FragColor;
@@ -56,6 +59,7 @@ uniform DirLight dirLight;
 uniform SpotLight spotLight;
 uniform Material material;
 uniform bool materialUsesTextures;
+uniform bool materialUsesTextureArrays;    // (if materialUsesTextures) maps are layers of texture arrays
 uniform vec3 wc_cameraPos;
 uniform bool flashLightIsON;
 
@@ -74,7 +78,11 @@ void main()
 
     // get diffuse & specular colours...
     vec3 diffColour, specColour, diffComponent, specComponent;
-    if(materialUsesTextures){
+    if(materialUsesTextures && materialUsesTextureArrays){
+        // ...from layers of texture arrays (the maps...)
+        diffColour = vec3(texture(material.diffuse_array, vec3(fs_in.TexCoords, fs_in.TexLayers.x)));
+        specColour = vec3(texture(material.specular_array, vec3(fs_in.TexCoords, fs_in.TexLayers.y)));
+    } else if(materialUsesTextures){
         // ...from textures (the maps...)
         diffColour = vec3(texture(material.diffuse_tex1, fs_in.TexCoords));
         specColour = vec3(texture(material.specular_tex1, fs_in.TexCoords));
@@ -5,6 +5,10 @@ struct Material {
     sampler2D specular_tex1;   // specular map (for specular reflection)
     sampler2D reflection_tex0;   // reflection map (reflection from skybox)
     sampler2D refraction_tex0;   // refraction map (refraction from skybox)
+    sampler2DArray diffuse_array;      // texture arrays of the maps (when materialUsesTextureArrays: sampled at fs_in.TexLayers)
+    sampler2DArray specular_array;
+    sampler2DArray reflection_array;
+    sampler2DArray refraction_array;
     vec3 diffuseColour;        // diffuse colour
     vec3 specularColour;       // specular colour
     float K_a;          // ambient reflection coefficient
@@ -51,6 +55,7 @@ in VS_OUT {
     vec3 wc_normal;     // fragment normal in world coord
     vec3 wc_fragPos;    // fragment position in world coord
     vec4 lightSpace_fragPos;    // fragment position in directional light's space
+    flat vec4 TexLayers;        // layers of the material's texture arrays (diffuse, specular, reflection, refraction)
 } fs_in;
 
 out vec4 FragColor;
@@ -65,6 +70,7 @@ uniform samplerCube skybox;
 
 uniform Material material;
 uniform bool materialUsesTextures;
+uniform bool materialUsesTextureArrays;    // (if materialUsesTextures) maps are layers of texture arrays
 uniform bool isReflectiveMaterial;
 uniform bool isRefractiveMaterial;
 
@@ -102,7 +108,15 @@ void main()
         refractedVector = refract(-V, N, ratio);
     }
 
-    if(materialUsesTextures){
+    if(materialUsesTextures && materialUsesTextureArrays){
+        // ...from layers of texture arrays (the maps...)
+        vec4 diffSampleFromTex = texture(material.diffuse_array, vec3(fs_in.TexCoords, fs_in.TexLayers.x));
+        if(diffSampleFromTex.a < 0.1) discard;
+        diffColour = vec3(diffSampleFromTex);
+        specColour = vec3(texture(material.specular_array, vec3(fs_in.TexCoords, fs_in.TexLayers.y)));
+        if(isReflectiveMaterial) reflectedColour = vec3(texture(material.reflection_array, vec3(fs_in.TexCoords, fs_in.TexLayers.z))) * texture(skybox, minusVreflectedOnN).rgb;
+        if(isRefractiveMaterial) refractedColour = vec3(texture(material.refraction_array, vec3(fs_in.TexCoords, fs_in.TexLayers.w))) * texture(skybox, refractedVector).rgb;
+    } else if(materialUsesTextures){
         // ...from textures (the maps...)
         vec4 diffSampleFromTex = texture(material.diffuse_tex1, fs_in.TexCoords);
         if(diffSampleFromTex.a < 0.1) discard;
@@ -0,0 +1,29 @@
+#version 330 core
+
+layout (location = 0) in vec3 oc_pos;           // vertex position in object coord
+layout (location = 1) in vec3 oc_normal;        // vertex normal in obj coord
+layout (location = 2) in vec2 aTexCoords;       // texture UV coord
+layout (location = 3) in mat4 model_m;          // model matrix (per instance, locations 3-6)
+layout (location = 7) in mat4 normal_m;         // matrix to transform normal from oc to wc (per instance, locations 7-10)
+layout (location = 11) in vec4 texLayers;       // layers of the material's texture arrays (per instance)
+
+out VS_OUT {
+    vec2 TexCoords;     // texture UV coord
+    vec3 wc_normal;     // fragment normal in world coord
+    vec3 wc_fragPos;    // fragment position in world coord
+    vec4 lightSpace_fragPos;    // fragment position in directional light's space
+    flat vec4 TexLayers;        // layers of the material's texture arrays (diffuse, specular, reflection, refraction)
+} vs_out;
+
+uniform mat4 viewProj_m;    // view-projection matrix
+uniform mat4 lightSpace_m;  // light space model matrix
+
+void main()
+{
+    vs_out.wc_fragPos = vec3(model_m * vec4(oc_pos, 1.0));     // calculate fragment pos in wc
+    gl_Position = viewProj_m * vec4(vs_out.wc_fragPos, 1.0);   // also used as output of shader
+    vs_out.wc_normal = mat3(normal_m) * oc_normal;             // tranform normal from oc to wc
+    vs_out.TexCoords = aTexCoords;
+    vs_out.TexLayers = texLayers;
+    vs_out.lightSpace_fragPos = lightSpace_m * vec4(vs_out.wc_fragPos, 1.0);
+}
\ No newline at end of file
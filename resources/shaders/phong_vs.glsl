@@ -3,11 +3,13 @@
 layout (location = 0) in vec3 oc_pos;       // vertex position in object coord
 layout (location = 1) in vec3 oc_normal;    // vertex normal in obj coord
 layout (location = 2) in vec2 aTexCoords;    // texture UV coord
+layout (location = 11) in vec4 texLayers;    // layers of the material's texture arrays (set per draw)
 
 out VS_OUT {
     vec2 TexCoords;   // texture UV coord
     vec3 wc_normal;  // fragment normal in world coord
     vec3 wc_fragPos; // fragment position in world coord
+    flat vec4 TexLayers;        // layers of the material's texture arrays (diffuse, specular, reflection, refraction)
 } vs_out;
 
 uniform mat4 model_m;   // model matrix
@@ -20,4 +22,5 @@ void main()
     vs_out.wc_fragPos = vec3(model_m * vec4(oc_pos, 1.0));     // calculate fragment pos in wc
     vs_out.wc_normal = mat3(normal_m) * oc_normal;             // tranform normal from oc to wc
     vs_out.TexCoords = aTexCoords;
+    vs_out.TexLayers = texLayers;
 }
\ No newline at end of file
@@ -5,6 +5,10 @@ struct Material {
     sampler2D specular_tex1;   // specular map (for specular reflection)
     sampler2D reflection_tex0;   // reflection map (reflection from skybox)
     sampler2D refraction_tex0;   // refraction map (refraction from skybox)
+    sampler2DArray diffuse_array;      // texture arrays of the maps (when materialUsesTextureArrays: sampled at fs_in.TexLayers)
+    sampler2DArray specular_array;
+    sampler2DArray reflection_array;
+    sampler2DArray refraction_array;
     vec3 diffuseColour;        // diffuse colour
     vec3 specularColour;       // specular colour
     float K_a;          // ambient reflection coefficient
@@ -50,6 +54,7 @@ in VS_OUT {
     vec2 TexCoord;   // texture UV coord
     vec3 wc_normal;  // fragment normal in world coord
     vec3 wc_fragPos; // fragment position in world coord
+    flat vec4 TexLayers;        // layers of the material's texture arrays (diffuse, specular, reflection, refraction)
 } fs_in;
 
 out vec4 FragColor;
@@ -61,6 +66,7 @@ uniform DirLight dirLight;
 uniform SpotLight spotLight;
 uniform Material material;
 uniform bool materialUsesTextures;
+uniform bool materialUsesTextureArrays;    // (if materialUsesTextures) maps are layers of texture arrays
 uniform vec3 wc_cameraPos;
 uniform bool flashLightIsON;
 uniform samplerCube skybox;
@@ -96,7 +102,15 @@ void main()
         refractedVector = refract(-V, N, ratio);
     }
 
-    if(materialUsesTextures){
+    if(materialUsesTextures && materialUsesTextureArrays){
+        // ...from layers of texture arrays (the maps...)
+        vec4 diffSampleFromTex = texture(material.diffuse_array, vec3(fs_in.TexCoord, fs_in.TexLayers.x));
+        if(diffSampleFromTex.a < 0.1) discard;
+        diffColour = vec3(diffSampleFromTex);
+        specColour = vec3(texture(material.specular_array, vec3(fs_in.TexCoord, fs_in.TexLayers.y)));
+        if(isReflectiveMaterial) reflectedColour = vec3(texture(material.reflection_array, vec3(fs_in.TexCoord, fs_in.TexLayers.z))) * texture(skybox, minusVreflectedOnN).rgb;
+        if(isRefractiveMaterial) refractedColour = vec3(texture(material.refraction_array, vec3(fs_in.TexCoord, fs_in.TexLayers.w))) * texture(skybox, refractedVector).rgb;
+    } else if(materialUsesTextures){
         // ...from textures (the maps...)
         vec4 diffSampleFromTex = texture(material.diffuse_tex1, fs_in.TexCoord);
         if(diffSampleFromTex.a < 0.1) discard;
@@ -0,0 +1,11 @@
+#version 330 core
+
+layout (location = 0) in vec3 aPos;
+layout (location = 3) in mat4 model_m;  // model matrix (per instance, locations 3-6)
+
+uniform mat4 lightSpace_m;
+
+void main()
+{
+    gl_Position = lightSpace_m * model_m * vec4(aPos, 1.0);
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package graphics.core;
+
+import java.util.Arrays;
+
+/**
+ * Keeps per-frame counters of the work done (or avoided) by the graphics framework,
+ * so that the effect of optimisations can be checked while the application is running.
+ *
+ * Counters are accumulated while a frame is being rendered; endFrame() must be called
+ * once at the end of every frame, which makes that frame's values available through
+ * the getters & resets the counters for the next frame.
+ */
+public class FrameStats {
+
+    /**
+     * Counters that can be recorded.
+     */
+    public enum Counter {
+        UNIFORM_LOCATION_QUERIES_AVOIDED,   // glGetUniformLocation calls replaced by a cached lookup
+        INACTIVE_UNIFORM_UPLOADS_SKIPPED,   // glUniform* calls skipped bc the uniform isn't active in the program
+        ENTITIES_SUBMITTED,                 // drawable entities drawn (summed over all render passes)
+        ENTITIES_CULLED,                    // drawable entities skipped bc they're outside the pass's frustum
+        DRAW_CALLS,                         // glDrawElements* calls issued for meshes (summed over all render passes)
+        INSTANCED_ENTITIES,                 // drawable entities drawn as part of an instanced draw call
+        SHADER_BINDS_SKIPPED,               // program switches avoided by sorting the render queue (switches in push order - in sorted order)
+        MATERIAL_BINDS_SKIPPED,             // material texture binds & uploads skipped by the render queue bc it was already bound
+        VAO_BINDS_SKIPPED,                  // glBindVertexArray calls skipped by the render queue bc the VAO was already bound
+        MESHES_UPLOADED,                    // asynchronously loaded meshes uploaded onto the GPU
+        TEXTURE_BYTES_UPLOADED              // bytes of texture data streamed onto the GPU (through pixel buffer objs)
+    }
+
+    private static final long[] currentFrame = new long[Counter.values().length];
+    private static final long[] lastFrame = new long[Counter.values().length];
+    private static long frameCount = 0;
+
+    /**
+     * Increment the given counter by 1 for the current frame.
+     * @param counter {@link Counter} to increment
+     */
+    public static void increment(Counter counter){
+        currentFrame[counter.ordinal()]++;
+    }
+
+    /**
+     * Increment the given counter by the given amount for the current frame.
+     * @param counter {@link Counter} to increment
+     * @param amount amount to add to the counter
+     */
+    public static void add(Counter counter, long amount){
+        currentFrame[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Mark the end of the current frame: the counters of the frame become available
+     * through getLastFrameValue() and are reset for the next frame.
+     */
+    public static void endFrame(){
+        System.arraycopy(currentFrame, 0, lastFrame, 0, currentFrame.length);
+        Arrays.fill(currentFrame, 0);
+        frameCount++;
+    }
+
+    /**
+     * Returns the value the given counter had at the end of the last complete frame.
+     * @param counter {@link Counter} to get value of
+     * @return value of counter for the last complete frame
+     */
+    public static long getLastFrameValue(Counter counter){
+        return lastFrame[counter.ordinal()];
+    }
+
+    /**
+     * Returns a human readable report of all counters for the last complete frame.
+     * @return {@link String} with a line per counter
+     */
+    public static String getLastFrameReport(){
+        StringBuilder report = new StringBuilder("--- frame " + frameCount + " stats ---");
+        for(Counter counter : Counter.values()){
+            report.append('\n').append(counter.name()).append(": ").append(lastFrame[counter.ordinal()]);
+        }
+        return report.toString();
+    }
+
+    public static long getFrameCount() {
+        return frameCount;
+    }
+}
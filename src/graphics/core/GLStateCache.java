@@ -0,0 +1,251 @@
+package graphics.core;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Keeps track of the OpenGL state set through it, so that calls which wouldn't change the
+ * state (e.g. binding the program that's already in use) aren't sent to the driver.
+ * Tracks:
+ *      - program in use, bound VAO & bound framebuffer
+ *      - active texture unit, & the 2D, 2D array & cubemap textures bound to each unit
+ *      - whether face culling, depth testing, blending & multisampling are enabled
+ *      - front face winding, faces culled, depth function & viewport
+ *
+ * ! For the cache to be correct, this state must only be changed through this class.
+ *   If it's changed otherwise (or objects that might be bound are deleted), invalidate() must be called.
+ *
+ * Keeps a per-frame histogram of the calls issued to OpenGL & those filtered out, for each type of call.
+ * endFrame() must be called once at the end of every frame (as for {@link FrameStats}).
+ */
+public class GLStateCache {
+
+    /**
+     * Types of calls which go through the cache.
+     */
+    public enum Call {
+        USE_PROGRAM,
+        BIND_VERTEX_ARRAY,
+        BIND_FRAMEBUFFER,
+        ACTIVE_TEXTURE,
+        BIND_TEXTURE,
+        ENABLE_DISABLE,
+        FRONT_FACE,
+        CULL_FACE,
+        DEPTH_FUNC,
+        VIEWPORT
+    }
+
+    private static final int UNKNOWN = -1;          // value of state that isn't known (e.g. after invalidate())
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int[] CAPABILITIES = {GL_CULL_FACE, GL_DEPTH_TEST, GL_BLEND, GL_MULTISAMPLE};
+
+    private static int program = UNKNOWN;
+    private static int vertexArray = UNKNOWN;
+    private static int framebuffer = UNKNOWN;
+    private static int activeTextureUnit = UNKNOWN;
+    private static final int[] textures2D = new int[MAX_TEXTURE_UNITS];      // 2D texture bound to each unit
+    private static final int[] texturesCubeMap = new int[MAX_TEXTURE_UNITS]; // cubemap texture bound to each unit
+    private static final int[] textures2DArray = new int[MAX_TEXTURE_UNITS]; // 2D array texture bound to each unit
+    private static final int[] capabilityStates = new int[CAPABILITIES.length];    // 1 if enabled, 0 if disabled
+    private static int frontFace = UNKNOWN;
+    private static int cullFace = UNKNOWN;
+    private static int depthFunc = UNKNOWN;
+    private static final int[] viewport = new int[4];
+
+    private static final long[] issued = new long[Call.values().length];
+    private static final long[] filtered = new long[Call.values().length];
+    private static final long[] lastFrameIssued = new long[Call.values().length];
+    private static final long[] lastFrameFiltered = new long[Call.values().length];
+
+    static {
+        invalidate();
+    }
+
+    /**
+     * Forget all the cached state, so that the next call of each type is always issued.
+     */
+    public static void invalidate(){
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        framebuffer = UNKNOWN;
+        activeTextureUnit = UNKNOWN;
+        Arrays.fill(textures2D, UNKNOWN);
+        Arrays.fill(texturesCubeMap, UNKNOWN);
+        Arrays.fill(textures2DArray, UNKNOWN);
+        Arrays.fill(capabilityStates, UNKNOWN);
+        frontFace = UNKNOWN;
+        cullFace = UNKNOWN;
+        depthFunc = UNKNOWN;
+        Arrays.fill(viewport, UNKNOWN);
+    }
+
+    /**
+     * Records whether a call is issued or filtered out.
+     * @return issue (for convenience)
+     */
+    private static boolean record(Call call, boolean issue){
+        if(issue) issued[call.ordinal()]++;
+        else filtered[call.ordinal()]++;
+        return issue;
+    }
+
+    // ---------- objects ----------
+
+    public static void useProgram(int programHandle){
+        if(record(Call.USE_PROGRAM, programHandle != program)){
+            glUseProgram(programHandle);
+            program = programHandle;
+        }
+    }
+
+    public static void bindVertexArray(int vaoHandle){
+        if(record(Call.BIND_VERTEX_ARRAY, vaoHandle != vertexArray)){
+            glBindVertexArray(vaoHandle);
+            vertexArray = vaoHandle;
+        }
+    }
+
+    /**
+     * Bind the given framebuffer to the GL_FRAMEBUFFER target (both read & draw).
+     */
+    public static void bindFramebuffer(int fboHandle){
+        if(record(Call.BIND_FRAMEBUFFER, fboHandle != framebuffer)){
+            glBindFramebuffer(GL_FRAMEBUFFER, fboHandle);
+            framebuffer = fboHandle;
+        }
+    }
+
+    // ---------- textures ----------
+
+    /**
+     * Set the active texture unit.
+     * @param unit index of the texture unit (0 for GL_TEXTURE0...)
+     */
+    public static void activeTexture(int unit){
+        if(record(Call.ACTIVE_TEXTURE, unit != activeTextureUnit)){
+            glActiveTexture(GL_TEXTURE0 + unit);
+            activeTextureUnit = unit;
+        }
+    }
+
+    /**
+     * Bind the given texture to the given target of the active texture unit.
+     * @param target GL_TEXTURE_2D, GL_TEXTURE_2D_ARRAY or GL_TEXTURE_CUBE_MAP (other targets aren't cached)
+     * @param textureHandle handle of the texture to bind (0 to unbind)
+     */
+    public static void bindTexture(int target, int textureHandle){
+        int[] bound = target == GL_TEXTURE_2D ? textures2D
+                : (target == GL_TEXTURE_CUBE_MAP ? texturesCubeMap : (target == GL_TEXTURE_2D_ARRAY ? textures2DArray : null));
+        boolean isCached = bound != null && activeTextureUnit >= 0 && activeTextureUnit < MAX_TEXTURE_UNITS;
+
+        if(record(Call.BIND_TEXTURE, !isCached || bound[activeTextureUnit] != textureHandle)){
+            glBindTexture(target, textureHandle);
+            if(isCached) bound[activeTextureUnit] = textureHandle;
+        }
+    }
+
+    /**
+     * Bind the given texture to the given target of the given texture unit (which becomes the active unit).
+     * @param unit index of the texture unit (0 for GL_TEXTURE0...)
+     * @param target GL_TEXTURE_2D, GL_TEXTURE_2D_ARRAY or GL_TEXTURE_CUBE_MAP (other targets aren't cached)
+     * @param textureHandle handle of the texture to bind (0 to unbind)
+     */
+    public static void bindTexture(int unit, int target, int textureHandle){
+        activeTexture(unit);
+        bindTexture(target, textureHandle);
+    }
+
+    // ---------- fixed function state ----------
+
+    /**
+     * Enable or disable the given capability (e.g. GL_CULL_FACE).
+     * Only GL_CULL_FACE, GL_DEPTH_TEST, GL_BLEND & GL_MULTISAMPLE are cached.
+     */
+    public static void setEnabled(int capability, boolean enabled){
+        int i = 0;
+        while(i < CAPABILITIES.length && CAPABILITIES[i] != capability) i++;
+        int state = enabled ? 1 : 0;
+
+        if(record(Call.ENABLE_DISABLE, i == CAPABILITIES.length || capabilityStates[i] != state)){
+            if(enabled) glEnable(capability);
+            else glDisable(capability);
+            if(i < CAPABILITIES.length) capabilityStates[i] = state;
+        }
+    }
+
+    public static void frontFace(int winding){
+        if(record(Call.FRONT_FACE, winding != frontFace)){
+            glFrontFace(winding);
+            frontFace = winding;
+        }
+    }
+
+    public static void cullFace(int mode){
+        if(record(Call.CULL_FACE, mode != cullFace)){
+            glCullFace(mode);
+            cullFace = mode;
+        }
+    }
+
+    public static void depthFunc(int func){
+        if(record(Call.DEPTH_FUNC, func != depthFunc)){
+            glDepthFunc(func);
+            depthFunc = func;
+        }
+    }
+
+    public static void viewport(int x, int y, int width, int height){
+        if(record(Call.VIEWPORT, viewport[0] != x || viewport[1] != y || viewport[2] != width || viewport[3] != height)){
+            glViewport(x, y, width, height);
+            viewport[0] = x;
+            viewport[1] = y;
+            viewport[2] = width;
+            viewport[3] = height;
+        }
+    }
+
+    // ---------- stats ----------
+
+    /**
+     * Mark the end of the current frame: the histogram of the frame becomes available
+     * through the getters and is reset for the next frame.
+     */
+    public static void endFrame(){
+        System.arraycopy(issued, 0, lastFrameIssued, 0, issued.length);
+        System.arraycopy(filtered, 0, lastFrameFiltered, 0, filtered.length);
+        Arrays.fill(issued, 0);
+        Arrays.fill(filtered, 0);
+    }
+
+    /**
+     * Returns nº of calls of the given type issued to OpenGL in the last complete frame.
+     */
+    public static long getLastFrameIssued(Call call){
+        return lastFrameIssued[call.ordinal()];
+    }
+
+    /**
+     * Returns nº of calls of the given type filtered out (bc they wouldn't change the state) in the last complete frame.
+     */
+    public static long getLastFrameFiltered(Call call){
+        return lastFrameFiltered[call.ordinal()];
+    }
+
+    /**
+     * Returns a human readable histogram of the calls issued & filtered out in the last complete frame.
+     * @return {@link String} with a line per type of call
+     */
+    public static String getLastFrameReport(){
+        StringBuilder report = new StringBuilder("--- GL state calls (issued / filtered) ---");
+        for(Call call : Call.values()){
+            report.append('\n').append(call.name()).append(": ")
+                    .append(lastFrameIssued[call.ordinal()]).append(" / ").append(lastFrameFiltered[call.ordinal()]);
+        }
+        return report.toString();
+    }
+}
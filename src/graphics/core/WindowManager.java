@@ -41,7 +41,7 @@ public class WindowManager {
         // make the OpenGL context current
         glfwMakeContextCurrent(window);
         createCapabilities();  // necessary here
-        glViewport(0, 0, SCR_WIDTH, SCR_HEIGHT);   // set OpenGL window/viewport (OpenGL will render in this viewport)
+        GLStateCache.viewport(0, 0, SCR_WIDTH, SCR_HEIGHT);   // set OpenGL window/viewport (OpenGL will render in this viewport)
 
         // when working w/my 2nd monitor todo
         //GLFWVidMode vid = glfwGetVideoMode(glfwGetPrimaryMonitor());
@@ -0,0 +1,187 @@
+package graphics.core.io;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.stream.IntStream;
+
+/**
+ * CPU encoder of the S3TC block compressed texture formats:
+ *      - BC1 (DXT1): RGB, 8 bytes per 4x4 block (2 RGB565 endpoints & a 2 bit index per pixel)
+ *      - BC3 (DXT5): RGBA, 16 bytes per 4x4 block (an alpha block w/2 8 bit endpoints & a 3 bit index per pixel,
+ *        followed by a BC1 colour block)
+ * Colour endpoints are fit along the principal axis of each block's colours ("range fit"), & each pixel then
+ * uses the nearest colour of the block's palette. Blocks are encoded in parallel (by rows of blocks).
+ */
+class BlockCompressor {
+
+    static final int BC1_BLOCK_SIZE = 8;
+    static final int BC3_BLOCK_SIZE = 16;
+
+    /**
+     * Returns the size, in bytes, of an image of the given size compressed w/blocks of the given size.
+     */
+    static int getCompressedSize(int width, int height, int blockSize){
+        return ((width + 3) / 4) * ((height + 3) / 4) * blockSize;
+    }
+
+    /**
+     * Compress the given image to BC1 (if it has 3 components) or BC3 (if it has 4).
+     * Images whose size isn't a multiple of 4 are padded by repeating their last row/column.
+     * @param pixels image data, 1 byte per component, rows stored contiguously
+     * @param width width of the image
+     * @param height height of the image
+     * @param numOfComponents 3 (RGB) or 4 (RGBA)
+     * @return direct buffer w/the compressed blocks, in rows of blocks
+     */
+    static ByteBuffer compress(ByteBuffer pixels, int width, int height, int numOfComponents){
+        boolean hasAlpha = numOfComponents == 4;
+        int blockSize = hasAlpha ? BC3_BLOCK_SIZE : BC1_BLOCK_SIZE;
+        int blocksX = (width + 3) / 4, blocksY = (height + 3) / 4;
+        ByteBuffer blocks = BufferUtils.createByteBuffer(blocksX * blocksY * blockSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        IntStream.range(0, blocksY).parallel().forEach(by -> {
+            int[] rgba = new int[16 * 4];   // pixels of the block
+            float[] work = new float[16 * 3];
+            for (int bx = 0; bx < blocksX; bx++) {
+                // gather block (clamped at the image's edges)
+                for (int i = 0; i < 16; i++) {
+                    int x = Math.min(bx * 4 + (i & 3), width - 1), y = Math.min(by * 4 + (i >> 2), height - 1);
+                    int src = (y * width + x) * numOfComponents;
+                    for (int c = 0; c < 4; c++) rgba[i * 4 + c] = c < numOfComponents ? pixels.get(src + c) & 0xFF : 255;
+                }
+
+                int dst = (by * blocksX + bx) * blockSize;
+                if (hasAlpha) {
+                    encodeAlphaBlock(rgba, blocks, dst);
+                    dst += 8;
+                }
+                encodeColourBlock(rgba, work, blocks, dst);
+            }
+        });
+        return blocks;
+    }
+
+    /**
+     * Encode the colours of the given block (16 RGBA pixels) as a BC1 block (always in 4 colour mode).
+     */
+    private static void encodeColourBlock(int[] rgba, float[] colours, ByteBuffer dst, int offset){
+        // mean & covariance of the colours
+        float meanR = 0, meanG = 0, meanB = 0;
+        for (int i = 0; i < 16; i++) {
+            colours[i * 3] = rgba[i * 4];
+            colours[i * 3 + 1] = rgba[i * 4 + 1];
+            colours[i * 3 + 2] = rgba[i * 4 + 2];
+            meanR += colours[i * 3];
+            meanG += colours[i * 3 + 1];
+            meanB += colours[i * 3 + 2];
+        }
+        meanR /= 16; meanG /= 16; meanB /= 16;
+        float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+        for (int i = 0; i < 16; i++) {
+            float r = colours[i * 3] - meanR, g = colours[i * 3 + 1] - meanG, b = colours[i * 3 + 2] - meanB;
+            rr += r * r; rg += r * g; rb += r * b;
+            gg += g * g; gb += g * b; bb += b * b;
+        }
+
+        // principal axis (power iteration, starting from the luminance axis)
+        float axisR = 0.299f, axisG = 0.587f, axisB = 0.114f;
+        for (int iteration = 0; iteration < 8; iteration++) {
+            float r = rr * axisR + rg * axisG + rb * axisB;
+            float g = rg * axisR + gg * axisG + gb * axisB;
+            float b = rb * axisR + gb * axisG + bb * axisB;
+            float length = Math.max(Math.max(Math.abs(r), Math.abs(g)), Math.abs(b));
+            if (length < 1e-6f) break;  // (all colours (nearly) equal: keep the current axis)
+            axisR = r / length; axisG = g / length; axisB = b / length;
+        }
+        float lengthSquared = axisR * axisR + axisG * axisG + axisB * axisB;
+
+        // endpoints: extremes of the colours' projections on the axis
+        float minProj = Float.POSITIVE_INFINITY, maxProj = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < 16; i++) {
+            float proj = ((colours[i * 3] - meanR) * axisR + (colours[i * 3 + 1] - meanG) * axisG + (colours[i * 3 + 2] - meanB) * axisB) / lengthSquared;
+            minProj = Math.min(minProj, proj);
+            maxProj = Math.max(maxProj, proj);
+        }
+        int colour0 = toRGB565(meanR + axisR * maxProj, meanG + axisG * maxProj, meanB + axisB * maxProj);
+        int colour1 = toRGB565(meanR + axisR * minProj, meanG + axisG * minProj, meanB + axisB * minProj);
+        if (colour0 < colour1) {    // colour0 > colour1 selects 4 colour mode
+            int swap = colour0; colour0 = colour1; colour1 = swap;
+        }
+
+        int indices = 0;
+        if (colour0 != colour1) {
+            // palette: endpoints & 2 colours in between
+            int[] palette = new int[12];
+            fromRGB565(colour0, palette, 0);
+            fromRGB565(colour1, palette, 3);
+            for (int c = 0; c < 3; c++) {
+                palette[6 + c] = (2 * palette[c] + palette[3 + c]) / 3;
+                palette[9 + c] = (palette[c] + 2 * palette[3 + c]) / 3;
+            }
+            for (int i = 0; i < 16; i++) {
+                int best = 0, bestDist = Integer.MAX_VALUE;
+                for (int p = 0; p < 4; p++) {
+                    int dr = rgba[i * 4] - palette[p * 3], dg = rgba[i * 4 + 1] - palette[p * 3 + 1], db = rgba[i * 4 + 2] - palette[p * 3 + 2];
+                    int dist = dr * dr + dg * dg + db * db;
+                    if (dist < bestDist) { best = p; bestDist = dist; }
+                }
+                indices |= best << (i * 2);
+            }
+        }   // (else all pixels use colour0)
+
+        dst.putShort(offset, (short) colour0);
+        dst.putShort(offset + 2, (short) colour1);
+        dst.putInt(offset + 4, indices);
+    }
+
+    /**
+     * Encode the alphas of the given block (16 RGBA pixels) as a BC3 alpha block (in 8 alpha mode).
+     */
+    private static void encodeAlphaBlock(int[] rgba, ByteBuffer dst, int offset){
+        int alpha0 = 0, alpha1 = 255;
+        for (int i = 0; i < 16; i++) {
+            alpha0 = Math.max(alpha0, rgba[i * 4 + 3]);
+            alpha1 = Math.min(alpha1, rgba[i * 4 + 3]);
+        }
+
+        long indices = 0;
+        if (alpha0 != alpha1) {     // alpha0 > alpha1 selects 8 alpha mode
+            // palette: index 0 & 1 are the endpoints, 2 to 7 are in between (from alpha0 to alpha1)
+            int[] palette = new int[8];
+            palette[0] = alpha0;
+            palette[1] = alpha1;
+            for (int p = 1; p <= 6; p++) palette[p + 1] = ((7 - p) * alpha0 + p * alpha1) / 7;
+            for (int i = 0; i < 16; i++) {
+                int best = 0, bestDist = Integer.MAX_VALUE;
+                for (int p = 0; p < 8; p++) {
+                    int dist = Math.abs(rgba[i * 4 + 3] - palette[p]);
+                    if (dist < bestDist) { best = p; bestDist = dist; }
+                }
+                indices |= (long) best << (i * 3);
+            }
+        }   // (else all pixels use alpha0)
+
+        dst.put(offset, (byte) alpha0);
+        dst.put(offset + 1, (byte) alpha1);
+        for (int b = 0; b < 6; b++) dst.put(offset + 2 + b, (byte) (indices >>> (b * 8)));
+    }
+
+    private static int toRGB565(float r, float g, float b){
+        int r5 = Math.round(Math.min(Math.max(r, 0.0f), 255.0f) * 31 / 255.0f);
+        int g6 = Math.round(Math.min(Math.max(g, 0.0f), 255.0f) * 63 / 255.0f);
+        int b5 = Math.round(Math.min(Math.max(b, 0.0f), 255.0f) * 31 / 255.0f);
+        return (r5 << 11) | (g6 << 5) | b5;
+    }
+
+    /**
+     * Expand the given RGB565 colour to 8 bits per component (as the GPU does), into the given array at the given offset.
+     */
+    private static void fromRGB565(int colour, int[] dst, int offset){
+        int r5 = (colour >> 11) & 0x1F, g6 = (colour >> 5) & 0x3F, b5 = colour & 0x1F;
+        dst[offset] = (r5 << 3) | (r5 >> 2);
+        dst[offset + 1] = (g6 << 2) | (g6 >> 4);
+        dst[offset + 2] = (b5 << 3) | (b5 >> 2);
+    }
+}
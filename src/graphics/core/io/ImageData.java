@@ -1,24 +1,21 @@
 package graphics.core.io;
 
-import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
 
 /**
  * Encapsulates data from an image that is loaded in ImageLoader.loadImage(...).
  * This data includes:
- *      - BufferedImage & ByteBuffer representations of the image data
+ *      - ByteBuffer w/the image's pixels
  *      - width & height of the image
  */
 public class ImageData {
-    private BufferedImage bufferedImage;
     private ByteBuffer byteBuffer;
     private int width, height;
 
-    ImageData(BufferedImage bufferedImage, ByteBuffer byteBuffer){
-        this.bufferedImage = bufferedImage;
+    ImageData(ByteBuffer byteBuffer, int width, int height){
         this.byteBuffer = byteBuffer;
-        this.width = bufferedImage.getWidth();
-        this.height = bufferedImage.getHeight();
+        this.width = width;
+        this.height = height;
     }
 
     public ByteBuffer getByteBuffer() {
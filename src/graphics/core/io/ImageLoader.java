@@ -3,29 +3,49 @@ package graphics.core.io;
 import org.lwjgl.BufferUtils;
 
 import javax.imageio.ImageIO;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
 
 /**
  * To load images from files.
+ * The pixels are converted to RGB(A) bytes, & flipped vertically if needed, in a single pass over the image:
+ * read straight from the image's raster for the common image types (byte interleaved, e.g. PNG & JPEG, & int
+ * packed RGB/ARGB), or else row by row through BufferedImage.getRGB(). Rows are converted in parallel.
+ * Images can be loaded from any thread (e.g. decoded concurrently by {@link TextureLoader}).
  */
 public class ImageLoader {
 
-    private static boolean flipVertically = true;   // true if must flip img vertically when loading it
+    /**
+     * Loads the specified image (flipped vertically, as needed for OpenGL textures) and returns its image data.
+     * @param filename {@link String} filename/filepath of the image file to load
+     * @param isRGBA true if should interpret image data as RGBA instead of RGB
+     * @return {@link ImageData} object containin the image's data.
+     */
+    public static ImageData loadImage(String filename, boolean isRGBA){
+        return loadImage(filename, isRGBA, true);
+    }
 
     /**
      * Loads the specified image and returns its image data:
-     *      - BufferedImage & ByteBuffer representations of the image data
+     *      - ByteBuffer w/the image's pixels (RGB or RGBA, 1 byte per component)
      *      - width & height of the image
      * @param filename {@link String} filename/filepath of the image file to load
      * @param isRGBA true if should interpret image data as RGBA instead of RGB
+     * @param flipVertically true if must flip img vertically when loading it (OpenGL 0.0 texture y-coord at
+     *                       bottom-left corner; img has it at top-left), false for cubemap texture images
      * @return {@link ImageData} object containin the image's data.
      */
-    public static ImageData loadImage(String filename, boolean isRGBA){
+    public static ImageData loadImage(String filename, boolean isRGBA, boolean flipVertically){
         // load image from file
         BufferedImage img;
         try {
@@ -33,44 +53,96 @@ public class ImageLoader {
         } catch (IOException e) {
             throw new RuntimeException("Failed to load texture image file: " + filename);
         }
+        if(img == null) throw new RuntimeException("Unsupported texture image file format: " + filename);
 
         // get texture width & height
         int width = img.getWidth();
         int height = img.getHeight();
+        int numOfComponents = isRGBA ? 4 : 3;   //4 for RGBA, 3 for RGB
 
-        if(flipVertically) {
-            // flip image vertically (OpenGL 0.0 texture y-coord at top-left corner; img has it at bottom-left)
-            AffineTransform tx = AffineTransform.getScaleInstance(1, -1);
-            tx.translate(0, -img.getHeight());
-            AffineTransformOp op = new AffineTransformOp(tx, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-            img = op.filter(img, null);
-        } // must not flip vertically for cubemap texture images
+        // convert BufferedImage to ByteBuffer for OpenGL functions (flipped vertically if needed)
+        ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * numOfComponents);
+        RowConverter converter = getRowConverter(img, isRGBA);
+        IntStream.range(0, height).parallel().forEach(y -> {
+            byte[] row = new byte[width * numOfComponents];
+            converter.convert(y, row);
+            ByteBuffer dst = buffer.duplicate();
+            dst.position((flipVertically ? height - 1 - y : y) * row.length);
+            dst.put(row);
+        });
 
-        // convert BufferedImage to ByteBuffer for OpenGL functions
-        int[] pixels = new int[width*height];
-        img.getRGB(0, 0, width, height, pixels, 0, width);
+        // create ImageData obj to return the img's info (the BufferedImage can then be garbage collected)
+        return new ImageData(buffer, width, height);
+    }
 
-        ByteBuffer buffer = BufferUtils.createByteBuffer(width * height * (isRGBA ? 4 : 3)); //4 for RGBA, 3 for RGB
+    /**
+     * Converts a row of an image's pixels to RGB(A) bytes.
+     */
+    private interface RowConverter {
+        void convert(int y, byte[] row);
+    }
 
-        for(int y = 0; y < height; y++){
-            for(int x = 0; x < width; x++){
-                int pixel = pixels[y * width + x];
-                buffer.put((byte) ((pixel >> 16) & 0xFF));     // Red component
-                buffer.put((byte) ((pixel >> 8 ) & 0xFF));     // Green component
-                buffer.put((byte) ((pixel >> 0 ) & 0xFF));     // Blue component
-                if(isRGBA) buffer.put((byte) ((pixel >> 24) & 0xFF));     // Alpha component (if using RGBA)
-            }
-        }
+    /**
+     * Returns the fastest {@link RowConverter} for the given image: one which reads the raster's backing
+     * array directly if its layout is known, else one which uses getRGB().
+     */
+    private static RowConverter getRowConverter(BufferedImage img, boolean isRGBA){
+        int width = img.getWidth();
+        Raster raster = img.getRaster();
+        ColorModel colourModel = img.getColorModel();
+        boolean isPlain = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0  // (not a sub-image)
+                && colourModel.getColorSpace().isCS_sRGB() && !colourModel.isAlphaPremultiplied();
 
-        buffer.flip(); // important!
+        // bytes interleaved in the order given by the band offsets (e.g. TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR)
+        if(isPlain && colourModel instanceof ComponentColorModel && raster.getDataBuffer() instanceof DataBufferByte
+                && raster.getSampleModel() instanceof PixelInterleavedSampleModel
+                && (raster.getNumBands() == 3 || raster.getNumBands() == 4)){
+            PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int offset = raster.getDataBuffer().getOffset();
+            int scanlineStride = sampleModel.getScanlineStride(), pixelStride = sampleModel.getPixelStride();
+            int[] bandOffsets = sampleModel.getBandOffsets();
+            boolean hasAlpha = raster.getNumBands() == 4;
+            return (y, row) -> {
+                int src = offset + y * scanlineStride, dst = 0;
+                for(int x = 0; x < width; x++, src += pixelStride){
+                    row[dst++] = data[src + bandOffsets[0]];    // Red component
+                    row[dst++] = data[src + bandOffsets[1]];    // Green component
+                    row[dst++] = data[src + bandOffsets[2]];    // Blue component
+                    if(isRGBA) row[dst++] = hasAlpha ? data[src + bandOffsets[3]] : (byte) 0xFF;  // Alpha component (if using RGBA)
+                }
+            };
+        }
 
-        // create ImageData obj to return the img's info
-        ImageData imgData = new ImageData(img, buffer);
+        // ints packed as (A)RGB (TYPE_INT_RGB, TYPE_INT_ARGB)
+        if(isPlain && (img.getType() == BufferedImage.TYPE_INT_RGB || img.getType() == BufferedImage.TYPE_INT_ARGB)
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel){
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int offset = raster.getDataBuffer().getOffset();
+            int scanlineStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            boolean hasAlpha = img.getType() == BufferedImage.TYPE_INT_ARGB;
+            return (y, row) -> convertARGB(data, offset + y * scanlineStride, width, hasAlpha, isRGBA, row);
+        }
 
-        return imgData;
+        // any other image (e.g. indexed or greyscale): through getRGB(), which converts each pixel to ARGB
+        return (y, row) -> {
+            int[] pixels = new int[width];
+            img.getRGB(0, y, width, 1, pixels, 0, width);
+            convertARGB(pixels, 0, width, true, isRGBA, row);
+        };
     }
 
-    public static void setFlipVertically(boolean flipVertically) {
-        ImageLoader.flipVertically = flipVertically;
+    /**
+     * Convert a row of pixels packed as ARGB ints into RGB(A) bytes.
+     */
+    private static void convertARGB(int[] pixels, int offset, int width, boolean hasAlpha, boolean isRGBA, byte[] row){
+        int dst = 0;
+        for(int x = 0; x < width; x++){
+            int pixel = pixels[offset + x];
+            row[dst++] = (byte) ((pixel >> 16) & 0xFF);     // Red component
+            row[dst++] = (byte) ((pixel >> 8 ) & 0xFF);     // Green component
+            row[dst++] = (byte) ((pixel >> 0 ) & 0xFF);     // Blue component
+            if(isRGBA) row[dst++] = hasAlpha ? (byte) ((pixel >> 24) & 0xFF) : (byte) 0xFF;     // Alpha component (if using RGBA)
+        }
     }
 }
@@ -0,0 +1,162 @@
+package graphics.core.io;
+
+import graphics.shapes.meshes.Mesh;
+import graphics.shapes.meshes.MeshData;
+import graphics.shapes.meshes.VertexFormat;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * On-disk cache of imported meshes, so that models needn't be re-imported through Assimp on every startup.
+ * Each mesh is stored in a binary file, in the cache directory, named after the hash of the model file's
+ * content & the vertex format (so editing the model file invalidates its cached mesh).
+ *
+ * File format (little endian):
+ *      - header: magic ("MESH"), version, vertex format, position size, flags (bit 0: normals, bit 1: tex coords),
+ *                nº of vertices, nº of indices, bounds (min xyz, max xyz, centre xyz, radius), UV density,
+ *                size of the vertex data & size of the index data (in bytes)
+ *      - vertex data, packed in the vertex format's layout (see {@link MeshData})
+ *      - index data (16 bit indices if possible, else 32 bit)
+ * Cached files are memory-mapped when loaded, and their data handed straight to glBufferData.
+ */
+class MeshCache {
+    private static final int MAGIC = 0x4853454D;    // "MESH" read as a little endian int
+    private static final int VERSION = 3;           // must be incremented whenever the format or mesh processing changes
+    private static final int HEADER_SIZE = 20 * 4;
+
+    private static final String CACHE_DIRECTORY = "./cache/meshes";
+
+    /**
+     * Returns the path of the cache file for the given model file & vertex format, or null if the cache
+     * can't be used (e.g. the model file can't be read, or the platform isn't little endian).
+     * @param modelFilename filename/filepath of the model file
+     * @param vertexFormat {@link VertexFormat} of the mesh
+     */
+    static Path getCacheFile(String modelFilename, VertexFormat vertexFormat){
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) return null;   // (cached data must be in native order)
+
+        String hash = hashFile(modelFilename);
+        if (hash == null) return null;
+        return Paths.get(CACHE_DIRECTORY, hash + "_" + vertexFormat.name().toLowerCase() + ".mesh");
+    }
+
+    /**
+     * Returns the (hex) SHA-1 hash of the given file's content, or null if it can't be read.
+     * (also used to name the files of the {@link TextureCache})
+     */
+    static String hashFile(String filename){
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) hash.append(String.format("%02x", b));
+            return hash.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Load the mesh data in the given cache file, by memory-mapping it.
+     * @param cacheFile path of the cache file (see getCacheFile())
+     * @return {@link MeshData} backed by the mapped file, or null if the file doesn't exist or isn't valid
+     */
+    static MeshData load(Path cacheFile){
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) return null;
+
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return null;
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());  // (stays valid after closing)
+            file.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (file.getInt() != MAGIC || file.getInt() != VERSION) return null;
+            int formatIndex = file.getInt();
+            if (formatIndex < 0 || formatIndex >= VertexFormat.values().length) return null;
+            VertexFormat vertexFormat = VertexFormat.values()[formatIndex];
+            int positionSize = file.getInt();
+            int flags = file.getInt();
+            boolean hasNormals = (flags & 1) != 0, hasTexCoords = (flags & 2) != 0;
+            int numOfVertices = file.getInt();
+            int numOfIndices = file.getInt();
+            Vector3f boundsMin = new Vector3f(file.getFloat(), file.getFloat(), file.getFloat());
+            Vector3f boundsMax = new Vector3f(file.getFloat(), file.getFloat(), file.getFloat());
+            Vector3f boundsCentre = new Vector3f(file.getFloat(), file.getFloat(), file.getFloat());
+            float boundsRadius = file.getFloat();
+            float uvDensity = file.getFloat();
+            int vertexDataSize = file.getInt();
+            int indexDataSize = file.getInt();
+
+            // check sizes are consistent
+            int indexSize = numOfVertices <= Mesh.MAX_SHORT_INDEX_VERTICES ? Short.BYTES : Integer.BYTES;
+            if (vertexDataSize != numOfVertices * vertexFormat.getBytesPerVertex(positionSize, hasNormals, hasTexCoords)
+                    || indexDataSize != numOfIndices * indexSize
+                    || channel.size() != (long) HEADER_SIZE + vertexDataSize + indexDataSize) return null;
+
+            ByteBuffer vertexData = slice(file, HEADER_SIZE, vertexDataSize);
+            ByteBuffer indexData = slice(file, HEADER_SIZE + vertexDataSize, indexDataSize);
+            return new MeshData(vertexFormat, positionSize, hasNormals, hasTexCoords, numOfVertices, numOfIndices,
+                    vertexData, indexData, boundsMin, boundsMax, boundsCentre, boundsRadius, uvDensity);
+        } catch (IOException e) {
+            System.err.println("Couldn't read cached mesh " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size){
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + size);
+        return slice.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Save the given mesh data to the given cache file (errors are reported, but otherwise ignored).
+     * The file is written to a temporary file 1st, so that a partially written file is never read.
+     * @param cacheFile path of the cache file (see getCacheFile())
+     * @param data {@link MeshData} to save
+     */
+    static void save(Path cacheFile, MeshData data){
+        if (cacheFile == null) return;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putInt(data.getVertexFormat().ordinal())
+                .putInt(data.getPositionSize())
+                .putInt((data.hasNormals() ? 1 : 0) | (data.hasTexCoords() ? 2 : 0))
+                .putInt(data.getNumOfVertices())
+                .putInt(data.getNumOfIndices());
+        for (Vector3f v : new Vector3f[]{data.getBoundsMin(), data.getBoundsMax(), data.getBoundsCentre()}) {
+            header.putFloat(v.x).putFloat(v.y).putFloat(v.z);
+        }
+        header.putFloat(data.getBoundsRadius())
+                .putFloat(data.getUVDensity())
+                .putInt(data.getVertexData().remaining())
+                .putInt(data.getIndexData().remaining());
+        header.flip();
+
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tempFile = Files.createTempFile(cacheFile.getParent(), "mesh", ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                for (ByteBuffer buffer : new ByteBuffer[]{header, data.getVertexData().duplicate(), data.getIndexData().duplicate()}) {
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Couldn't write cached mesh " + cacheFile + ": " + e.getMessage());
+        }
+    }
+}
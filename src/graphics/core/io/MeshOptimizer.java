@@ -0,0 +1,184 @@
+package graphics.core.io;
+
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles & vertices of imported meshes for faster rendering:
+ *      - optimizeVertexCache() reorders triangles so that vertices are reused while they're still in the
+ *        GPU's post-transform vertex cache (Tom Forsyth's linear-speed vertex cache optimisation)
+ *      - optimizeVertexFetch() then calculates the order in which the vertices should be stored (that in which
+ *        they're first used), so that the vertex data is fetched from memory mostly sequentially
+ * The efficiency of an index buffer is measured by its ACMR (average cache miss ratio): the nº of vertices
+ * transformed per triangle, between 0.5 (ideal, for large regular meshes) and 3 (no reuse at all).
+ */
+class MeshOptimizer {
+
+    // parameters of Forsyth's scoring function
+    private static final int CACHE_SIZE = 32;           // size of the simulated LRU cache
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRI_SCORE = 0.75f;  // score of the vertices of the last triangle added
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    static final int ACMR_CACHE_SIZE = 16;              // size of the FIFO cache simulated to calc the ACMR
+
+    /**
+     * Returns the ACMR of the given index buffer, simulating a FIFO vertex cache of the given size.
+     * @param indices array of indices (3 per triangle)
+     * @param numOfVertices nº of vertices referenced by the indices
+     * @param cacheSize nº of entries of the cache
+     */
+    static float calcACMR(int[] indices, int numOfVertices, int cacheSize){
+        if(indices.length < 3) return 0.0f;
+        int[] cacheTimestamps = new int[numOfVertices]; // value of 'time' when each vertex was added to the cache
+        Arrays.fill(cacheTimestamps, Integer.MIN_VALUE / 2);
+        int time = cacheSize, misses = 0;               // (time starts at cacheSize so no vertex starts in cache)
+
+        for(int index : indices){
+            if(time - cacheTimestamps[index] >= cacheSize){  // miss: vertex isn't among the last cacheSize added
+                cacheTimestamps[index] = time++;
+                misses++;
+            }
+        }
+        return misses / (float) (indices.length / 3);
+    }
+
+    /**
+     * Reorder the triangles of the given index buffer (in place) to make better use of the vertex cache.
+     * @param indices array of indices (3 per triangle)
+     * @param numOfVertices nº of vertices referenced by the indices
+     */
+    static void optimizeVertexCache(int[] indices, int numOfVertices){
+        int numOfTriangles = indices.length / 3;
+        if(numOfTriangles == 0) return;
+
+        // triangles adjacent to each vertex (CSR layout: triangles of vertex v are at adjacency[offsets[v]..offsets[v+1]])
+        int[] offsets = new int[numOfVertices + 1];
+        for(int i = 0; i < numOfTriangles * 3; i++) offsets[indices[i] + 1]++;
+        for(int v = 0; v < numOfVertices; v++) offsets[v + 1] += offsets[v];
+        int[] adjacency = new int[numOfTriangles * 3];
+        int[] fill = Arrays.copyOf(offsets, numOfVertices);
+        for(int i = 0; i < numOfTriangles * 3; i++) adjacency[fill[indices[i]]++] = i / 3;
+
+        int[] remaining = new int[numOfVertices];       // nº of triangles using each vertex not yet emitted
+        for(int v = 0; v < numOfVertices; v++) remaining[v] = offsets[v + 1] - offsets[v];
+        int[] cachePosition = new int[numOfVertices];   // position of each vertex in the LRU cache (-1 if not in it)
+        Arrays.fill(cachePosition, -1);
+
+        float[] vertexScores = new float[numOfVertices];
+        for(int v = 0; v < numOfVertices; v++) vertexScores[v] = vertexScore(-1, remaining[v]);
+        float[] triangleScores = new float[numOfTriangles];
+        for(int t = 0; t < numOfTriangles; t++){
+            triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+        }
+        boolean[] emitted = new boolean[numOfTriangles];
+
+        int[] cache = new int[CACHE_SIZE + 3], newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int[] result = new int[numOfTriangles * 3];
+        int nextUnemitted = 0;  // scan position to find a triangle to restart from when the cache has no candidates
+
+        int best = bestTriangle(triangleScores);
+        for(int emittedCount = 0; emittedCount < numOfTriangles; emittedCount++){
+            if(best == -1){
+                while(emitted[nextUnemitted]) nextUnemitted++;
+                best = nextUnemitted;
+            }
+
+            // emit triangle
+            emitted[best] = true;
+            int a = indices[best * 3], b = indices[best * 3 + 1], c = indices[best * 3 + 2];
+            result[emittedCount * 3] = a;
+            result[emittedCount * 3 + 1] = b;
+            result[emittedCount * 3 + 2] = c;
+            remaining[a]--;
+            remaining[b]--;
+            remaining[c]--;
+
+            // move the triangle's vertices to the front of the LRU cache
+            int newCount = 0;
+            newCache[newCount++] = a;
+            if(b != a) newCache[newCount++] = b;
+            if(c != a && c != b) newCache[newCount++] = c;
+            for(int i = 0; i < cacheCount; i++){
+                int v = cache[i];
+                if(v != a && v != b && v != c) newCache[newCount++] = v;
+            }
+            int[] swap = cache; cache = newCache; newCache = swap;
+            cacheCount = newCount;
+
+            // update scores of the vertices in the cache (& those that just left it), & of their triangles
+            for(int i = 0; i < cacheCount; i++){
+                int v = cache[i];
+                cachePosition[v] = i < CACHE_SIZE ? i : -1;
+                float newScore = vertexScore(cachePosition[v], remaining[v]);
+                float diff = newScore - vertexScores[v];
+                vertexScores[v] = newScore;
+                for(int j = offsets[v]; j < offsets[v + 1]; j++) triangleScores[adjacency[j]] += diff;
+            }
+            if(cacheCount > CACHE_SIZE) cacheCount = CACHE_SIZE;
+
+            // next triangle: the best scoring one which uses a vertex in the cache
+            best = -1;
+            float bestScore = -1.0f;
+            for(int i = 0; i < cacheCount; i++){
+                int v = cache[i];
+                for(int j = offsets[v]; j < offsets[v + 1]; j++){
+                    int t = adjacency[j];
+                    if(!emitted[t] && triangleScores[t] > bestScore){
+                        best = t;
+                        bestScore = triangleScores[t];
+                    }
+                }
+            }
+        }
+
+        System.arraycopy(result, 0, indices, 0, result.length);
+    }
+
+    private static int bestTriangle(float[] triangleScores){
+        int best = 0;
+        for(int t = 1; t < triangleScores.length; t++) if(triangleScores[t] > triangleScores[best]) best = t;
+        return best;
+    }
+
+    /**
+     * Forsyth's vertex score: higher for vertices recently used (so in the cache) & for vertices used
+     * by few remaining triangles (so that they're finished off & don't need to be transformed again later).
+     */
+    private static float vertexScore(int cachePosition, int remainingTriangles){
+        if(remainingTriangles == 0) return -1.0f;   // not used anymore
+
+        float score = 0.0f;
+        if(cachePosition >= 0){
+            if(cachePosition < 3) score = LAST_TRI_SCORE;
+            else score = (float) Math.pow(1.0f - (cachePosition - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+        }
+        return score + VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+    }
+
+    /**
+     * Calculate the order in which vertices should be stored so that they're in the order in which they're 1st
+     * referenced by the given index buffer, & update the indices to match. Vertices not referenced by any index
+     * are moved to the end. The vertex data itself isn't touched: it must be reordered (e.g. when packed) w/the
+     * returned order.
+     * @param indices array of indices (3 per triangle)
+     * @param numOfVertices nº of vertices
+     * @return new order of the vertices: the vertex at position i in the new order is vertex order[i] in the old one
+     */
+    static int[] optimizeVertexFetch(int[] indices, int numOfVertices){
+        int[] remap = new int[numOfVertices];   // new position of each vertex
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for(int i = 0; i < indices.length; i++){
+            int v = indices[i];
+            if(remap[v] == -1) remap[v] = next++;
+            indices[i] = remap[v];
+        }
+        for(int v = 0; v < numOfVertices; v++) if(remap[v] == -1) remap[v] = next++;
+
+        int[] order = new int[numOfVertices];
+        for(int v = 0; v < numOfVertices; v++) order[remap[v]] = v;
+        return order;
+    }
+}
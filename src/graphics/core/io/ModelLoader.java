@@ -1,21 +1,97 @@
 package graphics.core.io;
 
+import graphics.core.FrameStats;
+import graphics.materials.Material;
+import graphics.scene.AbstractEntity;
+import graphics.scene.DrawableEntity;
+import graphics.scene.Entity;
+import graphics.shapes.Shape;
+import graphics.shapes.ShapeFromOBJ;
 import graphics.shapes.meshes.Mesh;
+import graphics.shapes.meshes.MeshData;
 import graphics.shapes.meshes.MeshFromOBJ;
+import graphics.shapes.meshes.VertexFormat;
+import graphics.textures.Texture;
+import graphics.textures.TextureRegistry;
+import graphics.textures.TextureType;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
 import org.lwjgl.assimp.*;
+import org.lwjgl.system.MemoryUtil;
 
+import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * To load models.
+ * Models can be loaded synchronously (loadModel()), or asynchronously (loadModelAsync()): then the CPU-side work
+ * (reading the mesh cache or importing the model through Assimp, optimising & packing the mesh) runs on a pool of
+ * worker threads, & only the upload to the GPU is done on the GL thread, when uploadImportedMeshes() is called
+ * (once per frame, w/a budget so that the frame isn't stalled).
+ * loadModel() & loadModelAsync() only load the 1st mesh in the file; loadModelHierarchy() loads whole models (all
+ * their meshes & materials, & their node hierarchy) as an {@link Entity} subtree.
+ * ! All methods must be called from the GL thread.
  */
 public class ModelLoader {
 
-    // map of filenames to meshes created from .obj files ( to ensure only 1 mesh is created per .obj file)
+    // map of filenames (& vertex formats) to meshes created from .obj files ( to ensure only 1 mesh is created per .obj file & format)
     private static Map<String, MeshFromOBJ> mapFilenameToInstance = new HashMap<>();
 
+    // --- async loading ---
+    private static final ExecutorService importPool = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            runnable -> {
+                Thread thread = new Thread(runnable, "model-import");
+                thread.setDaemon(true);     // (don't keep the app alive)
+                return thread;
+            });
+    private static final Map<MeshFromOBJ, CompletableFuture<MeshData>> pendingImports = new HashMap<>();  // meshes not yet uploaded
+    private static final Queue<MeshFromOBJ> importedMeshes = new ConcurrentLinkedQueue<>();  // imported & waiting to be uploaded
+
+    // map of filenames (& vertex formats) to whole models imported w/loadModelHierarchy() (so their meshes & materials are shared)
+    private static final Map<String, ModelNode> mapFilenameToModel = new HashMap<>();
+
+    // map of model filenames to the vertex cache stats of their imported meshes: nº of vertices, nº of triangles, &
+    // cache misses (ACMR * nº of triangles) before & after optimizing them (only accessed in synchronized methods,
+    // as imports also run on worker threads)
+    private static final Map<String, float[]> mapFilenameToACMRStats = new TreeMap<>();
+
+    private static final int IMPORT_FLAGS = Assimp.aiProcess_Triangulate |
+            Assimp.aiProcess_SortByPType |          // (splits off point & line meshes, which are skipped)
+            Assimp.aiProcess_JoinIdenticalVertices |
+            Assimp.aiProcess_GenSmoothNormals;      // (only if the model has no normals)
+
+    /**
+     * Node of an imported model: its transform in relation to its parent node, the shapes drawn at it
+     * (1 per material used by the node's meshes) & its child nodes.
+     */
+    private static class ModelNode {
+        final Matrix4f transform;
+        final List<Shape> shapes = new ArrayList<>();
+        final List<ModelNode> children = new ArrayList<>();
+
+        ModelNode(Matrix4f transform){
+            this.transform = transform;
+        }
+    }
+
     /**
      * Creates a Mesh object for the model in the given .OBJ file
      * @param filename {@link String} filename/filepath of the .OBJ file to load
@@ -23,71 +99,499 @@ public class ModelLoader {
      * @return {@link Mesh} for the model from the .OBJ file.
      */
     public static Mesh loadModel(String filename, boolean useFaceCulling){
-        MeshFromOBJ returnValue = mapFilenameToInstance.getOrDefault(filename, null);
+        return loadModel(filename, useFaceCulling, VertexFormat.SEPARATE_FLOAT);
+    }
+
+    /**
+     * Creates a Mesh object for the model in the given .OBJ file
+     * @param filename {@link String} filename/filepath of the .OBJ file to load
+     * @param useFaceCulling true if face culling is to be used when rendering the created Mesh
+     * @param vertexFormat {@link VertexFormat} in which to store the mesh's vertex data on the GPU
+     * @return {@link Mesh} for the model from the .OBJ file.
+     */
+    public static Mesh loadModel(String filename, boolean useFaceCulling, VertexFormat vertexFormat){
+        return loadModel(filename, useFaceCulling, vertexFormat, false);
+    }
+
+    /**
+     * Creates a Mesh object for the model in the given .OBJ file
+     * @param filename {@link String} filename/filepath of the .OBJ file to load
+     * @param useFaceCulling true if face culling is to be used when rendering the created Mesh
+     * @param vertexFormat {@link VertexFormat} in which to store the mesh's vertex data on the GPU
+     * @param keepCPUData true to also keep a copy of the mesh's vertex positions & indices on the CPU (e.g. for
+     *                    collision detection, see {@link MeshFromOBJ#getVertexPositions()}), else the mesh's data
+     *                    is only kept on the GPU
+     * @return {@link MeshFromOBJ} for the model from the .OBJ file.
+     */
+    public static MeshFromOBJ loadModel(String filename, boolean useFaceCulling, VertexFormat vertexFormat, boolean keepCPUData){
+        String key = filename + "#" + vertexFormat;
+        MeshFromOBJ returnValue = mapFilenameToInstance.getOrDefault(key, null);
 
         if( returnValue == null) {
-            // create assimp scene obj
-            AIScene scene = Assimp.aiImportFile(filename,
-                    Assimp.aiProcess_Triangulate |
-                            Assimp.aiProcess_JoinIdenticalVertices
-            );
-            if (scene == null) System.err.println("Couldn't load model at" + filename); // todo: raise exception instead
-
-            // get 1st mesh
-            AIMesh mesh = AIMesh.create(scene.mMeshes().get(0)); // get 1st mesh
-            int vertexCount = mesh.mNumVertices();
-            int faceCount = mesh.mNumFaces();
-
-            AIVector3D.Buffer vertices = mesh.mVertices(); // store vertices in buffer
-            AIVector3D.Buffer normals = mesh.mNormals();
-            AIFace.Buffer faces = mesh.mFaces();
-
-            float[] vPositions = new float[vertexCount * 3];
-            float[] vNormals = new float[vertexCount * 3];
-            int[] vIndeces = new int[vertexCount * 3];
-            float[] texCoords = new float[vertexCount * 2];
-
-            // add all vertex positions, indices, normals & texture coords in AImesh into appropriate arrays
-            for (int i = 0; i < vertexCount; i++) {
-                // vertices
-                AIVector3D vertex = vertices.get(i);
-                vPositions[i * 3] = vertex.x();
-                vPositions[i * 3 + 1] = vertex.y();
-                vPositions[i * 3 + 2] = vertex.z();
-
-                // normals
-                AIVector3D normal = normals.get(i);
-                vNormals[i * 3] = normal.x();
-                vNormals[i * 3 + 1] = normal.y();
-                vNormals[i * 3 + 2] = normal.z();
-
-                // indices
-                if (i < faceCount) {
-                    IntBuffer faceIndeces = faces.get(i).mIndices();
-                    vIndeces[i * 3] = faceIndeces.get(0);
-                    vIndeces[i * 3 + 1] = faceIndeces.get(1);
-                    vIndeces[i * 3 + 2] = faceIndeces.get(2);
-                }
+            // return Mesh obj
+            MeshData data = readMeshData(filename, vertexFormat);
+            returnValue = new MeshFromOBJ(data, useFaceCulling);
+            if (keepCPUData) returnValue.keepCPUData(data);
+            data.free();
 
-                // texture coords
-                float texX = 0.0f;
-                float texY = 0.0f;
-                if (mesh.mNumUVComponents().get(0) != 0) { // there are tex coords
-                    AIVector3D texCoord = mesh.mTextureCoords(0).get(i);
-                    texX = texCoord.x();
-                    texY = texCoord.y();
-                }
-                texCoords[i * 2] = texX;
-                texCoords[i * 2 + 1] = texY;
+            // place into map
+            mapFilenameToInstance.put(key, returnValue);
+        }
+        else {
+            if (!returnValue.isResident() && upload(returnValue) < 0)   // being loaded asynchronously: wait for it
+                return loadModel(filename, useFaceCulling, vertexFormat, keepCPUData);  // (its import failed: import it again here)
+            if (keepCPUData && returnValue.getVertexPositions() == null) {  // loaded before w/o CPU data: read it again
+                MeshData data = readMeshData(filename, vertexFormat);
+                returnValue.keepCPUData(data);
+                data.free();
             }
+        }
 
-            // return Mesh obj
-            returnValue = new MeshFromOBJ(vPositions, vIndeces, vNormals, texCoords, useFaceCulling);
+        return returnValue;
+    }
+
+    /**
+     * Returns a Mesh object for the model in the given .OBJ file, whose data is loaded asynchronously.
+     * The mesh isn't resident (& so entities using it aren't drawn) until its data has been imported by a worker
+     * thread & uploaded by uploadImportedMeshes() (see {@link Mesh#isResident()} & {@link Mesh#whenResident(Runnable)}).
+     * @param filename {@link String} filename/filepath of the .OBJ file to load
+     * @param useFaceCulling true if face culling is to be used when rendering the created Mesh
+     * @param vertexFormat {@link VertexFormat} in which to store the mesh's vertex data on the GPU
+     * @return {@link MeshFromOBJ} for the model from the .OBJ file (a handle to it until it's loaded).
+     */
+    public static MeshFromOBJ loadModelAsync(String filename, boolean useFaceCulling, VertexFormat vertexFormat){
+        String key = filename + "#" + vertexFormat;
+        MeshFromOBJ returnValue = mapFilenameToInstance.getOrDefault(key, null);
+
+        if( returnValue == null) {
+            MeshFromOBJ mesh = new MeshFromOBJ(useFaceCulling, vertexFormat);
+            CompletableFuture<MeshData> future = CompletableFuture.supplyAsync(() -> readMeshData(filename, vertexFormat), importPool);
+            future.whenComplete((data, exception) -> importedMeshes.add(mesh));   // (failures are handled on the GL thread, see upload())
+            pendingImports.put(mesh, future);
 
             // place into map
-            mapFilenameToInstance.put(filename, returnValue);
+            returnValue = mesh;
+            mapFilenameToInstance.put(key, returnValue);
         }
 
         return returnValue;
     }
+
+    /**
+     * Upload meshes whose asynchronous import has finished onto the GPU, until the given budget is used up
+     * (at least 1 mesh is uploaded if any is ready, even if it's larger than the budget).
+     * Should be called once per frame.
+     * @param budgetBytes max nº of bytes of vertex & index data to upload
+     * @return nº of meshes uploaded
+     */
+    public static int uploadImportedMeshes(long budgetBytes){
+        int uploaded = 0;
+        long uploadedBytes = 0;
+        while (uploadedBytes < budgetBytes) {
+            MeshFromOBJ mesh = importedMeshes.poll();
+            if (mesh == null) break;
+            if (mesh.isResident() || !pendingImports.containsKey(mesh)) continue;   // (already uploaded or discarded by loadModel())
+
+            long size = upload(mesh);
+            if (size < 0) continue;     // (import failed)
+            uploadedBytes += size;
+            uploaded++;
+        }
+        FrameStats.add(FrameStats.Counter.MESHES_UPLOADED, uploaded);
+        return uploaded;
+    }
+
+    /**
+     * Returns the nº of meshes being loaded asynchronously which aren't resident yet.
+     */
+    public static int getNumOfPendingMeshes(){
+        return pendingImports.size();
+    }
+
+    /**
+     * Add an optimized mesh of the given model file, w/the given nº of vertices & triangles & ACMR before & after the
+     * optimization, to the model's stats.
+     */
+    private static synchronized void recordACMR(String filename, int numOfVertices, int numOfTriangles, float acmrBefore, float acmrAfter){
+        float[] stats = mapFilenameToACMRStats.computeIfAbsent(filename, f -> new float[4]);
+        stats[0] += numOfVertices;
+        stats[1] += numOfTriangles;
+        stats[2] += acmrBefore * numOfTriangles;
+        stats[3] += acmrAfter * numOfTriangles;
+    }
+
+    /**
+     * Returns a report of the vertex cache optimization of the models imported so far: their ACMR before & after it
+     * (over all their meshes), e.g. "box.obj: ACMR 2.279 -> 1.039 (3370 vertices, 3326 triangles)" for each model,
+     * & the total over all of them.
+     */
+    public static synchronized String getReport(){
+        StringBuilder report = new StringBuilder("Imported models:");
+        float[] total = new float[4];
+        for (Map.Entry<String, float[]> entry : mapFilenameToACMRStats.entrySet()) {
+            float[] stats = entry.getValue();
+            appendACMRStats(report, entry.getKey(), stats);
+            for (int i = 0; i < total.length; i++) total[i] += stats[i];
+        }
+        appendACMRStats(report, "total", total);
+        return report.toString();
+    }
+
+    private static void appendACMRStats(StringBuilder report, String name, float[] stats){
+        float triangles = Math.max(stats[1], 1);
+        report.append(String.format("%n\t%s: ACMR %.3f -> %.3f (%d vertices, %d triangles)",
+                name, stats[2] / triangles, stats[3] / triangles, (int) stats[0], (int) stats[1]));
+    }
+
+    /**
+     * Loads the whole model in the given file (all its meshes & materials, & its node hierarchy), & creates an
+     * {@link Entity} subtree for it: 1 entity per node of the model, w/the node's transform as local transform.
+     * The meshes of each node which share a material are merged, so each node is drawn w/1 draw call per material
+     * (a node w/a single material is a {@link DrawableEntity}, else an {@link AbstractEntity} w/a DrawableEntity child
+     * per material). The model is only imported once: the subtrees of later calls share its meshes & materials.
+     * @param filename {@link String} filename/filepath of the model file to load
+     * @param local_transform local transform of the root entity of the subtree
+     * @param useFaceCulling true if face culling is to be used when rendering the model's meshes
+     * @param vertexFormat {@link VertexFormat} in which to store the meshes' vertex data on the GPU
+     * @return root {@link Entity} of the model's subtree (w/o a parent)
+     */
+    public static Entity loadModelHierarchy(String filename, Matrix4f local_transform, boolean useFaceCulling, VertexFormat vertexFormat){
+        String key = filename + "#" + vertexFormat + "#" + useFaceCulling;
+        ModelNode model = mapFilenameToModel.get(key);
+
+        if (model == null) {
+            model = importModel(filename, useFaceCulling, vertexFormat);
+            mapFilenameToModel.put(key, model);
+        }
+
+        return createEntity(model, null, new Matrix4f(local_transform).mul(model.transform));
+    }
+
+    /**
+     * Creates the entity (& its subtree) for the given node of an imported model.
+     */
+    private static Entity createEntity(ModelNode node, Entity parent, Matrix4f local_transform){
+        Entity entity;
+        if (node.shapes.size() == 1) entity = new DrawableEntity(parent, local_transform, new Vector3f(1.0f), node.shapes.get(0));
+        else {
+            entity = new AbstractEntity(parent, local_transform);
+            for (Shape shape : node.shapes) entity.addChild(new DrawableEntity(entity, new Matrix4f(), new Vector3f(1.0f), shape));
+        }
+
+        for (ModelNode child : node.children) entity.addChild(createEntity(child, entity, new Matrix4f(child.transform)));
+        return entity;
+    }
+
+    /**
+     * Import the whole model in the given file through Assimp: its materials, & its node hierarchy w/the meshes at
+     * each node (merged by material).
+     * @return root {@link ModelNode} of the model
+     */
+    private static ModelNode importModel(String filename, boolean useFaceCulling, VertexFormat vertexFormat){
+        AIScene scene = Assimp.aiImportFile(filename, IMPORT_FLAGS | Assimp.aiProcess_RemoveRedundantMaterials);
+        if (scene == null) throw new RuntimeException("Couldn't load model at " + filename + ": " + Assimp.aiGetErrorString());
+
+        // materials (textures are looked up relative to the model file's directory)
+        Path directory = Paths.get(filename).toAbsolutePath().getParent();
+        Material[] materials = new Material[scene.mNumMaterials()];
+        for (int i = 0; i < materials.length; i++) {
+            materials[i] = importMaterial(AIMaterial.create(scene.mMaterials().get(i)), directory);
+        }
+
+        ModelNode root = importNode(filename, scene, scene.mRootNode(), materials, useFaceCulling, vertexFormat);
+        Assimp.aiReleaseImport(scene);
+        return root;
+    }
+
+    /**
+     * Import the given node of an Assimp scene & its subtree. The node's (triangle) meshes are merged by material,
+     * & a shape is created for each merged mesh.
+     * @return {@link ModelNode} for the node
+     */
+    private static ModelNode importNode(String filename, AIScene scene, AINode aiNode, Material[] materials,
+                                        boolean useFaceCulling, VertexFormat vertexFormat){
+        AIMatrix4x4 m = aiNode.mTransformation();  // (row major)
+        ModelNode node = new ModelNode(new Matrix4f(
+                m.a1(), m.b1(), m.c1(), m.d1(),
+                m.a2(), m.b2(), m.c2(), m.d2(),
+                m.a3(), m.b3(), m.c3(), m.d3(),
+                m.a4(), m.b4(), m.c4(), m.d4()));
+
+        // group the node's meshes by material
+        Map<Integer, List<Integer>> meshesByMaterial = new LinkedHashMap<>();
+        for (int i = 0; i < aiNode.mNumMeshes(); i++) {
+            int meshIndex = aiNode.mMeshes().get(i);
+            AIMesh mesh = AIMesh.create(scene.mMeshes().get(meshIndex));
+            if ((mesh.mPrimitiveTypes() & Assimp.aiPrimitiveType_TRIANGLE) == 0) continue;    // only points/lines
+            meshesByMaterial.computeIfAbsent(mesh.mMaterialIndex(), k -> new ArrayList<>()).add(meshIndex);
+        }
+
+        // create a shape for each group
+        for (Map.Entry<Integer, List<Integer>> group : meshesByMaterial.entrySet()) {
+            int[] meshIndices = group.getValue().stream().mapToInt(Integer::intValue).toArray();
+            String name = filename + " [" + aiNode.mName().dataString() + ", material " + group.getKey() + "]";
+            MeshData data = packMeshes(filename, name, scene, meshIndices, vertexFormat);
+            MeshFromOBJ mesh = new MeshFromOBJ(data, useFaceCulling);
+            data.free();
+            node.shapes.add(new ShapeFromOBJ(mesh, materials[group.getKey()]));
+        }
+
+        // child nodes (nodes w/nothing to draw in their subtree are left out)
+        for (int i = 0; i < aiNode.mNumChildren(); i++) {
+            ModelNode child = importNode(filename, scene, AINode.create(aiNode.mChildren().get(i)), materials, useFaceCulling, vertexFormat);
+            if (!child.shapes.isEmpty() || !child.children.isEmpty()) node.children.add(child);
+        }
+        return node;
+    }
+
+    /**
+     * Creates a {@link Material} from the given Assimp material: its diffuse & specular textures if it has a
+     * diffuse texture, else its diffuse & specular colours (& its shininess in both cases).
+     * @param aiMaterial {@link AIMaterial} to convert
+     * @param directory directory of the model file, relative to which texture paths are resolved
+     */
+    private static Material importMaterial(AIMaterial aiMaterial, Path directory){
+        List<Texture> texList = new ArrayList<>();
+        importTextures(aiMaterial, Assimp.aiTextureType_DIFFUSE, TextureType.DIFFUSE, directory, texList);
+        if (!texList.isEmpty()) importTextures(aiMaterial, Assimp.aiTextureType_SPECULAR, TextureType.SPECULAR, directory, texList);
+
+        Material material;
+        if (!texList.isEmpty()) material = new Material(texList);
+        else {
+            material = new Material();
+            AIColor4D colour = AIColor4D.create();
+            if (Assimp.aiGetMaterialColor(aiMaterial, Assimp.AI_MATKEY_COLOR_DIFFUSE, Assimp.aiTextureType_NONE, 0, colour) == Assimp.aiReturn_SUCCESS) {
+                material.setDiffColour(new Vector3f(colour.r(), colour.g(), colour.b()));
+            }
+            if (Assimp.aiGetMaterialColor(aiMaterial, Assimp.AI_MATKEY_COLOR_SPECULAR, Assimp.aiTextureType_NONE, 0, colour) == Assimp.aiReturn_SUCCESS) {
+                material.setSpecColour(new Vector3f(colour.r(), colour.g(), colour.b()));
+            }
+        }
+
+        float[] shininess = new float[1];
+        if (Assimp.aiGetMaterialFloatArray(aiMaterial, Assimp.AI_MATKEY_SHININESS, Assimp.aiTextureType_NONE, 0, shininess, new int[]{1}) == Assimp.aiReturn_SUCCESS
+                && shininess[0] > 0.0f) {
+            material.setShininess(shininess[0]);
+        }
+        return material;
+    }
+
+    /**
+     * Gets the textures of the given Assimp type of the given material from the {@link TextureRegistry} (so they're
+     * shared w/other materials & models), & adds them to the given list. Textures which can't be found (or are
+     * embedded in the model file) are skipped.
+     */
+    private static void importTextures(AIMaterial aiMaterial, int aiTextureType, TextureType type, Path directory,
+                                       List<Texture> texList){
+        AIString path = AIString.create();
+        for (int i = 0; i < Assimp.aiGetMaterialTextureCount(aiMaterial, aiTextureType); i++) {
+            if (Assimp.aiGetMaterialTexture(aiMaterial, aiTextureType, i, path, (IntBuffer) null, null, null, null, null, null) != Assimp.aiReturn_SUCCESS) continue;
+            String texPath = path.dataString();
+            if (texPath.startsWith("*")) {
+                System.err.println("Embedded texture " + texPath + " not supported, skipped");
+                continue;
+            }
+
+            String texFilename = directory.resolve(texPath.replace('\\', '/')).normalize().toString();
+            if (!Files.isRegularFile(Paths.get(texFilename))) {
+                System.err.println("Texture " + texFilename + " not found, skipped");
+                continue;
+            }
+            texList.add(TextureRegistry.get(texFilename, texFilename.toLowerCase().endsWith(".png"), type));  // (png files may have an alpha channel)
+        }
+    }
+
+    /**
+     * Upload the data of the given asynchronously loaded mesh onto the GPU (waiting for its import to finish if needed).
+     * If its import failed, the failure is reported & the mesh is discarded: it's removed from the loaded meshes, so
+     * that loading the model again re-imports the file (the mesh itself is never made resident).
+     * @return nº of bytes uploaded, or -1 if the import failed
+     */
+    private static long upload(MeshFromOBJ mesh){
+        MeshData data;
+        try {
+            data = pendingImports.remove(mesh).join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            Iterator<Map.Entry<String, MeshFromOBJ>> it = mapFilenameToInstance.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, MeshFromOBJ> entry = it.next();
+                if (entry.getValue() != mesh) continue;
+                it.remove();
+                String filename = entry.getKey().substring(0, entry.getKey().lastIndexOf('#'));
+                System.err.println("Couldn't load model at " + filename + ": " + cause.getMessage());
+            }
+            return -1;
+        }
+        long size = data.getVertexData().remaining() + data.getIndexData().remaining();
+        mesh.load(data);
+        data.free();
+        return size;
+    }
+
+    /**
+     * Returns the data of the model in the given .OBJ file, packed in the given vertex format: from the mesh cache
+     * if the model was imported before, else importing it (& caching it).
+     * Can be called from any thread.
+     */
+    private static MeshData readMeshData(String filename, VertexFormat vertexFormat){
+        Path cacheFile = MeshCache.getCacheFile(filename, vertexFormat);
+        MeshData data = MeshCache.load(cacheFile);
+        if (data == null) {
+            data = importMesh(filename, vertexFormat);
+            MeshCache.save(cacheFile, data);
+        }
+        return data;
+    }
+
+    /**
+     * Import the model in the given .OBJ file through Assimp, optimise it for rendering & pack it in the
+     * given vertex format (only the 1st mesh in the file is imported, see loadModelHierarchy() for whole models).
+     * @param filename {@link String} filename/filepath of the .OBJ file to load
+     * @param vertexFormat {@link VertexFormat} in which to pack the mesh's vertex data
+     * @return {@link MeshData} of the model (must be freed once no longer needed)
+     */
+    private static MeshData importMesh(String filename, VertexFormat vertexFormat){
+        // create assimp scene obj
+        AIScene scene = Assimp.aiImportFile(filename, IMPORT_FLAGS);
+        if (scene == null) throw new RuntimeException("Couldn't load model at " + filename + ": " + Assimp.aiGetErrorString());
+
+        MeshData data = packMeshes(filename, filename, scene, new int[]{0}, vertexFormat); // get 1st mesh
+        Assimp.aiReleaseImport(scene);
+        return data;
+    }
+
+    /**
+     * Merge the given meshes of an Assimp scene into a single mesh (their vertices are concatenated, so they must
+     * share the same transform), optimise it for rendering & pack it in the given vertex format.
+     * Faces which aren't triangles (i.e. points & lines) are skipped, & the indices are validated.
+     * @param filename filename/filepath of the model file the meshes are from (to record their stats under)
+     * @param name name of the mesh (to report)
+     * @param scene {@link AIScene} containing the meshes
+     * @param meshIndices indices of the meshes to merge in the scene's mesh array
+     * @param vertexFormat {@link VertexFormat} in which to pack the mesh's vertex data
+     * @return {@link MeshData} of the merged mesh (must be freed once no longer needed)
+     */
+    private static MeshData packMeshes(String filename, String name, AIScene scene, int[] meshIndices, VertexFormat vertexFormat){
+        // count vertices & triangles, so that the arrays are exactly sized
+        AIMesh[] meshes = new AIMesh[meshIndices.length];
+        long totalVertices = 0, totalTriangles = 0;
+        int faceCount = 0;
+        for (int m = 0; m < meshIndices.length; m++) {
+            meshes[m] = AIMesh.create(scene.mMeshes().get(meshIndices[m]));
+            totalVertices += meshes[m].mNumVertices();
+            totalTriangles += countTriangles(meshes[m]);
+            faceCount += meshes[m].mNumFaces();
+        }
+        if (totalTriangles == 0) throw new RuntimeException("Mesh " + name + " has no triangles");
+        if (totalVertices * 3 > Integer.MAX_VALUE || totalTriangles * 3 > Integer.MAX_VALUE) {
+            throw new RuntimeException("Mesh " + name + " is too large (" + totalVertices + " vertices, " + totalTriangles + " triangles)");
+        }
+        if (totalTriangles < faceCount) System.err.printf("%s: skipped %d faces which aren't triangles%n", name, faceCount - totalTriangles);
+        int vertexCount = (int) totalVertices;
+
+        int[] vIndeces = new int[(int) totalTriangles * 3];
+
+        // vertex positions, normals & texture coords: read in place from the AImesh's native arrays (a single mesh),
+        // or from native staging buffers they're concatenated into w/a bulk copy per mesh (merged meshes)
+        FloatBuffer positions, normals, texCoords;
+        boolean merged = meshes.length > 1;
+        if (!merged) {
+            AIMesh mesh = meshes[0];
+            positions = vectors(mesh.mVertices(), vertexCount);
+            normals = mesh.mNormals() == null ? null : vectors(mesh.mNormals(), vertexCount);  // (null if the mesh has no triangles)
+            texCoords = mesh.mNumUVComponents().get(0) == 0 ? null : vectors(mesh.mTextureCoords(0), vertexCount);
+        } else {
+            boolean anyNormals = false, anyTexCoords = false;
+            for (AIMesh mesh : meshes) {
+                anyNormals |= mesh.mNormals() != null;
+                anyTexCoords |= mesh.mNumUVComponents().get(0) != 0;
+            }
+            positions = MemoryUtil.memAllocFloat(vertexCount * 3);
+            normals = anyNormals ? MemoryUtil.memCallocFloat(vertexCount * 3) : null;     // (zero for meshes w/o them)
+            texCoords = anyTexCoords ? MemoryUtil.memCallocFloat(vertexCount * 3) : null;
+
+            int baseVertex = 0;
+            for (AIMesh mesh : meshes) {
+                copyVectors(mesh.mVertices(), mesh.mNumVertices(), positions, baseVertex);
+                if (normals != null && mesh.mNormals() != null) copyVectors(mesh.mNormals(), mesh.mNumVertices(), normals, baseVertex);
+                if (texCoords != null && mesh.mNumUVComponents().get(0) != 0) copyVectors(mesh.mTextureCoords(0), mesh.mNumVertices(), texCoords, baseVertex);
+                baseVertex += mesh.mNumVertices();
+            }
+        }
+
+        // indices: separate pass over the faces (offset by each mesh's 1st vertex in the merged mesh)
+        int baseVertex = 0;
+        int numOfIndices = 0;
+        for (AIMesh mesh : meshes) {
+            numOfIndices = copyTriangles(name, mesh, baseVertex, vIndeces, numOfIndices);
+            baseVertex += mesh.mNumVertices();
+        }
+
+        // reorder triangles & vertices for the GPU's vertex cache & vertex fetch (vertices are reordered when packed)
+        float acmrBefore = MeshOptimizer.calcACMR(vIndeces, vertexCount, MeshOptimizer.ACMR_CACHE_SIZE);
+        MeshOptimizer.optimizeVertexCache(vIndeces, vertexCount);
+        int[] vertexOrder = MeshOptimizer.optimizeVertexFetch(vIndeces, vertexCount);
+        float acmrAfter = MeshOptimizer.calcACMR(vIndeces, vertexCount, MeshOptimizer.ACMR_CACHE_SIZE);
+        recordACMR(filename, vertexCount, numOfIndices / 3, acmrBefore, acmrAfter);
+
+        MeshData data = MeshData.packVectors(positions, vIndeces, vertexOrder, normals, texCoords, vertexFormat);
+        if (merged) {
+            MemoryUtil.memFree(positions);
+            MemoryUtil.memFree(normals);
+            MemoryUtil.memFree(texCoords);
+        }
+        return data;
+    }
+
+    /**
+     * Returns a view of the given native array of vectors as a buffer of floats (3 per vector).
+     */
+    private static FloatBuffer vectors(AIVector3D.Buffer vectors, int count){
+        return MemoryUtil.memFloatBuffer(vectors.address(), count * 3);   // (AIVector3D: 3 floats, tightly packed)
+    }
+
+    /**
+     * Copy the given native array of vectors into the given buffer (3 floats per vector), starting at the given vector.
+     */
+    private static void copyVectors(AIVector3D.Buffer vectors, int count, FloatBuffer dst, int firstVector){
+        MemoryUtil.memCopy(vectors.address(), MemoryUtil.memAddress(dst) + (long) firstVector * AIVector3D.SIZEOF,
+                (long) count * AIVector3D.SIZEOF);
+    }
+    /**
+     * Returns the nº of faces of the given mesh which are triangles.
+     */
+    private static int countTriangles(AIMesh mesh){
+        long faces = mesh.mFaces().address();
+        int count = 0;
+        for (int i = 0; i < mesh.mNumFaces(); i++) {
+            if (MemoryUtil.memGetInt(faces + (long) i * AIFace.SIZEOF + AIFace.MNUMINDICES) == 3) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Copy the indices of the triangles of the given mesh into the given array, offset by the given base vertex.
+     * Faces are read straight from Assimp's arrays (no AIFace object or IntBuffer is created per face).
+     * @return nº of indices in the array after copying
+     * @throws RuntimeException if an index is out of the mesh's range of vertices
+     */
+    private static int copyTriangles(String name, AIMesh mesh, int baseVertex, int[] dst, int numOfIndices){
+        long faces = mesh.mFaces().address();
+        int meshVertexCount = mesh.mNumVertices();
+        for (int i = 0; i < mesh.mNumFaces(); i++) {
+            long face = faces + (long) i * AIFace.SIZEOF;
+            if (MemoryUtil.memGetInt(face + AIFace.MNUMINDICES) != 3) continue;    // not a triangle
+            long faceIndices = MemoryUtil.memGetAddress(face + AIFace.MINDICES);
+            for (int k = 0; k < 3; k++) {
+                int index = MemoryUtil.memGetInt(faceIndices + k * Integer.BYTES);
+                if (index < 0 || index >= meshVertexCount) {    // (unsigned in Assimp)
+                    throw new RuntimeException(String.format("Mesh %s: face %d has index %d, out of range of its %d vertices",
+                            name, i, Integer.toUnsignedLong(index), meshVertexCount));
+                }
+                dst[numOfIndices++] = baseVertex + index;
+            }
+        }
+        return numOfIndices;
+    }
 }
@@ -0,0 +1,87 @@
+package graphics.core.io;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * To bake texture images into block compressed textures w/their full mipmap chain (see {@link TextureData}):
+ * the mipmap levels are generated on the CPU (2x2 box filter, in linear space for sRGB images), & each level is
+ * then compressed w/{@link BlockCompressor}. Baked textures are cached on disk by {@link TextureCache}, so this
+ * only runs the 1st time an image is loaded (or after it's edited).
+ */
+class TextureBaker {
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];  // sRGB byte -> linear value (0.0 to 1.0)
+    private static final int LINEAR_TO_SRGB_STEPS = 4096;
+    private static final byte[] LINEAR_TO_SRGB = new byte[LINEAR_TO_SRGB_STEPS + 1];    // linear value (quantized) -> sRGB byte
+
+    static {
+        for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+            float c = i / 255.0f;
+            SRGB_TO_LINEAR[i] = c <= 0.04045f ? c / 12.92f : (float) Math.pow((c + 0.055f) / 1.055f, 2.4f);
+        }
+        for (int i = 0; i < LINEAR_TO_SRGB.length; i++) {
+            float c = i / (float) LINEAR_TO_SRGB_STEPS;
+            float s = c <= 0.0031308f ? c * 12.92f : 1.055f * (float) Math.pow(c, 1.0f / 2.4f) - 0.055f;
+            LINEAR_TO_SRGB[i] = (byte) Math.round(s * 255.0f);
+        }
+    }
+
+    /**
+     * Bake the given image into a block compressed texture w/its full mipmap chain.
+     * @param image {@link ImageData} of the base level (RGB or RGBA, 1 byte per component)
+     * @param isRGBA true if the image is RGBA (compressed as BC3), false if RGB (compressed as BC1)
+     * @param isSRGB true if the image's colours are in sRGB space (mipmap levels are then filtered in linear space)
+     * @return baked {@link TextureData}
+     */
+    static TextureData bake(ImageData image, boolean isRGBA, boolean isSRGB){
+        int numOfComponents = isRGBA ? 4 : 3;
+        int width = image.getWidth(), height = image.getHeight();
+        ByteBuffer[] levels = new ByteBuffer[TextureData.getNumOfLevels(width, height)];
+
+        ByteBuffer pixels = image.getByteBuffer();
+        for (int level = 0; level < levels.length; level++) {
+            if (level > 0) {
+                pixels = downsample(pixels, width, height, numOfComponents, isSRGB);
+                width = Math.max(1, width / 2);
+                height = Math.max(1, height / 2);
+            }
+            levels[level] = BlockCompressor.compress(pixels, width, height, numOfComponents);
+        }
+        return new TextureData(isRGBA, isSRGB, image.getWidth(), image.getHeight(), levels);
+    }
+
+    /**
+     * Returns the next mipmap level of the given one, half its size (rounded down, min 1): each pixel is the
+     * average of a 2x2 block of the given level (clamped at the edges, for odd sizes).
+     * Colours in sRGB space are averaged in linear space (so that mipmaps don't darken); alpha always is linear.
+     */
+    private static ByteBuffer downsample(ByteBuffer pixels, int width, int height, int numOfComponents, boolean isSRGB){
+        int levelWidth = Math.max(1, width / 2), levelHeight = Math.max(1, height / 2);
+        ByteBuffer level = BufferUtils.createByteBuffer(levelWidth * levelHeight * numOfComponents);
+
+        IntStream.range(0, levelHeight).parallel().forEach(y -> {
+            int y0 = Math.min(y * 2, height - 1), y1 = Math.min(y * 2 + 1, height - 1);
+            for (int x = 0; x < levelWidth; x++) {
+                int x0 = Math.min(x * 2, width - 1), x1 = Math.min(x * 2 + 1, width - 1);
+                int p00 = (y0 * width + x0) * numOfComponents, p01 = (y0 * width + x1) * numOfComponents;
+                int p10 = (y1 * width + x0) * numOfComponents, p11 = (y1 * width + x1) * numOfComponents;
+                int dst = (y * levelWidth + x) * numOfComponents;
+
+                for (int c = 0; c < numOfComponents; c++) {
+                    int s00 = pixels.get(p00 + c) & 0xFF, s01 = pixels.get(p01 + c) & 0xFF;
+                    int s10 = pixels.get(p10 + c) & 0xFF, s11 = pixels.get(p11 + c) & 0xFF;
+                    if (isSRGB && c < 3) {
+                        float linear = (SRGB_TO_LINEAR[s00] + SRGB_TO_LINEAR[s01] + SRGB_TO_LINEAR[s10] + SRGB_TO_LINEAR[s11]) * 0.25f;
+                        level.put(dst + c, LINEAR_TO_SRGB[Math.round(linear * LINEAR_TO_SRGB_STEPS)]);
+                    } else {
+                        level.put(dst + c, (byte) ((s00 + s01 + s10 + s11 + 2) / 4));
+                    }
+                }
+            }
+        });
+        return level;
+    }
+}
@@ -0,0 +1,136 @@
+package graphics.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * On-disk cache of baked textures (see {@link TextureBaker}), so that images needn't be decoded, mipmapped &
+ * compressed on every startup. Each texture is stored in a binary (KTX-like) file, in the cache directory, named
+ * after the hash of the image file's content & the bake settings (so editing the image invalidates it).
+ *
+ * File format (little endian):
+ *      - header: magic ("TEXC"), version, block format (0: BC1, 1: BC3), flags (bit 0: sRGB),
+ *                width & height of the base level, nº of mipmap levels
+ *      - size of each level's data (in bytes)
+ *      - each level's compressed blocks, from the base level down to 1x1
+ * Cached files are memory-mapped when loaded, and their data handed straight to glCompressedTexImage2D.
+ */
+class TextureCache {
+    private static final int MAGIC = 0x43584554;    // "TEXC" read as a little endian int
+    private static final int VERSION = 1;           // must be incremented whenever the format or baking changes
+    private static final int HEADER_SIZE = 7 * 4;
+
+    private static final String CACHE_DIRECTORY = "./cache/textures";
+
+    /**
+     * Returns the path of the cache file for the given image file & bake settings, or null if the cache
+     * can't be used (e.g. the image file can't be read).
+     * @param imageFilename filename/filepath of the image file
+     * @param isRGBA true if the image is baked as RGBA (BC3), false if as RGB (BC1)
+     * @param isSRGB true if the image's colours are in sRGB space
+     */
+    static Path getCacheFile(String imageFilename, boolean isRGBA, boolean isSRGB){
+        String hash = MeshCache.hashFile(imageFilename);
+        if (hash == null) return null;
+        return Paths.get(CACHE_DIRECTORY, hash + (isRGBA ? "_bc3" : "_bc1") + (isSRGB ? "_srgb" : "") + ".tex");
+    }
+
+    /**
+     * Load the texture data in the given cache file, by memory-mapping it.
+     * @param cacheFile path of the cache file (see getCacheFile())
+     * @return {@link TextureData} backed by the mapped file, or null if the file doesn't exist or isn't valid
+     */
+    static TextureData load(Path cacheFile){
+        if (cacheFile == null || !Files.isRegularFile(cacheFile)) return null;
+
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return null;
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());  // (stays valid after closing)
+            file.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (file.getInt() != MAGIC || file.getInt() != VERSION) return null;
+            int blockFormat = file.getInt();
+            if (blockFormat != 0 && blockFormat != 1) return null;
+            boolean hasAlpha = blockFormat == 1;
+            boolean isSRGB = (file.getInt() & 1) != 0;
+            int width = file.getInt();
+            int height = file.getInt();
+            int numOfLevels = file.getInt();
+            if (width <= 0 || height <= 0 || numOfLevels != TextureData.getNumOfLevels(width, height)
+                    || channel.size() < HEADER_SIZE + (long) numOfLevels * 4) return null;
+
+            // check sizes are consistent
+            int blockSize = hasAlpha ? BlockCompressor.BC3_BLOCK_SIZE : BlockCompressor.BC1_BLOCK_SIZE;
+            int[] levelSizes = new int[numOfLevels];
+            long dataSize = 0;
+            for (int level = 0; level < numOfLevels; level++) {
+                levelSizes[level] = file.getInt();
+                int expectedSize = BlockCompressor.getCompressedSize(Math.max(1, width >> level), Math.max(1, height >> level), blockSize);
+                if (levelSizes[level] != expectedSize) return null;
+                dataSize += expectedSize;
+            }
+            int offset = HEADER_SIZE + numOfLevels * 4;
+            if (channel.size() != offset + dataSize) return null;
+
+            ByteBuffer[] levels = new ByteBuffer[numOfLevels];
+            for (int level = 0; level < numOfLevels; level++) {
+                levels[level] = slice(file, offset, levelSizes[level]);
+                offset += levelSizes[level];
+            }
+            return new TextureData(hasAlpha, isSRGB, width, height, levels);
+        } catch (IOException e) {
+            System.err.println("Couldn't read cached texture " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int size){
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + size);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Save the given texture data to the given cache file (errors are reported, but otherwise ignored).
+     * The file is written to a temporary file 1st, so that a partially written file is never read.
+     * @param cacheFile path of the cache file (see getCacheFile())
+     * @param data {@link TextureData} to save
+     */
+    static void save(Path cacheFile, TextureData data){
+        if (cacheFile == null) return;
+
+        int numOfLevels = data.getNumOfLevels();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + numOfLevels * 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putInt(data.hasAlpha() ? 1 : 0)
+                .putInt(data.isSRGB() ? 1 : 0)
+                .putInt(data.getWidth())
+                .putInt(data.getHeight())
+                .putInt(numOfLevels);
+        for (int level = 0; level < numOfLevels; level++) header.putInt(data.getLevel(level).remaining());
+        header.flip();
+
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            Path tempFile = Files.createTempFile(cacheFile.getParent(), "texture", ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) channel.write(header);
+                for (int level = 0; level < numOfLevels; level++) {
+                    ByteBuffer buffer = data.getLevel(level).duplicate();
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Couldn't write cached texture " + cacheFile + ": " + e.getMessage());
+        }
+    }
+}
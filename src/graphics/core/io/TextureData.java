@@ -0,0 +1,77 @@
+package graphics.core.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encapsulates a block compressed texture w/its full mipmap chain, as baked by {@link TextureBaker}.
+ * This data includes:
+ *      - block format: BC1 (RGB) or BC3 (RGBA)
+ *      - whether the colours are in sRGB space (e.g. diffuse maps) or linear space
+ *      - width & height of the base level
+ *      - ByteBuffer w/the compressed blocks of each mipmap level (level 0 being the base level, down to 1x1)
+ */
+public class TextureData {
+    private boolean hasAlpha;
+    private boolean isSRGB;
+    private int width, height;
+    private ByteBuffer[] levels;
+
+    TextureData(boolean hasAlpha, boolean isSRGB, int width, int height, ByteBuffer[] levels){
+        this.hasAlpha = hasAlpha;
+        this.isSRGB = isSRGB;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    /**
+     * Returns the nº of mipmap levels of a full mipmap chain for an image of the given size.
+     */
+    public static int getNumOfLevels(int width, int height){
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Returns true if the texture is compressed as BC3 (RGBA), false if as BC1 (RGB).
+     */
+    public boolean hasAlpha() {
+        return hasAlpha;
+    }
+
+    public boolean isSRGB() {
+        return isSRGB;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumOfLevels() {
+        return levels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    public ByteBuffer getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Returns the total size of the compressed data (of all levels), in bytes.
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (ByteBuffer level : levels) size += level.remaining();
+        return size;
+    }
+}
@@ -0,0 +1,152 @@
+package graphics.core.io;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * To load texture images concurrently.
+ * Images are decoded (w/{@link ImageLoader}) on a pool of worker threads, & their pixels then handed to the GL
+ * thread, which uploads them to the GPU when uploadDecodedTextures() or finishLoading() is called.
+ * e.g. textures created while setting up a scene are all decoded at once, & uploaded when the setup is done.
+ * Textures can also be loaded block compressed, w/a precomputed mipmap (see loadCompressed()).
+ * ! All methods must be called from the GL thread (the upload callbacks are run on it).
+ */
+public class TextureLoader {
+
+    private static final ExecutorService decodePool = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),    // (the GL thread mostly waits while textures are decoded)
+            runnable -> {
+                Thread thread = new Thread(runnable, "texture-decode");
+                thread.setDaemon(true);     // (don't keep the app alive)
+                return thread;
+            });
+
+    private static final List<PendingUpload> pendingUploads = new ArrayList<>();  // images being decoded, in request order
+
+    /**
+     * Images being decoded (or a texture being baked) for a texture, & the upload to run once they're ready.
+     */
+    private static class PendingUpload {
+        final String description;
+        final CompletableFuture<Runnable> upload;   // completes w/the upload (to run on the GL thread) once decoded
+
+        PendingUpload(String description, CompletableFuture<Runnable> upload){
+            this.description = description;
+            this.upload = upload;
+        }
+
+        boolean isDecoded(){
+            return upload.isDone();
+        }
+
+        /**
+         * Upload the decoded data (waiting for it if needed).
+         * @throws RuntimeException if an image couldn't be loaded
+         */
+        void run(){
+            Runnable decoded;
+            try {
+                decoded = upload.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            decoded.run();
+        }
+    }
+
+    /**
+     * Decode the given image files concurrently on the worker pool, & call the given upload callback w/their data
+     * (in the same order as the filenames) on the GL thread once they've all been decoded.
+     * @param filenames filenames/filepaths of the image files to load
+     * @param isRGBA true if should interpret image data as RGBA instead of RGB
+     * @param flipVertically true if must flip imgs vertically (false for cubemap texture images)
+     * @param upload called w/the images' data to upload them to the GPU
+     */
+    public static void load(String[] filenames, boolean isRGBA, boolean flipVertically, Consumer<ImageData[]> upload){
+        List<CompletableFuture<ImageData>> images = new ArrayList<>(filenames.length);
+        for (String filename : filenames)
+            images.add(CompletableFuture.supplyAsync(() -> ImageLoader.loadImage(filename, isRGBA, flipVertically), decodePool));
+        CompletableFuture<Runnable> ready = CompletableFuture.allOf(images.toArray(new CompletableFuture<?>[0])).thenApply(v -> () -> {
+            ImageData[] decoded = new ImageData[images.size()];
+            for (int i = 0; i < decoded.length; i++) decoded[i] = images.get(i).join();
+            upload.accept(decoded);
+        });
+        pendingUploads.add(new PendingUpload(String.join(", ", filenames), ready));
+    }
+
+    /**
+     * Load the given image file as a block compressed texture w/its full mipmap chain, on the worker pool, & call
+     * the given upload callback w/its data on the GL thread once loaded.
+     * The texture is read from the {@link TextureCache} if it was baked before, else the image is decoded & baked
+     * (w/{@link TextureBaker}), & saved to the cache for the next runs.
+     * @param filename filename/filepath of the image file to load
+     * @param isRGBA true if should interpret image data as RGBA (compressed as BC3) instead of RGB (as BC1)
+     * @param isSRGB true if the image's colours are in sRGB space (e.g. diffuse maps)
+     * @param upload called w/the texture's data to upload it to the GPU
+     */
+    public static void loadCompressed(String filename, boolean isRGBA, boolean isSRGB, Consumer<TextureData> upload){
+        CompletableFuture<Runnable> ready = CompletableFuture
+                .supplyAsync(() -> loadBakedTexture(filename, isRGBA, isSRGB), decodePool)
+                .thenApply(data -> () -> upload.accept(data));
+        pendingUploads.add(new PendingUpload(filename, ready));
+    }
+
+    private static TextureData loadBakedTexture(String filename, boolean isRGBA, boolean isSRGB){
+        Path cacheFile = TextureCache.getCacheFile(filename, isRGBA, isSRGB);
+        TextureData data = TextureCache.load(cacheFile);
+        if (data == null) {
+            TextureData baked = TextureBaker.bake(ImageLoader.loadImage(filename, isRGBA, true), isRGBA, isSRGB);
+            TextureCache.save(cacheFile, baked);
+            // re-read it mapped from the cache file, so that no copy of its levels is kept in memory
+            // (the baked data is only kept if the cache couldn't be written)
+            data = TextureCache.load(cacheFile);
+            if (data == null) data = baked;
+        }
+        return data;
+    }
+
+    /**
+     * Upload the textures whose images have finished decoding. Should be called once per frame.
+     * Images which couldn't be loaded are reported & skipped.
+     * @return nº of textures uploaded
+     */
+    public static int uploadDecodedTextures(){
+        int uploaded = 0;
+        Iterator<PendingUpload> it = pendingUploads.iterator();
+        while (it.hasNext()) {
+            PendingUpload pending = it.next();
+            if (!pending.isDecoded()) continue;
+            it.remove();
+            try {
+                pending.run();
+                uploaded++;
+            } catch (RuntimeException e) {
+                System.err.println("Couldn't load texture " + pending.description + ": " + e.getMessage());
+            }
+        }
+        return uploaded;
+    }
+
+    /**
+     * Wait for all images being decoded & upload their textures (e.g. at the end of the scene's setup, so that
+     * all its textures are loaded before the 1st frame).
+     * @throws RuntimeException if an image couldn't be loaded
+     */
+    public static void finishLoading(){
+        while (!pendingUploads.isEmpty()) pendingUploads.remove(0).run();
+    }
+
+    /**
+     * Returns the nº of textures whose images are being decoded or waiting to be uploaded.
+     */
+    public static int getNumOfPendingTextures(){
+        return pendingUploads.size();
+    }
+}
@@ -1,29 +1,46 @@
 package graphics.materials;
 
+import graphics.core.GLStateCache;
 import graphics.shaders.ShaderProgram;
 import graphics.textures.Texture;
+import graphics.textures.TextureLayer;
 import graphics.textures.TextureType;
 import org.joml.Vector3f;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
-import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
 
 /**
  * Represents a material, which has:
  *      - diffuse & specular colours OR a list of textures (some of which will be diffuse & specular maps...)
+ *        OR layers of texture arrays (at most 1 per {@link TextureType}, see {@link TextureLayer})
  *      - ambient, diffuse & specular reflection coefficients
  *      - a shininess coefficient for specular reflection
+ * A material retains the textures in its list (see {@link Texture#retain()}), & releases them when its list is
+ * replaced or when the material is released (& likewise the texture arrays of its layers).
+ * Materials whose draws can be batched together (same texture arrays & coefficients, differing only in the layers
+ * they use) share a batch id, which renderers sort & group draws by (see getBatchId()).
  */
 public class Material {
 
+    private static int numOfMaterials = 0;
+    private final int id = numOfMaterials++;    // unique id (e.g. to sort draws by material)
+
+    public static final int TEXTURE_ARRAY_UNIT = 8;    // texture unit of the 1st texture array (1 per TextureType, in order), after those of textures & shadow maps
+    private static final Map<String, Integer> mapKeyToBatchId = new HashMap<>();   // batch ids of materials using texture arrays
+
     private Vector3f diffColour, specColour;
     private float K_a, K_diff, K_spec;
     private float shininess;
     private List<Texture> texturesList;
+    private TextureLayer[] textureLayers;   // layers of texture arrays, instead of textures (null if not used)
+    private final int[] layerIndices = new int[TextureType.values().length];   // layer used for each texture type
+    private int batchId = -1;   // (-1 until computed)
 
     public Material(){
         diffColour = new Vector3f(0.973f, 0.639f, 0.475f);  // coral orange colour
@@ -53,6 +70,7 @@ public class Material {
         K_spec = 0.8f;
         shininess = 64f;
         texturesList = List.copyOf(texList);
+        texturesList.forEach(Texture::retain);
     }
 
     public Material(float K_a, float K_diff, float K_spec, float shininess, Vector3f diffColour, Vector3f specColour){
@@ -73,6 +91,34 @@ public class Material {
         this.K_spec = K_spec;
         this.shininess = shininess;
         texturesList = List.copyOf(texList);
+        texturesList.forEach(Texture::retain);
+    }
+
+    /**
+     * Material using layers of texture arrays (which are passed per draw, as vertex attribute 11): it must be drawn
+     * w/shaders that support texture arrays (w/a 'materialUsesTextureArrays' uniform, e.g. phong_vs.glsl or
+     * phong_shadowMaps(_instanced)_vs.glsl w/any of the phong/blinnPhong fragment shaders).
+     */
+    public Material(TextureLayer[] textureLayers){
+        diffColour = null;
+        specColour = null;
+        K_a = 0.5f;
+        K_diff = 0.4f;
+        K_spec = 0.8f;
+        shininess = 64f;
+        texturesList = null;
+        setTextureLayers(textureLayers);
+    }
+
+    public Material(float K_a, float K_diff, float K_spec, float shininess, TextureLayer[] textureLayers){
+        diffColour = null;
+        specColour = null;
+        this.K_a = K_a;
+        this.K_diff = K_diff;
+        this.K_spec = K_spec;
+        this.shininess = shininess;
+        texturesList = null;
+        setTextureLayers(textureLayers);
     }
 
     /**
@@ -85,7 +131,9 @@ public class Material {
         shader.uploadFloat("material.K_spec", K_spec);
         shader.uploadFloat("material.shininess", shininess);
 
-        if(texturesList == null){ // upload colours
+        if(textureLayers != null){ // (layers are passed per draw)
+            shader.uploadInt("materialUsesTextures", 1);
+        }else if(texturesList == null){ // upload colours
             shader.uploadInt("materialUsesTextures", 0);
             shader.uploadVec3f("material.diffuseColour", diffColour);
             shader.uploadVec3f("material.specularColour", specColour);
@@ -93,6 +141,7 @@ public class Material {
             shader.uploadInt("materialUsesTextures", 1);
             uploadTexturesToShader(shader);
         }
+        uploadTextureArraysToShader(shader);
 
         shader.uploadInt("isReflectiveMaterial", 0);    // not a reflective material
         shader.uploadInt("isRefractiveMaterial", 0);    // not a refractive material
@@ -131,17 +180,98 @@ public class Material {
     }
 
     /**
-     * Bind the material's textures to the appropriate texture units.
+     * Upload whether the material uses texture arrays, & the texture units of the arrays to the appropriate
+     * sampler2DArray in the given shader program (material.diffuse_array, material.specular_array...).
+     * The units are uploaded even if the material doesn't use arrays, so that the samplers never share a unit w/the
+     * sampler2Ds of other materials' textures.
+     * @param shader {@link ShaderProgram} to which to upload the texture arrays.
+     * @throws IllegalStateException if the material uses texture arrays & the shader samples material maps, but
+     *                               not from texture arrays (it has no 'materialUsesTextureArrays' uniform)
+     */
+    protected void uploadTextureArraysToShader(ShaderProgram shader){
+        if(textureLayers != null && shader.getUniformLocation("materialUsesTextures") != -1
+                && shader.getUniformLocation("materialUsesTextureArrays") == -1)
+            throw new IllegalStateException("Material uses texture arrays, but its shader program can't sample them");
+        shader.uploadInt("materialUsesTextureArrays", textureLayers == null ? 0 : 1);
+        shader.uploadInt("material.diffuse_array", TEXTURE_ARRAY_UNIT + TextureType.DIFFUSE.ordinal());
+        shader.uploadInt("material.specular_array", TEXTURE_ARRAY_UNIT + TextureType.SPECULAR.ordinal());
+        shader.uploadInt("material.reflection_array", TEXTURE_ARRAY_UNIT + TextureType.REFLECTION.ordinal());
+        shader.uploadInt("material.refraction_array", TEXTURE_ARRAY_UNIT + TextureType.REFRACTION.ordinal());
+    }
+
+    /**
+     * Bind the material's textures (or texture arrays) to the appropriate texture units.
      */
     public void bindTextures(){
         if(texturesList != null) {
             for (int i = 0; i < texturesList.size(); i++) {
-                glActiveTexture(GL_TEXTURE0 + i); // activate proper texture unit before binding
-                glBindTexture(GL_TEXTURE_2D, texturesList.get(i).getHandle());  // bind texture to appropriate texture unit
+                GLStateCache.activeTexture(i); // activate proper texture unit before binding
+                GLStateCache.bindTexture(GL_TEXTURE_2D, texturesList.get(i).getHandle());  // bind texture to appropriate texture unit
+            }
+        }
+        if(textureLayers != null) {
+            for (TextureLayer layer : textureLayers) {
+                GLStateCache.activeTexture(TEXTURE_ARRAY_UNIT + layer.getType().ordinal());
+                GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, layer.getArray().getHandle());
             }
         }
     }
 
+    /**
+     * Returns the id of the batch of materials this one belongs to: materials w/the same batch id can be drawn w/the
+     * same textures bound & uniforms uploaded (only the layers of their texture arrays differ, & these are passed
+     * per draw). Materials not using texture arrays are in a batch of their own (their id).
+     */
+    public int getBatchId() {
+        if(batchId < 0) batchId = textureLayers == null ? id : mapKeyToBatchId.computeIfAbsent(getBatchKey(), key -> numOfMaterials++);
+        return batchId;
+    }
+
+    /**
+     * Returns the key of the material's batch: its class, coefficients & texture arrays.
+     * Subclasses w/more attributes uploaded to shaders must add them.
+     */
+    protected String getBatchKey() {
+        StringBuilder key = new StringBuilder(getClass().getName())
+                .append('#').append(K_a).append('#').append(K_diff).append('#').append(K_spec).append('#').append(shininess);
+        for (TextureType type : TextureType.values()) {
+            TextureLayer layer = getTextureLayer(type);
+            key.append('#').append(layer == null ? -1 : layer.getArray().getArrayId());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Forget the material's batch id, so that it's recomputed (e.g. after one of its coefficients changed).
+     */
+    protected void invalidateBatchId() {
+        batchId = -1;
+    }
+
+    /**
+     * Returns the layer the material uses of the given type of texture, or null if none.
+     */
+    private TextureLayer getTextureLayer(TextureType type) {
+        if(textureLayers != null) {
+            for (TextureLayer layer : textureLayers) if (layer.getType() == type) return layer;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of the layer the material uses of the given type of texture (0 if none).
+     */
+    public int getLayerIndex(TextureType type) {
+        return layerIndices[type.ordinal()];
+    }
+
+    public boolean usesTextureArrays() {
+        return textureLayers != null;
+    }
+
+    public int getId() {
+        return id;
+    }
     public Vector3f getDiffColour() {
         return diffColour;
     }
@@ -163,6 +293,9 @@ public class Material {
     public List<Texture> getTexturesList() {
         return texturesList == null ? null : List.copyOf(texturesList);
     }
+    public TextureLayer[] getTextureLayers() {
+        return textureLayers == null ? null : textureLayers.clone();
+    }
 
     public void setDiffColour(Vector3f diffColour) {
         this.diffColour = diffColour;
@@ -172,17 +305,57 @@ public class Material {
     }
     public void setK_a(float k_a) {
         K_a = k_a;
+        invalidateBatchId();
     }
     public void setK_diff(float k_diff) {
         K_diff = k_diff;
+        invalidateBatchId();
     }
     public void setK_spec(float k_spec) {
         K_spec = k_spec;
+        invalidateBatchId();
     }
     public void setShininess(float shininess) {
         this.shininess = shininess;
+        invalidateBatchId();
     }
     public void setTexturesList(List<Texture> texturesList) {
-        this.texturesList = List.copyOf(texturesList);
+        List<Texture> newList = List.copyOf(texturesList);
+        newList.forEach(Texture::retain);     // (before releasing the old ones, in case they're the same)
+        if(this.texturesList != null) this.texturesList.forEach(Texture::release);
+        this.texturesList = newList;
+    }
+
+    /**
+     * Set the layers of texture arrays used by the material (at most 1 per {@link TextureType}), retaining their
+     * arrays & releasing those of the previous layers.
+     * @throws IllegalArgumentException if 2 layers have the same type
+     */
+    public void setTextureLayers(TextureLayer[] textureLayers) {
+        TextureLayer[] newLayers = textureLayers.clone();
+        int[] newIndices = new int[layerIndices.length];
+        boolean[] hasType = new boolean[layerIndices.length];
+        for (TextureLayer layer : newLayers) {
+            int type = layer.getType().ordinal();
+            if(hasType[type]) throw new IllegalArgumentException("Material can't use 2 texture layers of type " + layer.getType());
+            hasType[type] = true;
+            newIndices[type] = layer.getLayer();
+        }
+        for (TextureLayer layer : newLayers) layer.getArray().retain();    // (before releasing the old ones, in case they're the same)
+        if(this.textureLayers != null) for (TextureLayer layer : this.textureLayers) layer.getArray().release();
+        this.textureLayers = newLayers;
+        System.arraycopy(newIndices, 0, layerIndices, 0, layerIndices.length);
+        invalidateBatchId();
+    }
+
+    /**
+     * Release the material's textures & texture arrays (which are deleted if no other material uses them).
+     * The material shouldn't be used afterwards.
+     */
+    public void release() {
+        if(texturesList != null) texturesList.forEach(Texture::release);
+        texturesList = null;
+        if(textureLayers != null) for (TextureLayer layer : textureLayers) layer.getArray().release();
+        textureLayers = null;
     }
 }
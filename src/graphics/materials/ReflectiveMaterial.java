@@ -2,6 +2,7 @@ package graphics.materials;
 
 import graphics.shaders.ShaderProgram;
 import graphics.textures.Texture;
+import graphics.textures.TextureLayer;
 import graphics.textures.TextureType;
 import org.joml.Vector3f;
 
@@ -47,6 +48,14 @@ public class ReflectiveMaterial extends Material{
         super(K_a, K_diff, K_spec, shininess, texList);
     }
 
+    public ReflectiveMaterial(TextureLayer[] textureLayers){
+        super(textureLayers);
+    }
+
+    public ReflectiveMaterial(float K_a, float K_diff, float K_spec, float shininess, TextureLayer[] textureLayers){
+        super(K_a, K_diff, K_spec, shininess, textureLayers);
+    }
+
     @Override
     public void uploadToShader(ShaderProgram shader){
         shader.uploadFloat("material.K_a", this.getK_a());
@@ -55,7 +64,9 @@ public class ReflectiveMaterial extends Material{
         shader.uploadFloat("material.K_refl", K_refl);
         shader.uploadFloat("material.shininess", this.getShininess());
 
-        if(this.getTexturesList() == null){ // upload colours
+        if(this.usesTextureArrays()){ // (layers are passed per draw)
+            shader.uploadInt("materialUsesTextures", 1);
+        }else if(this.getTexturesList() == null){ // upload colours
             shader.uploadInt("materialUsesTextures", 0);
             shader.uploadVec3f("material.diffuseColour", this.getDiffColour());
             shader.uploadVec3f("material.specularColour", this.getSpecColour());
@@ -63,12 +74,18 @@ public class ReflectiveMaterial extends Material{
             shader.uploadInt("materialUsesTextures", 1);
             uploadTexturesToShader(shader);
         }
+        uploadTextureArraysToShader(shader);
 
         shader.uploadInt("isReflectiveMaterial", 1);
         shader.uploadInt("isRefractiveMaterial", 0);    // not a reflective material
     }
 
 
+    @Override
+    protected String getBatchKey() {
+        return super.getBatchKey() + "#" + K_refl;
+    }
+
     private void uploadTexturesToShader(ShaderProgram shader) {
         int diffNum = 1;
         int specNum = 1;
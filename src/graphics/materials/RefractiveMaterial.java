@@ -2,6 +2,7 @@ package graphics.materials;
 
 import graphics.shaders.ShaderProgram;
 import graphics.textures.Texture;
+import graphics.textures.TextureLayer;
 import graphics.textures.TextureType;
 import org.joml.Vector3f;
 
@@ -66,6 +67,20 @@ public class RefractiveMaterial extends Material {
         super(K_a, K_diff, K_spec, shininess, texList);
     }
 
+    public RefractiveMaterial(TextureLayer[] textureLayers){
+        super(textureLayers);
+    }
+
+    public RefractiveMaterial(TextureLayer[] textureLayers, float refractionIndex){
+        super(textureLayers);
+        this.refrIndex = refractionIndex;
+    }
+
+    public RefractiveMaterial(float K_a, float K_diff, float K_spec, float shininess, TextureLayer[] textureLayers, float refractiveIndex){
+        super(K_a, K_diff, K_spec, shininess, textureLayers);
+        this.refrIndex = refractiveIndex;
+    }
+
     public RefractiveMaterial(float K_a, float K_diff, float K_spec, float shininess, List<Texture> texList, float refractiveIndex){
         super(K_a, K_diff, K_spec, shininess, texList);
         this.refrIndex = refractiveIndex;
@@ -80,7 +95,9 @@ public class RefractiveMaterial extends Material {
         shader.uploadFloat("material.shininess", this.getShininess());
         shader.uploadFloat("material.refractiveIndex", refrIndex);
 
-        if(this.getTexturesList() == null){ // upload colours
+        if(this.usesTextureArrays()){ // (layers are passed per draw)
+            shader.uploadInt("materialUsesTextures", 1);
+        }else if(this.getTexturesList() == null){ // upload colours
             shader.uploadInt("materialUsesTextures", 0);
             shader.uploadVec3f("material.diffuseColour", this.getDiffColour());
             shader.uploadVec3f("material.specularColour", this.getSpecColour());
@@ -88,12 +105,18 @@ public class RefractiveMaterial extends Material {
             shader.uploadInt("materialUsesTextures", 1);
             uploadTexturesToShader(shader);
         }
+        uploadTextureArraysToShader(shader);
 
         shader.uploadInt("isRefractiveMaterial", 1);
         shader.uploadInt("isReflectiveMaterial", 0);    // not a reflective material
     }
 
 
+    @Override
+    protected String getBatchKey() {
+        return super.getBatchKey() + "#" + K_refr + "#" + refrIndex;
+    }
+
     private void uploadTexturesToShader(ShaderProgram shader) {
         int diffNum = 1;
         int specNum = 1;
@@ -1,10 +1,9 @@
 package graphics.renderEngine;
 
-import graphics.scene.Entity;
+import graphics.core.GLStateCache;
 import graphics.scene.Scene;
 import graphics.shaders.ShaderProgram;
 
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
 
 /**
@@ -27,9 +26,9 @@ public class EntityFullSkyboxReflectionRenderer extends Renderer{
         shaderProgram.uploadVec3f("wc_cameraPos", RenderContext.getCameraPos());
 
         // if scene uses skybox, bind skybox texture
-        if(scene.getSkybox() != null) glBindTexture(GL_TEXTURE_CUBE_MAP, scene.getSkybox().getCubeMapTexture().getHandle());
+        if(scene.getSkybox() != null) GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, scene.getSkybox().getCubeMapTexture().getHandle());
 
-        // render components
-        for(Entity component : scene.getComponents()) component.render(shaderProgram);
+        // render components (culling those outside the camera's view frustum)
+        renderEntities(scene, RenderContext.getCameraCuller(), RenderQueue.Pass.OPAQUE, RenderContext.getCameraPos(), null);
     }
 }
@@ -1,12 +1,11 @@
 package graphics.renderEngine;
 
+import graphics.core.GLStateCache;
 import graphics.lights.FlashLight;
 import graphics.lights.PointLight;
-import graphics.scene.Entity;
 import graphics.scene.Scene;
 import graphics.shaders.ShaderProgram;
 
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
 
 /**
@@ -44,10 +43,10 @@ public class EntityPhongRenderer extends Renderer{
         updateFlashlightInShader(scene.getFlashLight());
 
         // if scene uses skybox, bind skybox texture
-        if(scene.getSkybox() != null) glBindTexture(GL_TEXTURE_CUBE_MAP, scene.getSkybox().getCubeMapTexture().getHandle());
+        if(scene.getSkybox() != null) GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, scene.getSkybox().getCubeMapTexture().getHandle());
 
-        // render components
-        for(Entity component : scene.getComponents()) component.render(shaderProgram);
+        // render components (culling those outside the camera's view frustum)
+        renderEntities(scene, RenderContext.getCameraCuller(), RenderQueue.Pass.OPAQUE, RenderContext.getCameraPos(), null);
     }
 
     private void updateFlashlightInShader(FlashLight flashLight){
@@ -1,13 +1,12 @@
 package graphics.renderEngine;
 
+import graphics.core.GLStateCache;
 import graphics.lights.FlashLight;
 import graphics.lights.PointLight;
-import graphics.scene.Entity;
 import graphics.scene.Scene;
 import graphics.shaders.ShaderProgram;
 
 import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL13.*;
 
 /**
@@ -19,7 +18,14 @@ public class EntityPhongWShadowMapsRenderer extends Renderer {
     private int shadowMapHandle;
 
     public EntityPhongWShadowMapsRenderer(ShaderProgram phongShaderToUse, int shadowMapHandle) {
-        super(phongShaderToUse);
+        this(phongShaderToUse, shadowMapHandle, false);
+    }
+
+    /**
+     * @param useInstancing true to use instanced rendering (phongShaderToUse must then use phong_shadowMaps_instanced_vs.glsl)
+     */
+    public EntityPhongWShadowMapsRenderer(ShaderProgram phongShaderToUse, int shadowMapHandle, boolean useInstancing) {
+        super(phongShaderToUse, useInstancing);
         this.shadowMapHandle = shadowMapHandle;
     }
 
@@ -55,17 +61,21 @@ public class EntityPhongWShadowMapsRenderer extends Renderer {
         updateFlashlightInShader(scene.getFlashLight());
 
         // if scene uses skybox, bind skybox texture
-        if(scene.getSkybox() != null) glBindTexture(GL_TEXTURE_CUBE_MAP, scene.getSkybox().getCubeMapTexture().getHandle());
+        if(scene.getSkybox() != null) GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, scene.getSkybox().getCubeMapTexture().getHandle());
 
-        // render components
-        for(Entity component : scene.getComponents()){
-            int offset = component.numOfTexUsedByMaterial();
-            shaderProgram.uploadInt("shadowMap", offset);    // shadow map at tex unit 0
-            glActiveTexture(GL_TEXTURE0 + offset); // activate appropriate texture unit before binding shadow map
-            glBindTexture(GL_TEXTURE_2D, shadowMapHandle);  // bind shadow map texture to appropriate texture unit
+        // render components (culling those outside the camera's view frustum)
+        if(usesInstancing()) shaderProgram.uploadMatrix4f("viewProj_m", RenderContext.getViewProjMatrix());
+        renderEntities(scene, RenderContext.getCameraCuller(), RenderQueue.Pass.OPAQUE, RenderContext.getCameraPos(), this::bindShadowMap);
+    }
 
-            component.render(shaderProgram);
-        }
+    /**
+     * Bind the shadow map to the 1st texture unit after those used by the material about to be rendered.
+     * @param offset nº of textures used by the material
+     */
+    private void bindShadowMap(int offset){
+        shaderProgram.uploadInt("shadowMap", offset);    // shadow map at tex unit 0
+        GLStateCache.activeTexture(offset); // activate appropriate texture unit before binding shadow map
+        GLStateCache.bindTexture(GL_TEXTURE_2D, shadowMapHandle);  // bind shadow map texture to appropriate texture unit
     }
 
     private void updateFlashlightInShader(FlashLight flashLight){
@@ -0,0 +1,74 @@
+package graphics.renderEngine;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.List;
+
+/**
+ * Tests whether bounding boxes are inside the view frustum(s) of a render pass, so that
+ * entities that can't be seen in that pass don't have to be rendered.
+ * A box is considered visible if it intersects any of the culler's frustums (e.g. the 6 faces
+ * of a point light's shadow cubemap).
+ */
+public class FrustumCuller {
+    private FrustumIntersection[] frustums = new FrustumIntersection[0];
+    private int numOfFrustums = 0;
+
+    /**
+     * Set the culler to use the frustum defined by the given view-projection matrix.
+     * @param viewProj {@link Matrix4f} (projection * view) defining the frustum
+     */
+    public void setFrustum(Matrix4f viewProj){
+        ensureCapacity(1);
+        frustums[0].set(viewProj);
+        numOfFrustums = 1;
+    }
+
+    /**
+     * Set the culler to use the frustums defined by the given view-projection matrices.
+     * @param viewProjs list of {@link Matrix4f} (projection * view) defining the frustums
+     */
+    public void setFrustums(List<Matrix4f> viewProjs){
+        ensureCapacity(viewProjs.size());
+        for(int i = 0; i < viewProjs.size(); i++) frustums[i].set(viewProjs.get(i));
+        numOfFrustums = viewProjs.size();
+    }
+
+    private void ensureCapacity(int capacity){
+        if(frustums.length >= capacity) return;
+        FrustumIntersection[] newFrustums = new FrustumIntersection[capacity];
+        System.arraycopy(frustums, 0, newFrustums, 0, frustums.length);
+        for(int i = frustums.length; i < capacity; i++) newFrustums[i] = new FrustumIntersection();
+        frustums = newFrustums;
+    }
+
+    /**
+     * Returns true if the given axis-aligned box is (at least partly) inside any of the frustums.
+     * @param min minimum corner of the box
+     * @param max maximum corner of the box
+     */
+    public boolean isVisible(Vector3f min, Vector3f max){
+        for(int i = 0; i < numOfFrustums; i++){
+            if(frustums[i].testAab(min, max)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tests the given axis-aligned box against the frustums of the culler.
+     * @return FrustumIntersection.INSIDE if the box is fully inside any of the frustums,
+     *         FrustumIntersection.OUTSIDE if it's outside all of them, and FrustumIntersection.INTERSECT otherwise
+     */
+    public int intersect(float minX, float minY, float minZ, float maxX, float maxY, float maxZ){
+        int result = FrustumIntersection.OUTSIDE;
+        for(int i = 0; i < numOfFrustums; i++){
+            int intersection = frustums[i].intersectAab(minX, minY, minZ, maxX, maxY, maxZ);
+            if(intersection == FrustumIntersection.INSIDE) return FrustumIntersection.INSIDE;
+            if(intersection == FrustumIntersection.INTERSECT) result = FrustumIntersection.INTERSECT;
+            // (otherwise intersectAab returns the index of the plane the box is outside of)
+        }
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+package graphics.renderEngine;
+
+import graphics.core.FrameStats;
+import graphics.materials.Material;
+import graphics.scene.DrawableEntity;
+import graphics.shapes.meshes.Mesh;
+import graphics.textures.TextureType;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * Draws runs of drawable entities which share the same {@link Mesh} and {@link Material} batch
+ * (e.g. as found by a {@link RenderQueue}) with a single instanced draw call.
+ * The model & normal matrices of the entities are streamed into an instance VBO, and read
+ * by the (instanced) vertex shader as per-instance attributes:
+ *      - location 3-6: model matrix
+ *      - location 7-10: normal matrix (not used when rendering to a depth map)
+ *      - location 11: layers of the material's texture arrays (diffuse, specular, reflection, refraction),
+ *                     so that entities whose materials only differ in their layers are drawn together
+ * (see e.g. phong_shadowMaps_instanced_vs.glsl)
+ */
+class InstanceBatcher {
+
+    static final int MODEL_M_LOCATION = 3;
+    static final int NORMAL_M_LOCATION = 7;
+    static final int TEX_LAYERS_LOCATION = 11;
+    private static final int FLOATS_PER_INSTANCE = 36;  // model & normal matrices, & texture layers
+    private static final int STRIDE = FLOATS_PER_INSTANCE * Float.BYTES;
+
+    private int instanceVBO = -1;
+    private FloatBuffer instanceData;
+
+    /**
+     * Draw the given entities, which must all share the given mesh (& the same material batch), with a single
+     * instanced draw call, using the currently active (instanced) shader.
+     * ! The mesh's VAO, per-vertex attributes & material must be previously bound.
+     * @param entities list of {@link DrawableEntity} to draw
+     * @param mesh {@link Mesh} shared by the entities
+     * @param toDepthMap true if rendering to a depth map (then normal matrices & texture layers aren't needed)
+     */
+    void draw(List<DrawableEntity> entities, Mesh mesh, boolean toDepthMap){
+        uploadInstanceData(entities, toDepthMap);
+
+        // bind per-instance matrices (a mat4 attribute takes 4 locations, 1 per column)
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVBO);
+        bindInstanceMatrix(MODEL_M_LOCATION, 0);
+        if(!toDepthMap){
+            bindInstanceMatrix(NORMAL_M_LOCATION, 16 * Float.BYTES);
+            glVertexAttribPointer(TEX_LAYERS_LOCATION, 4, GL_FLOAT, false, STRIDE, 32 * Float.BYTES);
+            glVertexAttribDivisor(TEX_LAYERS_LOCATION, 1);
+            glEnableVertexAttribArray(TEX_LAYERS_LOCATION);
+        }
+
+        mesh.drawInstanced(entities.size());
+
+        FrameStats.add(FrameStats.Counter.INSTANCED_ENTITIES, entities.size());
+    }
+
+    private static void bindInstanceMatrix(int location, long offset){
+        for(int col = 0; col < 4; col++){
+            glVertexAttribPointer(location + col, 4, GL_FLOAT, false, STRIDE, offset + col * 4 * Float.BYTES);
+            glVertexAttribDivisor(location + col, 1);   // advance once per instance, not per vertex
+            glEnableVertexAttribArray(location + col);
+        }
+    }
+
+    /**
+     * Copies the matrices & texture layers of the given entities into the instance VBO (reallocating the VBO's
+     * storage each time, so that the driver needn't wait for previous draws using it to finish).
+     */
+    private void uploadInstanceData(List<DrawableEntity> entities, boolean toDepthMap){
+        int numOfFloats = entities.size() * FLOATS_PER_INSTANCE;
+        if(instanceData == null) instanceData = MemoryUtil.memAllocFloat(Math.max(numOfFloats, 1024));
+        else if(instanceData.capacity() < numOfFloats) instanceData = MemoryUtil.memRealloc(instanceData, Math.max(numOfFloats, instanceData.capacity() * 2));
+        if(instanceVBO == -1) instanceVBO = glGenBuffers();
+
+        for(int i = 0; i < entities.size(); i++){
+            DrawableEntity entity = entities.get(i);
+            entity.getModel_transform().get(i * FLOATS_PER_INSTANCE, instanceData);
+            if(toDepthMap) continue;
+            entity.getNormal_transform().get(i * FLOATS_PER_INSTANCE + 16, instanceData);
+            Material material = entity.getShape().getMaterial();
+            int offset = i * FLOATS_PER_INSTANCE + 32;
+            instanceData.put(offset, material.getLayerIndex(TextureType.DIFFUSE))
+                    .put(offset + 1, material.getLayerIndex(TextureType.SPECULAR))
+                    .put(offset + 2, material.getLayerIndex(TextureType.REFLECTION))
+                    .put(offset + 3, material.getLayerIndex(TextureType.REFRACTION));
+        }
+        instanceData.limit(numOfFloats);
+
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVBO);
+        glBufferData(GL_ARRAY_BUFFER, (long) numOfFloats * Float.BYTES, GL_STREAM_DRAW);   // orphan old storage
+        glBufferSubData(GL_ARRAY_BUFFER, 0, instanceData);
+        instanceData.clear();
+    }
+
+    /**
+     * Deallocate the instance VBO & the buffer used to fill it.
+     */
+    void deallocateResources(){
+        if(instanceVBO != -1) glDeleteBuffers(instanceVBO);
+        if(instanceData != null) MemoryUtil.memFree(instanceData);
+        instanceVBO = -1;
+        instanceData = null;
+    }
+}
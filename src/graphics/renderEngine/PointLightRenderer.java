@@ -6,13 +6,14 @@ import graphics.shaders.ShaderProgram;
 import graphics.shapes.Cube;
 import org.joml.Matrix4f;
 
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
 
 /**
  * Renderer for rendering point lights in the scene as a cube w/the light's colour.
  */
 public class PointLightRenderer extends Renderer {
     private Cube cube;
+    private final Matrix4f lightModel = new Matrix4f();
+    private final Matrix4f mvp = new Matrix4f();
 
     public PointLightRenderer(ShaderProgram shaderToUse) {
         super(shaderToUse);
@@ -22,10 +23,7 @@ public class PointLightRenderer extends Renderer {
     public void prepare(Scene scene) {
         shaderProgram.use();
 
-        // bind mesh data
         cube = new Cube();
-        glBindVertexArray(cube.getMesh().getVAOHandle());
-        shaderProgram.bindDataToShader(0, cube.getMesh().getVertexVBOHandle(), 3);
     }
 
     @Override
@@ -38,12 +36,11 @@ public class PointLightRenderer extends Renderer {
             // upload light colour
             shaderProgram.uploadVec3f("lightColour", pointLight.getColour());
 
-            Matrix4f lightModel = new Matrix4f();   // calc model matrix
-            lightModel.translate(pointLight.getPosition());
+            lightModel.translation(pointLight.getPosition());   // calc model matrix
             lightModel.scale(0.2f);
+            lightModel.mul(cube.getMesh().getDequantization_transform());   // (in case the cube mesh is quantized)
 
-            Matrix4f mvp = new Matrix4f(RenderContext.getProjMatrix());   // calc MVP matrix
-            mvp.mul(RenderContext.getViewMatrix()).mul(lightModel);
+            RenderContext.getViewProjMatrix().mul(lightModel, mvp);   // calc MVP matrix
             shaderProgram.uploadMatrix4f("mvp_m", mvp);
 
             cube.getMesh().render();    // render cube
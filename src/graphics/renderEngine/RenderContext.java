@@ -10,12 +10,17 @@ import java.util.List;
  * Stores the rendering context needed by the renderers to correctly set-up and render the scene.
  * Includes:
  *      - view and projection matrices (calculated using the camera's data in the main program)
+ *      - view-projection matrix (projection * view, calculated once per frame)
  *      - the camera's position and camera front vector
  * Also includes:
  *      - post-processing effect to use
+ *      - frustum cullers for the camera & the lights' shadow passes (used by the renderers to
+ *        query the scene for the entities visible in each pass)
  */
 public class RenderContext {
     private static Matrix4f viewMatrix, projMatrix;
+    private static final Matrix4f viewProjMatrix = new Matrix4f();
+    private static int viewProjVersion = 0;     // incremented each time the view-projection matrix changes
     private static Vector3f cameraPos, cameraFront;
 
     private static PostProcessingEffect postProcessingEffect = PostProcessingEffect.NONE;
@@ -23,7 +28,18 @@ public class RenderContext {
     private static Matrix4f dirLightSpaceMatrix;
     private static List<Matrix4f> pointLightSpaceMatricesList; // todo
 
+    private static final FrustumCuller cameraCuller = new FrustumCuller();
+    private static final FrustumCuller dirLightCuller = new FrustumCuller();
+    private static final FrustumCuller pointLightCuller = new FrustumCuller();
+    private static boolean frustumCullingEnabled = true;
+
     public static void setContext(Matrix4f view_m, Matrix4f projection_m, Vector3f camera_pos, Vector3f camera_front){
+        // only recalc view-projection matrix if view or projection matrix changed (e.g. camera moved)
+        if(!view_m.equals(viewMatrix) || !projection_m.equals(projMatrix)){
+            projection_m.mul(view_m, viewProjMatrix);
+            viewProjVersion++;
+            cameraCuller.setFrustum(viewProjMatrix);
+        }
         viewMatrix = view_m;
         projMatrix = projection_m;
         cameraPos = camera_pos;
@@ -36,11 +52,20 @@ public class RenderContext {
 
     public static void setDirLightSpaceMatrix(Matrix4f dirLightSpaceMatrix) {
         RenderContext.dirLightSpaceMatrix = dirLightSpaceMatrix;
+        dirLightCuller.setFrustum(dirLightSpaceMatrix);
     }
 
     //todo
     public static void setPointLightSpaceMatricesList(List<Matrix4f> matrix4fList){
         pointLightSpaceMatricesList = matrix4fList;
+        pointLightCuller.setFrustums(matrix4fList);
+    }
+
+    /**
+     * Turn frustum culling ON/OFF (e.g. to compare the nº of entities submitted w/ & w/o culling)
+     */
+    public static void setFrustumCullingEnabled(boolean enabled){
+        frustumCullingEnabled = enabled;
     }
 
     public static Matrix4f getViewMatrix(){
@@ -51,6 +76,21 @@ public class RenderContext {
         return projMatrix;
     }
 
+    /**
+     * Returns the view-projection matrix (projection * view) of the current context.
+     */
+    public static Matrix4f getViewProjMatrix(){
+        return viewProjMatrix;
+    }
+
+    /**
+     * Returns the version of the view-projection matrix, which changes each time the matrix does.
+     * Allows to cache values calculated from it (e.g. an entity's MVP matrix).
+     */
+    public static int getViewProjVersion(){
+        return viewProjVersion;
+    }
+
     public static Vector3f getCameraPos() {
         return cameraPos;
     }
@@ -71,4 +111,17 @@ public class RenderContext {
     public static List<Matrix4f> getPointLightSpaceMatricesList() {
         return pointLightSpaceMatricesList;
     }
+
+    public static FrustumCuller getCameraCuller() {
+        return cameraCuller;
+    }
+    public static FrustumCuller getDirLightCuller() {
+        return dirLightCuller;
+    }
+    public static FrustumCuller getPointLightCuller() {
+        return pointLightCuller;
+    }
+    public static boolean isFrustumCullingEnabled() {
+        return frustumCullingEnabled;
+    }
 }
@@ -0,0 +1,247 @@
+package graphics.renderEngine;
+
+import graphics.core.FrameStats;
+import graphics.core.GLStateCache;
+import graphics.materials.Material;
+import graphics.scene.DrawableEntity;
+import graphics.shaders.ShaderProgram;
+import graphics.shapes.Shape;
+import graphics.shapes.meshes.Mesh;
+import graphics.textures.TextureType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static org.lwjgl.opengl.GL20.glDisableVertexAttribArray;
+import static org.lwjgl.opengl.GL20.glVertexAttrib4f;
+
+
+/**
+ * Queue of draws to submit to OpenGL, sorted to minimise state changes.
+ * Renderers push a draw item per entity, with a 64 bit sort key made of (from most to least significant bits):
+ *      - render pass       (4 bits)
+ *      - shader program    (8 bits)
+ *      - material batch    (16 bits, see {@link Material#getBatchId()})
+ *      - mesh              (16 bits)
+ *      - depth             (20 bits, so that items w/the same state are drawn front to back)
+ * The items are sorted by key w/a radix sort, and then executed in order, skipping the shader,
+ * material & VAO binds that are redundant bc the previous item already bound them.
+ * Materials in the same batch (using the same texture arrays) are only bound once: the layers each item samples are
+ * passed as a vertex attribute (per instance, or per draw when not instancing).
+ * Skipped binds, & the program switches avoided by sorting, are recorded in {@link FrameStats}.
+ */
+class RenderQueue {
+
+    /**
+     * Render passes, in the order in which their items should be executed.
+     */
+    enum Pass {
+        DEPTH,      // rendering to a shadow map
+        OPAQUE      // rendering opaque entities to the colour buffer
+    }
+
+    private static final int DEPTH_BITS = 20, MESH_BITS = 16, MATERIAL_BITS = 16, SHADER_BITS = 8;
+    private static final int MESH_SHIFT = DEPTH_BITS;
+    private static final int MATERIAL_SHIFT = MESH_SHIFT + MESH_BITS;
+    private static final int SHADER_SHIFT = MATERIAL_SHIFT + MATERIAL_BITS;
+    private static final int PASS_SHIFT = SHADER_SHIFT + SHADER_BITS;
+
+    private int size = 0;
+    private long[] keys = new long[256], tempKeys = new long[256];
+    private int[] order = new int[256], tempOrder = new int[256];  // index of the item at each position once sorted
+    private DrawableEntity[] entities = new DrawableEntity[256];
+    private ShaderProgram[] shaders = new ShaderProgram[256];
+    private final int[] counts = new int[256];  // histogram used by the radix sort
+    private final List<DrawableEntity> run = new ArrayList<>(); // entities drawn by the current instanced draw call
+
+    /**
+     * Remove all items from the queue.
+     */
+    void clear(){
+        Arrays.fill(entities, 0, size, null);
+        Arrays.fill(shaders, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Add an item to the queue, to draw the given entity w/the given shader.
+     * @param pass {@link Pass} the item is drawn in
+     * @param shaderProgram {@link ShaderProgram} to draw the entity with
+     * @param entity {@link DrawableEntity} to draw
+     * @param depth (non-negative) distance of the entity to the viewer, e.g. squared distance to the camera
+     */
+    void push(Pass pass, ShaderProgram shaderProgram, DrawableEntity entity, float depth){
+        if(size == keys.length) grow();
+
+        Shape shape = entity.getShape();
+        keys[size] = ((long) pass.ordinal() << PASS_SHIFT)
+                | (bits(shaderProgram.getHandle(), SHADER_BITS) << SHADER_SHIFT)
+                | (bits(shape.getMaterial().getBatchId(), MATERIAL_BITS) << MATERIAL_SHIFT)
+                | (bits(shape.getMesh().getVAOHandle(), MESH_BITS) << MESH_SHIFT)
+                | depthBits(depth);
+        order[size] = size;
+        entities[size] = entity;
+        shaders[size] = shaderProgram;
+        size++;
+    }
+
+    private static long bits(int value, int numOfBits){
+        return value & ((1L << numOfBits) - 1);
+    }
+
+    /**
+     * Returns the most significant bits of the given depth. The bit patterns of non-negative floats
+     * have the same order as the floats, so the depth needn't be normalised to a known range.
+     */
+    private static long depthBits(float depth){
+        return (Float.floatToIntBits(Math.max(depth, 0.0f)) >>> (31 - DEPTH_BITS)) & ((1L << DEPTH_BITS) - 1);
+    }
+
+    private void grow(){
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        tempKeys = new long[capacity];
+        order = Arrays.copyOf(order, capacity);
+        tempOrder = new int[capacity];
+        entities = Arrays.copyOf(entities, capacity);
+        shaders = Arrays.copyOf(shaders, capacity);
+    }
+
+    /**
+     * Sort the items by key, with a least significant digit radix sort (8 bits per pass).
+     * Passes for bytes which are the same in all keys are skipped.
+     */
+    void sort(){
+        for(int shift = 0; shift < 64; shift += 8){
+            Arrays.fill(counts, 0);
+            for(int i = 0; i < size; i++) counts[(int) (keys[i] >>> shift) & 0xFF]++;
+            if(size == 0 || counts[(int) (keys[0] >>> shift) & 0xFF] == size) continue;   // all keys have same byte
+
+            // prefix sums: position of the 1st item w/each byte value
+            int position = 0;
+            for(int b = 0; b < 256; b++){
+                int count = counts[b];
+                counts[b] = position;
+                position += count;
+            }
+            for(int i = 0; i < size; i++){
+                int dest = counts[(int) (keys[i] >>> shift) & 0xFF]++;
+                tempKeys[dest] = keys[i];
+                tempOrder[dest] = order[i];
+            }
+
+            long[] swapKeys = keys; keys = tempKeys; tempKeys = swapKeys;
+            int[] swapOrder = order; order = tempOrder; tempOrder = swapOrder;
+        }
+    }
+
+    /**
+     * Draw the (sorted) items in the queue, skipping redundant shader, material & VAO binds.
+     * If an instance batcher is given, consecutive items sharing the same shader, material batch & mesh are
+     * drawn w/a single instanced draw call (the shaders must then be instanced shaders).
+     * ! Light specs must be previously uploaded to the shaders before calling this method.
+     * @param toDepthMap true if rendering to a depth map (then materials aren't bound & only positions are used)
+     * @param instanceBatcher {@link InstanceBatcher} to use, or null to draw each item w/its own draw call
+     * @param onMaterialBound called w/the nº of textures used by the material each time a material is bound (may be null)
+     */
+    void execute(boolean toDepthMap, InstanceBatcher instanceBatcher, IntConsumer onMaterialBound){
+        ShaderProgram currentShader = null;
+        int currentBatch = -1;  // batch id of the bound material
+        Mesh currentMesh = null;
+        int numOfSwitches = 0;  // nº of program switches in sorted order
+
+        int i = 0;
+        while(i < size){
+            int item = order[i];
+            DrawableEntity entity = entities[item];
+            ShaderProgram shaderProgram = shaders[item];
+            Shape shape = entity.getShape();
+            Mesh mesh = shape.getMesh();
+
+            if(shaderProgram != currentShader){
+                shaderProgram.use();
+                currentShader = shaderProgram;
+                currentBatch = -1;  // material uniforms must be uploaded to the new program
+                numOfSwitches++;
+            }
+
+            if(mesh != currentMesh){
+                mesh.bind();    // (the VAO has the mesh's vertex attributes)
+                currentMesh = mesh;
+            } else FrameStats.increment(FrameStats.Counter.VAO_BINDS_SKIPPED);
+
+            if(!toDepthMap){
+                if(shape.getMaterial().getBatchId() != currentBatch){
+                    shape.bindMaterialTextures();
+                    shape.uploadMaterialToShader(shaderProgram);
+                    if(onMaterialBound != null) onMaterialBound.accept(entity.numOfTexUsedByMaterial());
+                    currentBatch = shape.getMaterial().getBatchId();
+                } else FrameStats.increment(FrameStats.Counter.MATERIAL_BINDS_SKIPPED);
+            }
+
+            if(instanceBatcher != null){
+                // find the run of items sharing this item's state & draw them together
+                run.clear();
+                run.add(entity);
+                for(i++; i < size && isSameState(order[i], shaderProgram, shape); i++) run.add(entities[order[i]]);
+                instanceBatcher.draw(run, mesh, toDepthMap);
+            } else {
+                uploadTransforms(entity, shaderProgram, toDepthMap);
+                if(!toDepthMap && shape.getMaterial().usesTextureArrays()) uploadTextureLayers(shape.getMaterial());
+                mesh.draw();
+                i++;
+            }
+        }
+        GLStateCache.bindVertexArray(0);
+        run.clear();
+        FrameStats.add(FrameStats.Counter.SHADER_BINDS_SKIPPED, countSwitchesInPushOrder() - numOfSwitches);
+    }
+
+    /**
+     * Returns the nº of program switches there would be if the items were executed in the order they were pushed.
+     */
+    private int countSwitchesInPushOrder(){
+        int numOfSwitches = 0;
+        for(int item = 0; item < size; item++){
+            if(item == 0 || shaders[item] != shaders[item - 1]) numOfSwitches++;
+        }
+        return numOfSwitches;
+    }
+
+    private boolean isSameState(int item, ShaderProgram shaderProgram, Shape shape){
+        Shape itemShape = entities[item].getShape();
+        return shaders[item] == shaderProgram && itemShape.getMesh() == shape.getMesh() && itemShape.getMaterial().getBatchId() == shape.getMaterial().getBatchId();
+    }
+
+    /**
+     * Upload the given entity's transform matrices to the given (non-instanced) shader.
+     */
+    private static void uploadTransforms(DrawableEntity entity, ShaderProgram shaderProgram, boolean toDepthMap){
+        // upload world transform matrix as model matrix to shader
+        shaderProgram.uploadMatrix4f("model_m", entity.getModel_transform());
+        if(toDepthMap) return;
+
+        // upload MVP matrix & matrix to transform normal vect from oc to wc
+        shaderProgram.uploadMatrix4f("mvp_m", entity.getMVP_transform());
+        shaderProgram.uploadMatrix4f("normal_m", entity.getNormal_transform());
+    }
+
+    /**
+     * Set the layers of the given material's texture arrays as the value of the texture layers attribute, for the
+     * next (non-instanced) draw.
+     */
+    private static void uploadTextureLayers(Material material){
+        glDisableVertexAttribArray(InstanceBatcher.TEX_LAYERS_LOCATION);    // (use the current value, not the instance VBO)
+        glVertexAttrib4f(InstanceBatcher.TEX_LAYERS_LOCATION,
+                material.getLayerIndex(TextureType.DIFFUSE),
+                material.getLayerIndex(TextureType.SPECULAR),
+                material.getLayerIndex(TextureType.REFLECTION),
+                material.getLayerIndex(TextureType.REFRACTION));
+    }
+
+    int size(){
+        return size;
+    }
+}
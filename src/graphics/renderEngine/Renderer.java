@@ -1,7 +1,14 @@
 package graphics.renderEngine;
 
+import graphics.core.FrameStats;
+import graphics.scene.DrawableEntity;
 import graphics.scene.Scene;
 import graphics.shaders.ShaderProgram;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
 
 /**
  * Represents a renderer to render a {@link Scene}, using a given {@link ShaderProgram}.
@@ -10,9 +17,22 @@ import graphics.shaders.ShaderProgram;
  */
 public abstract class Renderer {
     ShaderProgram shaderProgram;    // shader to use for rendering
+    private final List<DrawableEntity> entitiesToRender = new ArrayList<>();    // reused every frame
+    private final InstanceBatcher instanceBatcher;  // draws entities w/instanced draw calls (null if not using instancing)
+    private final RenderQueue renderQueue = new RenderQueue();  // reused every frame
 
     Renderer(ShaderProgram shaderToUse){
+        this(shaderToUse, false);
+    }
+
+    /**
+     * @param shaderToUse {@link ShaderProgram} to render with
+     * @param useInstancing true to render entities sharing a mesh & material with a single instanced draw call
+     *                      (shaderToUse must then be an instanced shader, see {@link InstanceBatcher})
+     */
+    Renderer(ShaderProgram shaderToUse, boolean useInstancing){
         shaderProgram = shaderToUse;
+        instanceBatcher = useInstancing ? new InstanceBatcher() : null;
     }
 
     /**
@@ -26,4 +46,68 @@ public abstract class Renderer {
      * @param scene {@link Scene} to render
      */
     public abstract void render(Scene scene);
+
+    /**
+     * Returns the drawable entities of the given scene which are visible in the frustum(s) of the given
+     * culler (found using the scene's bvh), or all of them if frustum culling is disabled.
+     * Updates the submitted/culled entities counters.
+     * (note: the list returned is reused by the next call)
+     * @param scene {@link Scene} being rendered
+     * @param culler {@link FrustumCuller} of the render pass
+     */
+    List<DrawableEntity> getEntitiesToRender(Scene scene, FrustumCuller culler){
+        entitiesToRender.clear();
+        if(RenderContext.isFrustumCullingEnabled()) scene.queryFrustum(culler, entitiesToRender);
+        else scene.queryAll(entitiesToRender);
+
+        FrameStats.add(FrameStats.Counter.ENTITIES_SUBMITTED, entitiesToRender.size());
+        FrameStats.add(FrameStats.Counter.ENTITIES_CULLED, scene.getBVH().size() - entitiesToRender.size());
+        return entitiesToRender;
+    }
+
+    /**
+     * Draws the drawable entities of the given scene which are visible in the frustum(s) of the given culler,
+     * w/the shaderProgram field. The draws are sorted (by shader, material, mesh & then depth) to minimise state
+     * changes, & if using instancing, entities sharing a mesh & material are drawn w/a single draw call.
+     * ! The shader's uniforms (e.g. light specs) must be previously uploaded before calling this method.
+     * @param scene {@link Scene} being rendered
+     * @param culler {@link FrustumCuller} of the render pass
+     * @param pass {@link RenderQueue.Pass} being rendered (DEPTH passes don't use materials & normals)
+     * @param viewPos position from which the scene is viewed, to draw entities front to back (null if irrelevant)
+     * @param onMaterialBound called w/the nº of textures used by the material each time a material is bound (may be null)
+     */
+    void renderEntities(Scene scene, FrustumCuller culler, RenderQueue.Pass pass, Vector3f viewPos, IntConsumer onMaterialBound){
+        renderQueue.clear();
+        for(DrawableEntity entity : getEntitiesToRender(scene, culler)){
+            if(!entity.isDrawable()) continue;  // mesh still being loaded
+            renderQueue.push(pass, shaderProgram, entity, viewPos == null ? 0.0f : distanceSquared(viewPos, entity));
+        }
+        renderQueue.sort();
+        renderQueue.execute(pass == RenderQueue.Pass.DEPTH, instanceBatcher, onMaterialBound);
+    }
+
+    /**
+     * Returns the squared distance from the given position to the centre of the entity's bounding box.
+     */
+    private static float distanceSquared(Vector3f pos, DrawableEntity entity){
+        Vector3f min = entity.getWorldBoundsMin(), max = entity.getWorldBoundsMax();
+        float dx = (min.x + max.x) * 0.5f - pos.x;
+        float dy = (min.y + max.y) * 0.5f - pos.y;
+        float dz = (min.z + max.z) * 0.5f - pos.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Returns true if the renderer uses instanced rendering.
+     */
+    boolean usesInstancing(){
+        return instanceBatcher != null;
+    }
+
+    /**
+     * Deallocate the resources used by the renderer (e.g. buffers used for instanced rendering).
+     */
+    public void deallocateResources(){
+        if(instanceBatcher != null) instanceBatcher.deallocateResources();
+    }
 }
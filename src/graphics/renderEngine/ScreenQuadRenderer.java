@@ -5,7 +5,6 @@ import graphics.renderEngine.postProcessing.PostProcessingEffect;
 import graphics.shaders.ShaderProgram;
 import graphics.shapes.ScreenQuad;
 
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
 
 /**
  * Renderer for rendering a quad/square {@link ScreenQuad} of the size of the screen.
@@ -20,18 +19,13 @@ public class ScreenQuadRenderer {
     }
 
     /**
-     * Prepare {@link ShaderProgram} shaderProgram by binding
-     * {@link ScreenQuad} quad mesh's attributes to it & uploading tex handle to uniform.
+     * Prepare {@link ShaderProgram} shaderProgram by uploading tex handle to uniform.
+     * (the {@link ScreenQuad} quad mesh's attributes are already recorded in its VAO)
      */
     public void prepare(ScreenQuad screenQuad) {
         this.quad = screenQuad;
         shaderProgram.use();
 
-        // bind mesh data to shader
-        glBindVertexArray(quad.getMesh().getVAOHandle());
-        shaderProgram.bindDataToShader(0, quad.getMesh().getVertexVBOHandle(), 2);
-        shaderProgram.bindDataToShader(1, quad.getMesh().getTexHandle(), 2);
-
         shaderProgram.uploadInt("screenTexture", 0); // tex at texture unit 0
     }
 
@@ -1,5 +1,6 @@
 package graphics.renderEngine;
 
+import graphics.core.GLStateCache;
 import graphics.core.WindowManager;
 
 import static org.lwjgl.opengl.GL30.*;
@@ -24,15 +25,15 @@ public class ToColourTextureRenderer {
     public void prepare() {
         // create fbo
         fbo = glGenFramebuffers();
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        GLStateCache.bindFramebuffer(fbo);
 
         // generate texture to use as colour buffer
         colourTex = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, colourTex);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, colourTex);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB, WindowManager.getScrWidth(), WindowManager.getScrHeight(), 0, GL_RGB, GL_UNSIGNED_BYTE, NULL);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        glBindTexture(GL_TEXTURE_2D, 0);    // unbind tex
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0);    // unbind tex
 
         // attach colour tex as colour attachment of currently bound fbo
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colourTex, 0);
@@ -50,14 +51,14 @@ public class ToColourTextureRenderer {
         if(glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE)
             throw new RuntimeException("Framebuffer is not complete.");
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);   // unbind framebuffer
+        GLStateCache.bindFramebuffer(0);   // unbind framebuffer
     }
 
     /**
      * Binds the FBO set up in prepare() (fbo to which to render...)
      */
     public void bindFBOtoUse(){
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        GLStateCache.bindFramebuffer(fbo);
     }
 
     public int getColourTex(){
@@ -1,7 +1,7 @@
 package graphics.renderEngine;
 
+import graphics.core.GLStateCache;
 import graphics.core.WindowManager;
-import graphics.scene.Entity;
 import graphics.scene.Scene;
 import graphics.shaders.ShaderProgram;
 import org.joml.Matrix4f;
@@ -19,7 +19,14 @@ public class ToDepthCubeMapRenderer extends Renderer {
     private int shadowMapWidth, shadowMapHeight;
 
     public ToDepthCubeMapRenderer(ShaderProgram shaderToUse, int shadowMapWidth, int shadowMapHeight) {
-        super(shaderToUse);
+        this(shaderToUse, shadowMapWidth, shadowMapHeight, false);
+    }
+
+    /**
+     * @param useInstancing true to use instanced rendering (shaderToUse must then use toDepthCubeMap_instanced_vs.glsl)
+     */
+    public ToDepthCubeMapRenderer(ShaderProgram shaderToUse, int shadowMapWidth, int shadowMapHeight, boolean useInstancing) {
+        super(shaderToUse, useInstancing);
         this.shadowMapWidth = shadowMapWidth;
         this.shadowMapHeight = shadowMapHeight;
     }
@@ -32,11 +39,11 @@ public class ToDepthCubeMapRenderer extends Renderer {
     public void prepare(Scene scene) {
         // create fbo
         fbo = glGenFramebuffers();
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        GLStateCache.bindFramebuffer(fbo);
 
         // generate cubemap
         cubemap = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, cubemap);
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, cubemap);
         // assign each of the 6 cubemap faces a depth values tex
         for (int i = 0; i < 6; i++)  glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + i, 0, GL_DEPTH_COMPONENT, shadowMapWidth, shadowMapHeight, 0, GL_DEPTH_COMPONENT, GL_FLOAT, NULL);
         // set tex params
@@ -45,7 +52,7 @@ public class ToDepthCubeMapRenderer extends Renderer {
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0);    // unbind cubemap
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, 0);    // unbind cubemap
 
         // attach cubemap as depth attachment of currently bound fbo
         glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, cubemap, 0);
@@ -58,7 +65,7 @@ public class ToDepthCubeMapRenderer extends Renderer {
         if(glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE)
             throw new RuntimeException("Framebuffer is not complete.");
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);   // unbind framebuffer
+        GLStateCache.bindFramebuffer(0);   // unbind framebuffer
 
         // upload light position to shader
         shaderProgram.use();
@@ -70,24 +77,24 @@ public class ToDepthCubeMapRenderer extends Renderer {
 
         shaderProgram.use();
 
-        glViewport(0, 0, shadowMapWidth, shadowMapHeight);
+        GLStateCache.viewport(0, 0, shadowMapWidth, shadowMapHeight);
         bindFBOtoUse();
         WindowManager.clearDepthBuffer();
 
         for(int i = 0; i < 6; i++) shaderProgram.uploadMatrix4f("shadowMatrices[" + i + "]", RenderContext.getPointLightSpaceMatricesList().get(i));
 
-        // render components
-        for(Entity component : scene.getComponents()) component.renderToDepthMap(shaderProgram);
+        // render components (culling those outside the frustums of all 6 cubemap faces)
+        renderEntities(scene, RenderContext.getPointLightCuller(), RenderQueue.Pass.DEPTH, scene.getPointLights().get(0).getPosition(), null);
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);   // unbind fbo
-        glViewport(0, 0, WindowManager.getScrWidth(), WindowManager.getScrHeight());    // reset OpenGL viewport
+        GLStateCache.bindFramebuffer(0);   // unbind fbo
+        GLStateCache.viewport(0, 0, WindowManager.getScrWidth(), WindowManager.getScrHeight());    // reset OpenGL viewport
     }
 
     /**
      * Binds the FBO set up in prepare() (fbo to which to render...)
      */
     private void bindFBOtoUse(){
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        GLStateCache.bindFramebuffer(fbo);
     }
 
     public int getDepthCubeMap(){
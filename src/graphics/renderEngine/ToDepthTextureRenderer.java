@@ -1,7 +1,7 @@
 package graphics.renderEngine;
 
+import graphics.core.GLStateCache;
 import graphics.core.WindowManager;
-import graphics.scene.Entity;
 import graphics.scene.Scene;
 import graphics.shaders.ShaderProgram;
 
@@ -18,7 +18,14 @@ public class ToDepthTextureRenderer extends Renderer {
     private int shadowMapWidth, shadowMapHeight;
 
     public ToDepthTextureRenderer(ShaderProgram shaderToUse, int shadowMapWidth, int shadowMapHeight) {
-        super(shaderToUse);
+        this(shaderToUse, shadowMapWidth, shadowMapHeight, false);
+    }
+
+    /**
+     * @param useInstancing true to use instanced rendering (shaderToUse must then use toDepthMap_instanced_vs.glsl)
+     */
+    public ToDepthTextureRenderer(ShaderProgram shaderToUse, int shadowMapWidth, int shadowMapHeight, boolean useInstancing) {
+        super(shaderToUse, useInstancing);
         this.shadowMapWidth = shadowMapWidth;
         this.shadowMapHeight = shadowMapHeight;
     }
@@ -31,18 +38,18 @@ public class ToDepthTextureRenderer extends Renderer {
     public void prepare(Scene scene) {
         // create fbo
         fbo = glGenFramebuffers();
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        GLStateCache.bindFramebuffer(fbo);
 
         // generate depth map texture
         depthTex = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, depthTex);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, depthTex);
         glTexImage2D(GL_TEXTURE_2D, 0, GL_DEPTH_COMPONENT, shadowMapWidth, shadowMapHeight, 0, GL_DEPTH_COMPONENT, GL_FLOAT, NULL);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_BORDER);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_BORDER);
         glTexParameterfv(GL_TEXTURE_2D, GL_TEXTURE_BORDER_COLOR, new float[]{1.0f, 1.0f, 1.0f, 1.0f});
-        glBindTexture(GL_TEXTURE_2D, 0);    // unbind tex
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0);    // unbind tex
 
         // attach depth map tex as depth attachment of currently bound fbo
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depthTex, 0);
@@ -55,34 +62,34 @@ public class ToDepthTextureRenderer extends Renderer {
         if(glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE)
             throw new RuntimeException("Framebuffer is not complete.");
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);   // unbind framebuffer
+        GLStateCache.bindFramebuffer(0);   // unbind framebuffer
     }
 
     @Override
     public void render(Scene scene) {
-        glCullFace(GL_FRONT);   // to avoid peter-panning shadow artifact
+        GLStateCache.cullFace(GL_FRONT);   // to avoid peter-panning shadow artifact
 
         shaderProgram.use();
 
         shaderProgram.uploadMatrix4f("lightSpace_m", RenderContext.getDirLightSpaceMatrix());
 
-        glViewport(0, 0, shadowMapWidth, shadowMapHeight);
+        GLStateCache.viewport(0, 0, shadowMapWidth, shadowMapHeight);
         bindFBOtoUse();
         WindowManager.clearDepthBuffer();
 
-        // render components
-        for(Entity component : scene.getComponents()) component.renderToDepthMap(shaderProgram);
+        // render components (culling those outside the light's frustum)
+        renderEntities(scene, RenderContext.getDirLightCuller(), RenderQueue.Pass.DEPTH, null, null);
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);   // unbind fbo
-        glViewport(0, 0, WindowManager.getScrWidth(), WindowManager.getScrHeight());    // reset OpenGL viewport
-        glCullFace(GL_BACK);    // reset cull faces to back-facing faces
+        GLStateCache.bindFramebuffer(0);   // unbind fbo
+        GLStateCache.viewport(0, 0, WindowManager.getScrWidth(), WindowManager.getScrHeight());    // reset OpenGL viewport
+        GLStateCache.cullFace(GL_BACK);    // reset cull faces to back-facing faces
     }
 
     /**
      * Binds the FBO set up in prepare() (fbo to which to render...)
      */
     private void bindFBOtoUse(){
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
+        GLStateCache.bindFramebuffer(fbo);
     }
 
     public int getDepthTex(){
@@ -0,0 +1,510 @@
+package graphics.scene;
+
+import graphics.renderEngine.FrustumCuller;
+import org.joml.FrustumIntersection;
+import org.joml.Intersectionf;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dynamic bounding volume hierarchy (a binary tree of axis-aligned bounding boxes) over the
+ * {@link DrawableEntity}s of a {@link Scene}. Allows to find the entities inside a frustum,
+ * a sphere or hit by a ray in sublinear time, rather than testing every entity.
+ *
+ * Each leaf stores an entity's world bounding box enlarged by a margin ('fat' box), so that
+ * entities that move a little don't need their leaf updated. When an entity's world matrix
+ * changes it's marked as moved, and update() reinserts only the moved entities that left their
+ * fat box. The tree is kept balanced using AVL-like rotations as leaves are inserted & removed.
+ */
+public class BoundingVolumeHierarchy {
+
+    private static final int NULL_NODE = -1;
+    private static final float FAT_MARGIN_RATIO = 0.1f;     // margin added to leaf boxes, relative to box size
+    private static final float FAT_MARGIN_MIN = 0.05f;      // minimum margin added to leaf boxes
+
+    // nodes of the tree, stored in arrays indexed by node id
+    private float[] bounds;             // 6 floats per node: minX, minY, minZ, maxX, maxY, maxZ
+    private int[] parents;              // parent of each node (next free node, for nodes in the free list)
+    private int[] children1, children2; // children of each node (NULL_NODE for leaves)
+    private int[] heights;              // height of each node's subtree (0 for leaves, -1 for free nodes)
+    private DrawableEntity[] entities;  // entity of each leaf node
+    private int root = NULL_NODE;
+    private int freeList = NULL_NODE;   // 1st node of the list of free nodes
+    private int numOfLeaves = 0;
+
+    private final List<DrawableEntity> movedEntities = new ArrayList<>();
+    private int[] stack = new int[64];  // stack used when traversing the tree
+    private final Vector2f rayResult = new Vector2f();
+
+    public BoundingVolumeHierarchy(int initialCapacity){
+        allocate(Math.max(initialCapacity, 2));
+    }
+
+    /**
+     * Grow the node arrays to the given capacity & add the new nodes to the free list.
+     */
+    private void allocate(int capacity){
+        int oldCapacity = heights == null ? 0 : heights.length;
+        bounds = bounds == null ? new float[capacity * 6] : Arrays.copyOf(bounds, capacity * 6);
+        parents = parents == null ? new int[capacity] : Arrays.copyOf(parents, capacity);
+        children1 = children1 == null ? new int[capacity] : Arrays.copyOf(children1, capacity);
+        children2 = children2 == null ? new int[capacity] : Arrays.copyOf(children2, capacity);
+        heights = heights == null ? new int[capacity] : Arrays.copyOf(heights, capacity);
+        entities = entities == null ? new DrawableEntity[capacity] : Arrays.copyOf(entities, capacity);
+
+        for(int node = capacity - 1; node >= oldCapacity; node--){
+            parents[node] = freeList;
+            heights[node] = -1;
+            freeList = node;
+        }
+    }
+
+    private int allocateNode(){
+        if(freeList == NULL_NODE) allocate(heights.length * 2);
+        int node = freeList;
+        freeList = parents[node];
+        parents[node] = NULL_NODE;
+        children1[node] = NULL_NODE;
+        children2[node] = NULL_NODE;
+        heights[node] = 0;
+        entities[node] = null;
+        return node;
+    }
+
+    private void freeNode(int node){
+        parents[node] = freeList;
+        heights[node] = -1;
+        entities[node] = null;
+        freeList = node;
+    }
+
+    private boolean isLeaf(int node){
+        return children1[node] == NULL_NODE;
+    }
+
+    // ---------- inserting, removing & updating entities ----------
+
+    /**
+     * Insert the given entity into the tree.
+     * @param entity {@link DrawableEntity} to insert
+     * @return id of the leaf node created for the entity
+     */
+    int insert(DrawableEntity entity){
+        int leaf = allocateNode();
+        entities[leaf] = entity;
+        setFatBounds(leaf, entity.getWorldBoundsMin(), entity.getWorldBoundsMax());
+        insertLeaf(leaf);
+        numOfLeaves++;
+        return leaf;
+    }
+
+    /**
+     * Remove the leaf with the given id from the tree.
+     * @param leaf id of leaf node (as returned by insert())
+     */
+    void remove(int leaf){
+        removeLeaf(leaf);
+        freeNode(leaf);
+        numOfLeaves--;
+    }
+
+    /**
+     * Mark the given entity as moved, so that its leaf is updated by the next call to update().
+     */
+    void markMoved(DrawableEntity entity){
+        movedEntities.add(entity);
+    }
+
+    /**
+     * Update the leaves of the entities that moved since the last call, reinserting those
+     * whose world bounding box is no longer inside their leaf's fat bounding box.
+     */
+    public void update(){
+        for(DrawableEntity entity : movedEntities){
+            int leaf = entity.getBVHLeaf();
+            entity.clearMovedInBVH();
+            if(leaf == NULL_NODE || entities[leaf] != entity) continue;    // removed since it moved
+
+            Vector3f min = entity.getWorldBoundsMin();
+            Vector3f max = entity.getWorldBoundsMax();
+            int i = leaf * 6;
+            if(bounds[i] <= min.x && bounds[i + 1] <= min.y && bounds[i + 2] <= min.z
+                    && max.x <= bounds[i + 3] && max.y <= bounds[i + 4] && max.z <= bounds[i + 5]) continue;
+
+            removeLeaf(leaf);
+            setFatBounds(leaf, min, max);
+            insertLeaf(leaf);
+        }
+        movedEntities.clear();
+    }
+
+    private void setFatBounds(int node, Vector3f min, Vector3f max){
+        float marginX = Math.max((max.x - min.x) * FAT_MARGIN_RATIO, FAT_MARGIN_MIN);
+        float marginY = Math.max((max.y - min.y) * FAT_MARGIN_RATIO, FAT_MARGIN_MIN);
+        float marginZ = Math.max((max.z - min.z) * FAT_MARGIN_RATIO, FAT_MARGIN_MIN);
+        int i = node * 6;
+        bounds[i] = min.x - marginX;
+        bounds[i + 1] = min.y - marginY;
+        bounds[i + 2] = min.z - marginZ;
+        bounds[i + 3] = max.x + marginX;
+        bounds[i + 4] = max.y + marginY;
+        bounds[i + 5] = max.z + marginZ;
+    }
+
+    /**
+     * Insert the given leaf into the tree, as sibling of the node that minimises the increase
+     * in surface area of the tree's boxes.
+     */
+    private void insertLeaf(int leaf){
+        if(root == NULL_NODE){
+            root = leaf;
+            parents[leaf] = NULL_NODE;
+            return;
+        }
+
+        // find best sibling for the leaf
+        int node = root;
+        while(!isLeaf(node)){
+            float area = surfaceArea(node);
+            float combinedArea = unionSurfaceArea(node, leaf);
+            float cost = 2.0f * combinedArea;                       // cost of making leaf & node siblings
+            float inheritanceCost = 2.0f * (combinedArea - area);   // min cost of pushing leaf further down
+
+            float cost1 = descendCost(children1[node], leaf) + inheritanceCost;
+            float cost2 = descendCost(children2[node], leaf) + inheritanceCost;
+
+            if(cost < cost1 && cost < cost2) break;
+            node = cost1 < cost2 ? children1[node] : children2[node];
+        }
+        int sibling = node;
+
+        // create new parent for leaf & sibling
+        int oldParent = parents[sibling];
+        int newParent = allocateNode();
+        parents[newParent] = oldParent;
+        union(leaf, sibling, newParent);
+        heights[newParent] = heights[sibling] + 1;
+        children1[newParent] = sibling;
+        children2[newParent] = leaf;
+        parents[sibling] = newParent;
+        parents[leaf] = newParent;
+
+        if(oldParent == NULL_NODE) root = newParent;
+        else if(children1[oldParent] == sibling) children1[oldParent] = newParent;
+        else children2[oldParent] = newParent;
+
+        refitAncestors(parents[leaf]);
+    }
+
+    /**
+     * Cost of descending into the given child when inserting the given leaf.
+     */
+    private float descendCost(int child, int leaf){
+        if(isLeaf(child)) return unionSurfaceArea(child, leaf);
+        return unionSurfaceArea(child, leaf) - surfaceArea(child);
+    }
+
+    /**
+     * Remove the given leaf from the tree (the node itself isn't freed).
+     */
+    private void removeLeaf(int leaf){
+        if(leaf == root){
+            root = NULL_NODE;
+            return;
+        }
+
+        int parent = parents[leaf];
+        int grandParent = parents[parent];
+        int sibling = children1[parent] == leaf ? children2[parent] : children1[parent];
+
+        if(grandParent == NULL_NODE){
+            root = sibling;
+            parents[sibling] = NULL_NODE;
+            freeNode(parent);
+        } else {
+            // replace parent w/sibling
+            if(children1[grandParent] == parent) children1[grandParent] = sibling;
+            else children2[grandParent] = sibling;
+            parents[sibling] = grandParent;
+            freeNode(parent);
+
+            refitAncestors(grandParent);
+        }
+        parents[leaf] = NULL_NODE;
+    }
+
+    /**
+     * Walk up the tree from the given node, rebalancing & recalculating heights and boxes.
+     */
+    private void refitAncestors(int node){
+        while(node != NULL_NODE){
+            node = balance(node);
+            int child1 = children1[node];
+            int child2 = children2[node];
+            heights[node] = 1 + Math.max(heights[child1], heights[child2]);
+            union(child1, child2, node);
+            node = parents[node];
+        }
+    }
+
+    /**
+     * Perform a left or right rotation if the subtree rooted at node A is imbalanced.
+     * @return id of the node that is now the root of the subtree
+     */
+    private int balance(int a){
+        if(isLeaf(a) || heights[a] < 2) return a;
+
+        int b = children1[a];
+        int c = children2[a];
+        int heightDiff = heights[c] - heights[b];
+
+        if(heightDiff > 1) return rotate(a, c, b, true);     // rotate C up
+        if(heightDiff < -1) return rotate(a, b, c, false);   // rotate B up
+        return a;
+    }
+
+    /**
+     * Rotate node 'up' (child of A) to replace A, 'other' being A's other child.
+     * @param upIsChild2 true if 'up' is A's 2nd child
+     * @return id of 'up', the new root of the subtree
+     */
+    private int rotate(int a, int up, int other, boolean upIsChild2){
+        int f = children1[up];
+        int g = children2[up];
+
+        // swap A and 'up'
+        children1[up] = a;
+        parents[up] = parents[a];
+        parents[a] = up;
+
+        // A's old parent should point to 'up'
+        int upParent = parents[up];
+        if(upParent == NULL_NODE) root = up;
+        else if(children1[upParent] == a) children1[upParent] = up;
+        else children2[upParent] = up;
+
+        // keep the taller of F & G under 'up', move the other under A
+        int taller = heights[f] > heights[g] ? f : g;
+        int shorter = taller == f ? g : f;
+        children2[up] = taller;
+        if(upIsChild2) children2[a] = shorter;
+        else children1[a] = shorter;
+        parents[shorter] = a;
+
+        union(other, shorter, a);
+        heights[a] = 1 + Math.max(heights[other], heights[shorter]);
+        union(a, taller, up);
+        heights[up] = 1 + Math.max(heights[a], heights[taller]);
+        return up;
+    }
+
+    private void union(int nodeA, int nodeB, int dest){
+        int a = nodeA * 6, b = nodeB * 6, d = dest * 6;
+        for(int k = 0; k < 3; k++){
+            bounds[d + k] = Math.min(bounds[a + k], bounds[b + k]);
+            bounds[d + 3 + k] = Math.max(bounds[a + 3 + k], bounds[b + 3 + k]);
+        }
+    }
+
+    private float surfaceArea(int node){
+        int i = node * 6;
+        float dx = bounds[i + 3] - bounds[i], dy = bounds[i + 4] - bounds[i + 1], dz = bounds[i + 5] - bounds[i + 2];
+        return 2.0f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private float unionSurfaceArea(int nodeA, int nodeB){
+        int a = nodeA * 6, b = nodeB * 6;
+        float dx = Math.max(bounds[a + 3], bounds[b + 3]) - Math.min(bounds[a], bounds[b]);
+        float dy = Math.max(bounds[a + 4], bounds[b + 4]) - Math.min(bounds[a + 1], bounds[b + 1]);
+        float dz = Math.max(bounds[a + 5], bounds[b + 5]) - Math.min(bounds[a + 2], bounds[b + 2]);
+        return 2.0f * (dx * dy + dy * dz + dz * dx);
+    }
+
+    // ---------- queries ----------
+
+    private int push(int top, int node){
+        if(top == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[top] = node;
+        return top + 1;
+    }
+
+    /**
+     * Finds the entities whose world bounding box is (at least partly) inside the frustums of the given culler.
+     * Subtrees whose box is fully inside a frustum are accepted without testing their entities.
+     * @param culler {@link FrustumCuller} whose frustums to test against
+     * @param result list to which to add the entities found (not cleared)
+     * @return result
+     */
+    public List<DrawableEntity> queryFrustum(FrustumCuller culler, List<DrawableEntity> result){
+        if(root == NULL_NODE) return result;
+        int top = push(0, root);
+        while(top > 0){
+            int node = stack[--top];
+            int i = node * 6;
+            int intersection = culler.intersect(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3], bounds[i + 4], bounds[i + 5]);
+            if(intersection == FrustumIntersection.OUTSIDE) continue;
+
+            if(intersection == FrustumIntersection.INSIDE) addLeaves(node, result, top);
+            else if(isLeaf(node)){
+                DrawableEntity entity = entities[node];   // test entity's own (tighter) box
+                if(culler.isVisible(entity.getWorldBoundsMin(), entity.getWorldBoundsMax())) result.add(entity);
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds all the entities in the tree.
+     * @param result list to which to add the entities (not cleared)
+     * @return result
+     */
+    public List<DrawableEntity> queryAll(List<DrawableEntity> result){
+        if(root != NULL_NODE) addLeaves(root, result, 0);
+        return result;
+    }
+
+    /**
+     * Adds the entities of all leaves in the subtree rooted at the given node.
+     * (uses the stack above the given base index, so that it can be called during another traversal)
+     */
+    private void addLeaves(int subtreeRoot, List<DrawableEntity> result, int base){
+        int top = push(base, subtreeRoot);
+        while(top > base){
+            int node = stack[--top];
+            if(isLeaf(node)) result.add(entities[node]);
+            else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+    }
+
+    /**
+     * Finds the entities whose world bounding box intersects the given sphere.
+     * @param centre centre of the sphere (in wc)
+     * @param radius radius of the sphere
+     * @param result list to which to add the entities found (not cleared)
+     * @return result
+     */
+    public List<DrawableEntity> querySphere(Vector3f centre, float radius, List<DrawableEntity> result){
+        if(root == NULL_NODE) return result;
+        float radiusSquared = radius * radius;
+        int top = push(0, root);
+        while(top > 0){
+            int node = stack[--top];
+            int i = node * 6;
+            if(distanceSquaredToBox(centre, bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3], bounds[i + 4], bounds[i + 5]) > radiusSquared) continue;
+
+            if(isLeaf(node)){
+                Vector3f min = entities[node].getWorldBoundsMin();
+                Vector3f max = entities[node].getWorldBoundsMax();
+                if(distanceSquaredToBox(centre, min.x, min.y, min.z, max.x, max.y, max.z) <= radiusSquared) result.add(entities[node]);
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+        return result;
+    }
+
+    private static float distanceSquaredToBox(Vector3f p, float minX, float minY, float minZ, float maxX, float maxY, float maxZ){
+        float dx = Math.max(Math.max(minX - p.x, 0.0f), p.x - maxX);
+        float dy = Math.max(Math.max(minY - p.y, 0.0f), p.y - maxY);
+        float dz = Math.max(Math.max(minZ - p.z, 0.0f), p.z - maxZ);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Finds the entities whose world bounding box is hit by the given ray.
+     * @param origin origin of the ray (in wc)
+     * @param direction direction of the ray
+     * @param result list to which to add the entities found (not cleared, nor sorted by distance)
+     * @return result
+     */
+    public List<DrawableEntity> queryRay(Vector3f origin, Vector3f direction, List<DrawableEntity> result){
+        if(root == NULL_NODE) return result;
+        int top = push(0, root);
+        while(top > 0){
+            int node = stack[--top];
+            if(rayHitDistance(origin, direction, node) < 0.0f) continue;
+
+            if(isLeaf(node)){
+                if(rayHitDistance(origin, direction, entities[node]) >= 0.0f) result.add(entities[node]);
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the entity whose world bounding box is hit first by the given ray (e.g. for picking).
+     * @param origin origin of the ray (in wc)
+     * @param direction direction of the ray
+     * @return {@link DrawableEntity} hit first, or null if none is hit
+     */
+    public DrawableEntity pickClosest(Vector3f origin, Vector3f direction){
+        DrawableEntity closest = null;
+        float closestDist = Float.POSITIVE_INFINITY;
+        if(root == NULL_NODE) return null;
+
+        int top = push(0, root);
+        while(top > 0){
+            int node = stack[--top];
+            float nodeDist = rayHitDistance(origin, direction, node);
+            if(nodeDist < 0.0f || nodeDist >= closestDist) continue;   // missed, or further than closest hit
+
+            if(isLeaf(node)){
+                float dist = rayHitDistance(origin, direction, entities[node]);
+                if(dist >= 0.0f && dist < closestDist){
+                    closestDist = dist;
+                    closest = entities[node];
+                }
+            } else {
+                top = push(top, children1[node]);
+                top = push(top, children2[node]);
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Returns distance along the ray to the box of the given node (0 if origin inside box), or -1 if missed.
+     */
+    private float rayHitDistance(Vector3f origin, Vector3f dir, int node){
+        int i = node * 6;
+        return rayHitDistance(origin, dir, bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3], bounds[i + 4], bounds[i + 5]);
+    }
+    private float rayHitDistance(Vector3f origin, Vector3f dir, DrawableEntity entity){
+        Vector3f min = entity.getWorldBoundsMin();
+        Vector3f max = entity.getWorldBoundsMax();
+        return rayHitDistance(origin, dir, min.x, min.y, min.z, max.x, max.y, max.z);
+    }
+    private float rayHitDistance(Vector3f origin, Vector3f dir, float minX, float minY, float minZ, float maxX, float maxY, float maxZ){
+        if(!Intersectionf.intersectRayAab(origin.x, origin.y, origin.z, dir.x, dir.y, dir.z, minX, minY, minZ, maxX, maxY, maxZ, rayResult)) return -1.0f;
+        if(rayResult.y < 0.0f) return -1.0f;    // box behind the ray
+        return Math.max(rayResult.x, 0.0f);
+    }
+
+    /**
+     * Returns nº of entities in the tree.
+     */
+    public int size(){
+        return numOfLeaves;
+    }
+
+    /**
+     * Returns the height of the tree (0 if empty or if it only has 1 entity).
+     */
+    public int getHeight(){
+        return root == NULL_NODE ? 0 : heights[root];
+    }
+}
@@ -3,13 +3,13 @@ package graphics.scene;
 import graphics.renderEngine.RenderContext;
 import graphics.shaders.ShaderProgram;
 import graphics.shapes.Shape;
+import graphics.shapes.meshes.Mesh;
 import graphics.textures.Texture;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import java.util.List;
 
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
 
 /**
  * Represents an entity (node in the scene node graph) which
@@ -17,57 +17,163 @@ import static org.lwjgl.opengl.GL30.glBindVertexArray;
  */
 public class DrawableEntity extends Entity {
     private Shape shape;
+    private final Matrix4f model_transform = new Matrix4f();    // world * mesh dequantization matrix (cached)
+    private int modelWorldVersion = -1;     // world matrix version used to calc model_transform
+    private final Matrix4f mvp_transform = new Matrix4f();  // model-view-projection matrix (cached)
+    private int mvpWorldVersion = -1;       // world matrix version used to calc mvp_transform
+    private int mvpViewProjVersion = -1;    // view-projection matrix version used to calc mvp_transform
+    private final Vector3f worldBoundsMin = new Vector3f(); // axis-aligned bounding box of shape in wc (cached)
+    private final Vector3f worldBoundsMax = new Vector3f();
+    private int boundsWorldVersion = -1;    // world matrix version used to calc world bounds
+    private int bvhLeaf = -1;               // id of this entity's leaf in the scene's bvh (-1 if not in one)
+    private boolean movedInBVH = false;     // true if already marked as moved in the bvh since its last update
 
     public DrawableEntity(Entity parent, Matrix4f local_transform, Vector3f shape_scale, Shape shape) {
         super(parent, local_transform, shape_scale);
         this.shape = shape;
+        if(!shape.getMesh().isResident()) shape.getMesh().whenResident(this::onMeshResident);
+    }
+
+    /**
+     * Called once the shape's mesh (loaded asynchronously) becomes resident: its bounds & dequantization
+     * matrix are now known, so the values cached from them are recalculated & the entity is updated in the bvh.
+     */
+    private void onMeshResident() {
+        modelWorldVersion = -1;
+        mvpWorldVersion = -1;
+        boundsWorldVersion = -1;
+        onWorldChanged();
+    }
+
+    /**
+     * Returns true if the entity can be drawn (i.e. its shape's mesh is resident).
+     */
+    public boolean isDrawable() {
+        return shape.getMesh().isResident();
+    }
+
+    /**
+     * Returns the model matrix to upload to shaders, which maps the vertex positions stored in the shape's
+     * mesh to wc. It's the world matrix, unless the mesh's positions are quantized (then it's world * dequantization).
+     * (note: normals must still be transformed w/the normal matrix of the world matrix, see getNormal_transform())
+     */
+    public Matrix4f getModel_transform() {
+        Mesh mesh = shape.getMesh();
+        if(!mesh.getVertexFormat().isQuantized()) return getWorld_transform();
+
+        int worldVersion = getWorldVersion();
+        if(worldVersion != modelWorldVersion){
+            getWorld_transform().mul(mesh.getDequantization_transform(), model_transform);
+            modelWorldVersion = worldVersion;
+        }
+        return model_transform;
+    }
+
+    /**
+     * Returns the MVP matrix of this entity for the current {@link RenderContext}.
+     * It's cached, and only recalculated when either the world or view-projection matrices change.
+     */
+    public Matrix4f getMVP_transform() {
+        int worldVersion = getWorldVersion();
+        int viewProjVersion = RenderContext.getViewProjVersion();
+        if(worldVersion != mvpWorldVersion || viewProjVersion != mvpViewProjVersion){
+            RenderContext.getViewProjMatrix().mul(getModel_transform(), mvp_transform);
+            mvpWorldVersion = worldVersion;
+            mvpViewProjVersion = viewProjVersion;
+        }
+        return mvp_transform;
+    }
+
+    /**
+     * Updates the world-space bounding box of the entity's shape, if its world matrix changed.
+     */
+    private void updateWorldBounds() {
+        int worldVersion = getWorldVersion();
+        if(worldVersion != boundsWorldVersion){
+            getWorld_transform().transformAab(shape.getMesh().getBoundsMin(), shape.getMesh().getBoundsMax(), worldBoundsMin, worldBoundsMax);
+            boundsWorldVersion = worldVersion;
+        }
+    }
+
+    @Override
+    void onWorldChanged() {
+        BoundingVolumeHierarchy bvh = getBVH();
+        if(bvh != null && !movedInBVH) {
+            movedInBVH = true;
+            bvh.markMoved(this);
+        }
+    }
+
+    @Override
+    void attachToBVH(BoundingVolumeHierarchy bvh) {
+        if(getBVH() != null) detachFromBVH();
+        super.attachToBVH(bvh);
+        bvhLeaf = bvh.insert(this);
+    }
+
+    @Override
+    void detachFromBVH() {
+        if(bvhLeaf >= 0) getBVH().remove(bvhLeaf);
+        bvhLeaf = -1;
+        super.detachFromBVH();
+    }
+
+    int getBVHLeaf() {
+        return bvhLeaf;
+    }
+    void clearMovedInBVH() {
+        movedInBVH = false;
     }
 
     @Override
     public void render(ShaderProgram shaderProgram) {
-        glBindVertexArray(shape.getMesh().getVAOHandle());
+        draw(shaderProgram);
+
+        // render children
+        for(Entity child : children) child.render(shaderProgram);
+    }
 
-        // bind data to shader
-        shaderProgram.bindDataToShader(0, shape.getMesh().getVertexVBOHandle(), 3);
-        shaderProgram.bindDataToShader(1, shape.getMesh().getNormalHandle(), 3);
-        shaderProgram.bindDataToShader(2, shape.getMesh().getTexHandle(), 2);
+    /**
+     * Render only this entity (not its children), using the given shader.
+     * ! Light specs must be previously uploaded to the shader before calling this method.
+     */
+    public void draw(ShaderProgram shaderProgram) {
+        if(!isDrawable()) return;
 
         // upload world transform matrix as model matrix to shader
-        shaderProgram.uploadMatrix4f("model_m", world_transform);
+        shaderProgram.uploadMatrix4f("model_m", getModel_transform());
 
-        // calc MVP matrix (once in CPU rather than per fragment in GPU...)
-        Matrix4f mvp =  new Matrix4f(RenderContext.getProjMatrix());
-        mvp.mul(RenderContext.getViewMatrix()).mul(world_transform);
-        shaderProgram.uploadMatrix4f("mvp_m", mvp);
+        // upload MVP matrix (calc in CPU rather than per vertex in GPU, & cached while nothing moves)
+        shaderProgram.uploadMatrix4f("mvp_m", getMVP_transform());
 
-        // calc matrix to transform normal vect from oc to wc
-        Matrix4f normalM = new Matrix4f();
-        world_transform.invert(normalM).transpose();
-        shaderProgram.uploadMatrix4f("normal_m", normalM);
+        // upload matrix to transform normal vect from oc to wc
+        shaderProgram.uploadMatrix4f("normal_m", getNormal_transform());
 
         // render shape
         shape.bindMaterialTextures();
         shape.uploadMaterialToShader(shaderProgram);
         shape.getMesh().render();
-
-        // render children
-        for(Entity child : children) child.render(shaderProgram);
     }
 
     @Override
     public void renderToDepthMap(ShaderProgram shaderProgram) {
-        glBindVertexArray(shape.getMesh().getVAOHandle());
+        drawToDepthMap(shaderProgram);
+
+        // render children
+        for(Entity child : children) child.renderToDepthMap(shaderProgram);
+    }
 
-        // bind data to shader
-        shaderProgram.bindDataToShader(0, shape.getMesh().getVertexVBOHandle(), 3);
+    /**
+     * Render only this entity (not its children) to the DEPTH attachment of the currently
+     * bound framebuffer, using the given shader.
+     */
+    public void drawToDepthMap(ShaderProgram shaderProgram) {
+        if(!isDrawable()) return;
 
         // upload world transform matrix as model matrix to shader
-        shaderProgram.uploadMatrix4f("model_m", world_transform);
+        shaderProgram.uploadMatrix4f("model_m", getModel_transform());
 
         shape.getMesh().render();
-
-        // render children
-        for(Entity child : children) child.renderToDepthMap(shaderProgram);
     }
 
     @Override
@@ -76,6 +182,18 @@ public class DrawableEntity extends Entity {
         children.forEach(Entity::deallocateMeshResources);
     }
 
+    public Shape getShape() {
+        return shape;
+    }
+    public Vector3f getWorldBoundsMin() {
+        updateWorldBounds();
+        return worldBoundsMin;
+    }
+    public Vector3f getWorldBoundsMax() {
+        updateWorldBounds();
+        return worldBoundsMax;
+    }
+
     @Override
     public int numOfTexUsedByMaterial() {
         List<Texture> texList = shape.getMaterial().getTexturesList();
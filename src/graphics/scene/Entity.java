@@ -17,6 +17,15 @@ public abstract class Entity {
     Matrix4f world_transform;           // position and orientation in the world overall
     private Matrix4f local_transform;   // position and orientation in relation to parent node
     private Vector3f shape_scale;       // scaling of shape/model w/o affecting children
+    private boolean worldIsDirty;       // true if world_transform is stale (then so are its descendants')
+    private boolean descendantIsDirty;  // true if some node in this node's subtree has a stale world_transform
+    private Matrix4f normal_transform;  // matrix to transform normals from oc to wc (cached)
+    private int worldVersion = 0;       // incremented each time world_transform changes
+    private int normalVersion = -1;     // value of worldVersion when normal_transform was last calculated
+    private TransformStore store;       // packed transform store this node is bound to (null if not using one)
+    private int storeIndex = -1;        // index of this node in the store
+    private int storeVersion = -1;      // version of the store's world matrix last copied into world_transform
+    private BoundingVolumeHierarchy bvh;    // bvh of the scene this node is part of (null if not in a scene yet)
 
     Entity(Entity parent, Matrix4f local_transform, Vector3f shape_scale){
         this.parent = parent;
@@ -25,24 +34,109 @@ public abstract class Entity {
         children = new ArrayList<>();
 
         world_transform = new Matrix4f();
-        calcWorldMatrix();
+        normal_transform = new Matrix4f();
+        markWorldDirty();
     }
 
     /**
      * Calculates this node's world matrix using its parent's world matrix and this node's
-     * local transform matrix. The world_transform field is updated. Also updates the world
-     * matrices of its children.
+     * local transform matrix. The world_transform field is updated in place.
+     * (note: doesn't update its children, which are left marked as dirty)
      */
     private void calcWorldMatrix(){
-        Matrix4f localTimesScale = new Matrix4f();
-        local_transform.scale(shape_scale, localTimesScale);    // first get local transform * scale result
-
         // calc world matrix by mult node's (local * scale) matrix w/parent's world matrix.
-        if(parent != null) parent.getWorld_transform().mul(localTimesScale, world_transform);
-        else world_transform = localTimesScale; // if root node, world transform same as local transform (times scale matrix)
+        // if root node, world transform same as local transform (times scale matrix)
+        if(parent != null) world_transform.set(parent.getWorld_transform()).mul(local_transform);
+        else world_transform.set(local_transform);
+        world_transform.scale(shape_scale);
+
+        worldIsDirty = false;
+        worldVersion++;
+        onWorldChanged();
+    }
+
+    /**
+     * Called each time this node's world matrix is recalculated or overridden.
+     * (e.g. so that drawable nodes can update their entry in the scene's bvh)
+     */
+    void onWorldChanged(){}
+
+    /**
+     * Adds this node & its subtree to the given {@link BoundingVolumeHierarchy}.
+     */
+    void attachToBVH(BoundingVolumeHierarchy bvh){
+        this.bvh = bvh;
+        for(Entity child : children) child.attachToBVH(bvh);
+    }
+
+    /**
+     * Removes this node & its subtree from the {@link BoundingVolumeHierarchy} they're in.
+     */
+    void detachFromBVH(){
+        bvh = null;
+        for(Entity child : children) child.detachFromBVH();
+    }
+
+    BoundingVolumeHierarchy getBVH() {
+        return bvh;
+    }
+
+    /**
+     * Marks this node's world matrix, and those of its descendants, as stale, so that they're
+     * recalculated by the next call to updateWorldTransforms() (or when they're next requested).
+     * Ancestors are flagged so that the update pass knows which subtrees it must visit.
+     */
+    private void markWorldDirty(){
+        if(store != null){  // store tracks its own dirty nodes
+            store.setLocal(storeIndex, local_transform, shape_scale);
+            return;
+        }
+        markSubtreeDirty();
+        for(Entity node = parent; node != null && !node.descendantIsDirty; node = node.parent){
+            node.descendantIsDirty = true;
+        }
+    }
+    private void markSubtreeDirty(){
+        if(worldIsDirty) return;    // descendants of a dirty node are already dirty
+        worldIsDirty = true;
+        for(Entity child : children) child.markSubtreeDirty();
+    }
 
-        // repeat for all of current node's children
-        children.forEach(Entity::calcWorldMatrix);
+    /**
+     * Recalculates the stale world matrices in the subtree for which this node is the root,
+     * in a single top-down pass. Subtrees without stale nodes aren't visited.
+     * Should be called once per frame (see {@link Scene}.updateWorldTransforms()), before rendering.
+     */
+    void updateWorldTransforms(){
+        boolean subtreeIsDirty = worldIsDirty || descendantIsDirty;
+        if(worldIsDirty) calcWorldMatrix();
+        if(subtreeIsDirty) {
+            for (Entity child : children) child.updateWorldTransforms();
+            descendantIsDirty = false;
+        }
+    }
+
+    /**
+     * Binds this node to the given slot of a {@link TransformStore}, which then holds its transforms.
+     */
+    void bindToStore(TransformStore store, int index){
+        this.store = store;
+        storeIndex = index;
+        storeVersion = -1;
+    }
+
+    /**
+     * Unbinds this node from its {@link TransformStore} (its world matrix will be recalculated when next needed).
+     */
+    void unbindFromStore(){
+        store = null;
+        storeIndex = -1;
+        worldIsDirty = true;
+        descendantIsDirty = true;
+    }
+
+    int getStoreIndex() {
+        return storeIndex;
     }
 
     /**
@@ -78,6 +172,7 @@ public abstract class Entity {
         if (newChild != null) {
             children.add(newChild);
             newChild.setParent(this);
+            if(bvh != null) newChild.attachToBVH(bvh);
         }
     }
 
@@ -88,36 +183,55 @@ public abstract class Entity {
     public void addAllToChildren(List<Entity> newChildren){
         if (newChildren != null) {
             children.addAll(newChildren);
-            for(Entity child : newChildren) child.setParent(this);
+            for(Entity child : newChildren) {
+                child.setParent(this);
+                if(bvh != null) child.attachToBVH(bvh);
+            }
         }
     }
 
     private void setParent(Entity parent) {
         this.parent = parent;
-        calcWorldMatrix();
+        // hierarchy changed: store this node or its new parent are bound to must be rebuilt
+        if(store != null) store.invalidateLayout();
+        if(parent != null && parent.store != null) parent.store.invalidateLayout();
+        markWorldDirty();
     }
     public void setChildren(List<Entity> children) {
-        for(Entity child : this.children) child.setParent(null);
+        for(Entity child : this.children) {
+            child.setParent(null);
+            if(bvh != null) child.detachFromBVH();
+        }
         this.children = children;
-        for(Entity child : children) child.setParent(this);
+        for(Entity child : children) {
+            child.setParent(this);
+            if(bvh != null) child.attachToBVH(bvh);
+        }
     }
     public void setLocal_transform(Matrix4f local_transform) {
-        if(!local_transform.equals(this.local_transform)) { // if stmt to avoid unnecessarily calling calcWorldMatrix()
+        if(!local_transform.equals(this.local_transform)) { // if stmt to avoid unnecessarily marking subtree as dirty
             this.local_transform = local_transform;
-            calcWorldMatrix();
+            markWorldDirty();
         }
     }
     public void updateWorld_transform(Matrix4f world_transform) {
         // todo not sure if this method should be allowed... - maybe it's useful for setting up / debugging the entities positions on the scene?
-        if (!world_transform.equals(this.world_transform)){ // if stmt to avoid unnecessarily calling calcWorldMatrix()
-            this.world_transform = world_transform;
-            for (Entity child : children) child.calcWorldMatrix();
+        if (!world_transform.equals(this.world_transform)){ // if stmt to avoid unnecessarily marking children as dirty
+            this.world_transform.set(world_transform);
+            worldVersion++;
+            onWorldChanged();
+            if(store != null){
+                store.setWorld(storeIndex, world_transform);
+                return;
+            }
+            worldIsDirty = false;
+            for (Entity child : children) child.markWorldDirty();
         }
     }
     public void setShape_scale(Vector3f shape_scale) {
-        if(!shape_scale.equals(this.shape_scale)) { // if stmt to avoid unnecessarily calling calcWorldMatrix()
+        if(!shape_scale.equals(this.shape_scale)) { // if stmt to avoid unnecessarily marking subtree as dirty
             this.shape_scale = shape_scale;
-            calcWorldMatrix();
+            markWorldDirty();
         }
     }
 
@@ -131,9 +245,39 @@ public abstract class Entity {
         return local_transform;
     }
     public Matrix4f getWorld_transform() {
-        if(world_transform == null) calcWorldMatrix();
+        if(store != null){
+            // copy from store only if it changed since last copied (or is stale, i.e. calculated from the local matrices
+            // until the next sweep), & only invalidate the values cached from it if its value actually changed
+            int version = store.getVersion(storeIndex);
+            if(version != storeVersion || store.isStale(storeIndex)) {
+                if(store.copyWorldIfChanged(storeIndex, world_transform)) worldVersion++;
+                storeVersion = version;
+            }
+        }
+        else if(worldIsDirty) calcWorldMatrix();   // resolve lazily if requested before the per-frame update
         return world_transform;
     }
+    /**
+     * Returns the matrix to transform normals from oc to wc (inverse transpose of the world matrix).
+     * It's cached, and only recalculated when the world matrix changes.
+     */
+    public Matrix4f getNormal_transform() {
+        Matrix4f world = getWorld_transform();  // (brings world matrix up to date)
+        if(normalVersion != worldVersion){
+            if(store != null && !store.hasPendingChanges()) store.getNormal(storeIndex, normal_transform);
+            else world.normal(normal_transform);
+            normalVersion = worldVersion;
+        }
+        return normal_transform;
+    }
+    /**
+     * Returns the version of the world matrix, which changes each time the world matrix does.
+     * Allows to cache values calculated from it.
+     */
+    int getWorldVersion() {
+        getWorld_transform();   // (brings world matrix up to date)
+        return worldVersion;
+    }
     public Vector3f getShape_scale() {
         return shape_scale;
     }
@@ -1,11 +1,16 @@
 package graphics.scene;
 
 import graphics.lights.*;
+import graphics.materials.Material;
+import graphics.renderEngine.FrustumCuller;
 import graphics.shapes.CubeMapCube;
 import org.joml.Vector3f;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class Scene {
 
@@ -15,6 +20,8 @@ public class Scene {
     private List<PointLight> pointLights;
     private Vector3f I_a;
     private CubeMapCube skybox;
+    private TransformStore transformStore;  // packed store for the entities' transforms (null if not used)
+    private final BoundingVolumeHierarchy bvh;  // bvh over the drawable entities, for culling & spatial queries
 
     public Scene(List<Entity> components, DirLight dirLight, FlashLight flashLight, List<PointLight> pointLights, Vector3f ambient_intensity) {
         if(components != null) this.components = components;
@@ -24,6 +31,9 @@ public class Scene {
         this.pointLights = pointLights;
         I_a = ambient_intensity;
         skybox = null;
+
+        bvh = new BoundingVolumeHierarchy(this.components.size() * 2);
+        for(Entity component : this.components) component.attachToBVH(bvh);
     }
 
     public Scene(List<Entity> components, DirLight dirLight, FlashLight flashLight, List<PointLight> pointLights, Vector3f ambient_intensity, CubeMapCube skybox) {
@@ -34,8 +44,92 @@ public class Scene {
         this.pointLights = pointLights;
         I_a = ambient_intensity;
         this.skybox = skybox;
+
+        bvh = new BoundingVolumeHierarchy(this.components.size() * 2);
+        for(Entity component : this.components) component.attachToBVH(bvh);
+    }
+
+
+    /**
+     * Recalculate the world matrices of the entities in the scene whose transforms changed
+     * since the last call. Should be called once per frame, before rendering the scene.
+     */
+    public void updateWorldTransforms(){
+        if(transformStore != null){
+            if(!transformStore.isLayoutValid()) transformStore.build(components);
+            transformStore.sweep();
+        }
+        else for(Entity component : components) component.updateWorldTransforms();
+
+        bvh.update();   // update the bvh leaves of the entities that moved
+    }
+
+    /**
+     * Add the given entity (& its subtree) to the scene's components.
+     * @param component root {@link Entity} of the model to add
+     */
+    public void addComponent(Entity component){
+        components.add(component);
+        component.attachToBVH(bvh);
+        if(transformStore != null) transformStore.invalidateLayout();
+    }
+
+    /**
+     * Remove the given entity (& its subtree) from the scene's components.
+     * @param component root {@link Entity} of the model to remove
+     */
+    public void removeComponent(Entity component){
+        if(components.remove(component)) {
+            component.detachFromBVH();
+            if(transformStore != null) transformStore.invalidateLayout();
+        }
     }
 
+    /**
+     * Finds the drawable entities of the scene that are (at least partly) inside the frustum(s) of the given culler.
+     * @param culler {@link FrustumCuller} w/the frustum(s) of the render pass
+     * @param result list to which to add the entities found (not cleared)
+     * @return result
+     */
+    public List<DrawableEntity> queryFrustum(FrustumCuller culler, List<DrawableEntity> result){
+        return bvh.queryFrustum(culler, result);
+    }
+
+    /**
+     * Finds all the drawable entities of the scene.
+     * @param result list to which to add the entities (not cleared)
+     * @return result
+     */
+    public List<DrawableEntity> queryAll(List<DrawableEntity> result){
+        return bvh.queryAll(result);
+    }
+
+    /**
+     * Finds the drawable entity whose bounding box is hit first by the given ray (e.g. the one the camera looks at).
+     * @param origin origin of the ray (in wc)
+     * @param direction direction of the ray
+     * @return {@link DrawableEntity} hit first, or null if none is hit
+     */
+    public DrawableEntity pick(Vector3f origin, Vector3f direction){
+        return bvh.pickClosest(origin, direction);
+    }
+
+    /**
+     * Set whether the transforms of the entities in the scene are kept in a packed {@link TransformStore},
+     * updated by a linear sweep, instead of in each {@link Entity}.
+     * Note: changes to the hierarchy made through {@link Entity} methods are detected, but if the components
+     * list is modified directly, this method must be called again so that the store is rebuilt.
+     * @param useStore true to use a transform store
+     */
+    public void setUseTransformStore(boolean useStore){
+        if(useStore){
+            if(transformStore == null) transformStore = new TransformStore(components.size());
+            transformStore.build(components);
+        }else if(transformStore != null){
+            transformStore.build(new ArrayList<>()); // unbinds all entities
+            transformStore = null;
+        }
+    }
 
     /**
      * Deallocate the mesh resources of the SceneNodes that form this scene
@@ -45,6 +139,22 @@ public class Scene {
         skybox.getMesh().deallocateResources();
     }
 
+    /**
+     * Release the materials of the entities that form this scene (so their textures are deleted if no longer
+     * used) & delete the skybox's cubemap texture
+     */
+    public void deallocateTextureResources(){
+        Set<Material> materials = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(Entity component : components) collectMaterials(component, materials);
+        materials.forEach(Material::release);
+        if(skybox != null) skybox.getCubeMapTexture().delete();
+    }
+
+    private static void collectMaterials(Entity entity, Set<Material> materials){
+        if(entity instanceof DrawableEntity) materials.add(((DrawableEntity) entity).getShape().getMaterial());
+        for(Entity child : entity.getChildren()) collectMaterials(child, materials);
+    }
+
     public List<Entity> getComponents() {
         return components;
     }
@@ -63,4 +173,10 @@ public class Scene {
     public CubeMapCube getSkybox() {
         return skybox;
     }
+    public TransformStore getTransformStore() {
+        return transformStore;
+    }
+    public BoundingVolumeHierarchy getBVH() {
+        return bvh;
+    }
 }
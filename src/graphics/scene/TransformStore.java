@@ -0,0 +1,263 @@
+package graphics.scene;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packed (structure-of-arrays) storage for the transforms of the entities in a scene graph.
+ * The local (times shape scale), world and normal matrices of all nodes are kept in contiguous
+ * float arrays (16 floats per matrix, column-major, as JOML stores them), indexed by the node's
+ * index in the store. When bound to a store, an {@link Entity} acts as a handle to its slot.
+ *
+ * Nodes are laid out in depth-first order, so a node's parent always has a lower index than
+ * the node itself. This way the world matrices can be updated in a single linear sweep
+ * over the arrays (see sweep()), rather than by recursively traversing the graph.
+ */
+public class TransformStore {
+
+    private static final int MAT_SIZE = 16;
+
+    private int size;               // number of nodes in the store
+    private Entity[] entities;      // entities bound to each slot
+    private int[] parents;          // index of each node's parent (-1 for root nodes)
+    private float[] locals;         // local transform * shape scale of each node
+    private float[] worlds;         // world transform of each node
+    private float[] normals;        // matrix to transform normals from oc to wc of each node
+    private int[] versions;         // incremented each time a node's world matrix changes
+    private boolean[] dirty;        // true if node's world matrix must be recalculated
+    private boolean[] changed;      // true if node's world matrix changed in the current sweep
+    private boolean hasDirtyNodes;  // true if some node is dirty (i.e. sweep() has work to do)
+    private boolean layoutIsValid;  // false if the hierarchy changed since the store was built
+
+    private final Matrix4f tempMatrix = new Matrix4f();
+    private final Matrix4f tempWorld = new Matrix4f();
+
+    public TransformStore(int initialCapacity){
+        allocate(Math.max(initialCapacity, 1));
+        layoutIsValid = false;
+    }
+
+    /**
+     * (Re)build the store for the graph(s) whose root nodes are the given entities.
+     * Any entities previously bound to the store are unbound first.
+     * @param roots list of root {@link Entity}s of the scene graph
+     */
+    public void build(List<Entity> roots){
+        for(int i = 0; i < size; i++) entities[i].unbindFromStore();
+        size = 0;
+
+        for(Entity root : roots) add(root, -1);
+
+        Arrays.fill(dirty, 0, size, true);
+        hasDirtyNodes = true;
+        layoutIsValid = true;
+    }
+
+    /**
+     * Adds the given node & its subtree to the store (depth-first, so parents come before children).
+     */
+    private void add(Entity entity, int parentIndex){
+        if(size == entities.length) allocate(size * 2);
+
+        int index = size++;
+        entities[index] = entity;
+        parents[index] = parentIndex;
+        entity.getLocal_transform().scale(entity.getShape_scale(), tempMatrix).get(locals, index * MAT_SIZE);
+        entity.bindToStore(this, index);
+
+        for(Entity child : entity.getChildren()) add(child, index);
+    }
+
+    /**
+     * Grow the arrays to the given capacity, keeping their contents.
+     */
+    private void allocate(int capacity){
+        entities = entities == null ? new Entity[capacity] : Arrays.copyOf(entities, capacity);
+        parents = parents == null ? new int[capacity] : Arrays.copyOf(parents, capacity);
+        locals = locals == null ? new float[capacity * MAT_SIZE] : Arrays.copyOf(locals, capacity * MAT_SIZE);
+        worlds = worlds == null ? new float[capacity * MAT_SIZE] : Arrays.copyOf(worlds, capacity * MAT_SIZE);
+        normals = normals == null ? new float[capacity * MAT_SIZE] : Arrays.copyOf(normals, capacity * MAT_SIZE);
+        versions = versions == null ? new int[capacity] : Arrays.copyOf(versions, capacity);
+        dirty = dirty == null ? new boolean[capacity] : Arrays.copyOf(dirty, capacity);
+        changed = changed == null ? new boolean[capacity] : Arrays.copyOf(changed, capacity);
+    }
+
+    /**
+     * Updates the world & normal matrices of all dirty nodes and their descendants,
+     * in one linear sweep over the arrays.
+     */
+    public void sweep(){
+        if(!hasDirtyNodes) return;
+
+        Arrays.fill(changed, 0, size, false);
+        for(int i = 0; i < size; i++){
+            int parent = parents[i];
+            if(!dirty[i] && (parent < 0 || !changed[parent])) continue;
+
+            int offset = i * MAT_SIZE;
+            if(parent < 0) System.arraycopy(locals, offset, worlds, offset, MAT_SIZE);
+            else mul(worlds, parent * MAT_SIZE, locals, offset, worlds, offset);
+            calcNormalMatrix(worlds, offset, normals, offset);
+
+            dirty[i] = false;
+            changed[i] = true;
+            versions[i]++;
+            entities[i].onWorldChanged();
+        }
+        hasDirtyNodes = false;
+    }
+
+    /**
+     * dest = a * b, for the column-major 4x4 matrices at the given offsets of the arrays.
+     * (dest must not overlap a or b)
+     */
+    private static void mul(float[] a, int aOff, float[] b, int bOff, float[] dest, int destOff){
+        for(int col = 0; col < 4; col++){
+            float b0 = b[bOff + col * 4], b1 = b[bOff + col * 4 + 1], b2 = b[bOff + col * 4 + 2], b3 = b[bOff + col * 4 + 3];
+            for(int row = 0; row < 4; row++){
+                dest[destOff + col * 4 + row] = a[aOff + row] * b0 + a[aOff + 4 + row] * b1 + a[aOff + 8 + row] * b2 + a[aOff + 12 + row] * b3;
+            }
+        }
+    }
+
+    /**
+     * Calculates the normal matrix (inverse transpose of the upper 3x3 submatrix) of the column-major
+     * 4x4 matrix at the given offset of 'm' into 'dest'. The rest of the 4x4 dest matrix is set to identity.
+     */
+    private static void calcNormalMatrix(float[] m, int off, float[] dest, int destOff){
+        float m00 = m[off], m01 = m[off + 1], m02 = m[off + 2];
+        float m10 = m[off + 4], m11 = m[off + 5], m12 = m[off + 6];
+        float m20 = m[off + 8], m21 = m[off + 9], m22 = m[off + 10];
+
+        // cofactor matrix divided by determinant = inverse transpose
+        float c00 = m11 * m22 - m21 * m12, c01 = m20 * m12 - m10 * m22, c02 = m10 * m21 - m20 * m11;
+        float det = m00 * c00 + m01 * c01 + m02 * c02;
+        float invDet = 1.0f / det;
+
+        dest[destOff] = c00 * invDet;
+        dest[destOff + 1] = (m21 * m02 - m01 * m22) * invDet;
+        dest[destOff + 2] = (m01 * m12 - m11 * m02) * invDet;
+        dest[destOff + 3] = 0.0f;
+        dest[destOff + 4] = c01 * invDet;
+        dest[destOff + 5] = (m00 * m22 - m20 * m02) * invDet;
+        dest[destOff + 6] = (m10 * m02 - m00 * m12) * invDet;
+        dest[destOff + 7] = 0.0f;
+        dest[destOff + 8] = c02 * invDet;
+        dest[destOff + 9] = (m20 * m01 - m00 * m21) * invDet;
+        dest[destOff + 10] = (m00 * m11 - m10 * m01) * invDet;
+        dest[destOff + 11] = 0.0f;
+        dest[destOff + 12] = 0.0f;
+        dest[destOff + 13] = 0.0f;
+        dest[destOff + 14] = 0.0f;
+        dest[destOff + 15] = 1.0f;
+    }
+
+    /**
+     * Sets the local transform (times shape scale) of the node at the given index & marks it as dirty.
+     */
+    void setLocal(int index, Matrix4f local_transform, Vector3f shape_scale){
+        local_transform.scale(shape_scale, tempMatrix).get(locals, index * MAT_SIZE);
+        dirty[index] = true;
+        hasDirtyNodes = true;
+    }
+
+    /**
+     * Overrides the world transform of the node at the given index. It's stored as the node's local matrix
+     * (the inverse of its parent's world matrix times the override), so that it isn't lost when the node's
+     * ancestors change, & the node is marked as dirty (so it & its children are updated in the next sweep()).
+     * (the override is kept until the node's local transform is set again or the store is rebuilt)
+     */
+    void setWorld(int index, Matrix4f world_transform){
+        int parent = parents[index];
+        if(parent < 0) tempWorld.set(world_transform);
+        else getWorld(parent, tempWorld).invert().mul(world_transform);
+        tempWorld.get(locals, index * MAT_SIZE);
+        dirty[index] = true;
+        hasDirtyNodes = true;
+    }
+
+    /**
+     * Gets the world matrix of the node at the given index. If the store has pending changes
+     * that might affect it, it's calculated from the local matrices of the node & its ancestors.
+     * @param index index of the node
+     * @param dest {@link Matrix4f} to store the world matrix in
+     * @return dest
+     */
+    Matrix4f getWorld(int index, Matrix4f dest){
+        if(isStale(index)){
+            // world matrix is stale: calc it from the local matrices of the node & its ancestors
+            dest.set(locals, index * MAT_SIZE);
+            for(int node = parents[index]; node >= 0; node = parents[node]){
+                tempMatrix.set(locals, node * MAT_SIZE).mul(dest, dest);
+            }
+            return dest;
+        }
+        return dest.set(worlds, index * MAT_SIZE);
+    }
+
+    /**
+     * Copies the world matrix of the node at the given index (see getWorld()) into dest, if it differs from it.
+     * @return true if dest changed
+     */
+    boolean copyWorldIfChanged(int index, Matrix4f dest){
+        getWorld(index, tempWorld);
+        if(tempWorld.equals(dest)) return false;
+        dest.set(tempWorld);
+        return true;
+    }
+
+    /**
+     * Returns true if the world matrix of the node at the given index is stale, i.e. the node or one of its
+     * ancestors changed since the last sweep().
+     */
+    boolean isStale(int index){
+        if(!hasDirtyNodes) return false;
+        for(int node = index; node >= 0; node = parents[node]){
+            if(dirty[node]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the normal matrix (matrix to transform normals from oc to wc) of the node at the given index,
+     * as of the last sweep().
+     * @param index index of the node
+     * @param dest {@link Matrix4f} to store the normal matrix in
+     * @return dest
+     */
+    Matrix4f getNormal(int index, Matrix4f dest){
+        return dest.set(normals, index * MAT_SIZE);
+    }
+
+    /**
+     * Returns the version of the world matrix of the node at the given index, which
+     * changes each time the node's world matrix is updated.
+     */
+    int getVersion(int index){
+        return versions[index];
+    }
+
+    /**
+     * Marks the layout of the store as invalid (e.g. because a node's parent changed),
+     * so that the store is rebuilt before its next sweep.
+     */
+    void invalidateLayout(){
+        layoutIsValid = false;
+    }
+
+    /**
+     * Returns true if some transforms changed since the last sweep().
+     */
+    public boolean hasPendingChanges() {
+        return hasDirtyNodes;
+    }
+    public boolean isLayoutValid() {
+        return layoutIsValid;
+    }
+    public int getSize() {
+        return size;
+    }
+}
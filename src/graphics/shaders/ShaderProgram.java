@@ -3,9 +3,15 @@ package graphics.shaders;
 import org.joml.Matrix3f;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import graphics.core.FrameStats;
+import graphics.core.GLStateCache;
 import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryStack;
 
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.lwjgl.opengl.GL20.*;
 
@@ -14,10 +20,14 @@ import static org.lwjgl.opengl.GL20.*;
  * (consists of vertex & fragment shaders, and optionally a geometry shader)
  */
 public class ShaderProgram {
+    // scratch buffer for uploading matrices (uniforms are only set from the GL thread, so it can be shared)
+    private static final FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(16);
+
     private Shader vertexShader;
     private Shader fragmentShader;
     private Shader geomShader;
     private int id ;
+    private Map<String, Integer> uniformLocations;  // map of names of active uniforms to their locations
 
     /**
      * Initialise fields to given values.
@@ -65,18 +75,74 @@ public class ShaderProgram {
             glDeleteShader(id);
             throw new RuntimeException("Shader linking failed: consult the log above");
         }
+
+        findUniformLocations();
+    }
+
+    /**
+     * Queries the locations of all active uniforms in the (linked) program once, and stores them
+     * in the uniformLocations map so that uploading a uniform doesn't need to query OpenGL.
+     * Each element of a uniform array is stored under both 'name[i]' and, for the 1st element, 'name'.
+     */
+    private void findUniformLocations(){
+        uniformLocations = new HashMap<>();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+
+            int numOfUniforms = glGetProgrami(id, GL_ACTIVE_UNIFORMS);
+            for (int i = 0; i < numOfUniforms; i++) {
+                String name = glGetActiveUniform(id, i, size, type);
+                int arraySize = size.get(0);
+
+                if (name.endsWith("[0]")) {  // uniform array (of a basic type)
+                    String arrayName = name.substring(0, name.length() - 3);
+                    uniformLocations.put(arrayName, glGetUniformLocation(id, name));
+                    for (int j = 0; j < arraySize; j++) {
+                        String elemName = arrayName + "[" + j + "]";
+                        uniformLocations.put(elemName, glGetUniformLocation(id, elemName));
+                    }
+                } else uniformLocations.put(name, glGetUniformLocation(id, name));
+            }
+        }
+    }
+
+    /**
+     * Returns the location of the given uniform in this program (looked up in the
+     * locations found when the program was linked, rather than querying OpenGL).
+     * The location returned can be passed to the upload methods that take a location,
+     * to also avoid the lookup.
+     * @param target name of uniform variable
+     * @return location of the uniform, or -1 if it isn't an active uniform in the program
+     */
+    public int getUniformLocation(String target){
+        FrameStats.increment(FrameStats.Counter.UNIFORM_LOCATION_QUERIES_AVOIDED);
+        Integer location = uniformLocations.get(target);
+        return location == null ? -1 : location;
+    }
+
+    /**
+     * Returns true if the given location refers to an active uniform, so that it's worth uploading to.
+     * (OpenGL silently ignores uploads to location -1)
+     */
+    private static boolean isActive(int location){
+        if(location != -1) return true;
+        FrameStats.increment(FrameStats.Counter.INACTIVE_UNIFORM_UPLOADS_SKIPPED);
+        return false;
     }
 
     /**
      * Use this shader program in an OpenGL application.
      */
     public void use(){
-        glUseProgram(id);
+        GLStateCache.useProgram(id);    // (not issued if program already in use)
     }
     /**
      * Delete this shader program in an OpenGL application.
      */
     public void delete(){
+        GLStateCache.invalidate();  // (program might be in use)
         glDeleteProgram(id);
     }
 
@@ -87,7 +153,15 @@ public class ShaderProgram {
      * @param value new integer value
      */
     public void uploadInt(String target, int value){
-        glUniform1i(glGetUniformLocation(id, target), value);
+        uploadInt(getUniformLocation(target), value);
+    }
+    /**
+     * Sets value of the integer uniform variable at the given location to the new, given value
+     * @param location location of integer uniform variable (see getUniformLocation())
+     * @param value new integer value
+     */
+    public void uploadInt(int location, int value){
+        if(isActive(location)) glUniform1i(location, value);
     }
     /**
      * Sets value of the specified float uniform variable in program to the
@@ -96,7 +170,15 @@ public class ShaderProgram {
      * @param value new float value
      */
     public void uploadFloat(String target, float value){
-        glUniform1f(glGetUniformLocation(id, target), value);
+        uploadFloat(getUniformLocation(target), value);
+    }
+    /**
+     * Sets value of the float uniform variable at the given location to the new, given value
+     * @param location location of float uniform variable (see getUniformLocation())
+     * @param value new float value
+     */
+    public void uploadFloat(int location, float value){
+        if(isActive(location)) glUniform1f(location, value);
     }
 
     /**
@@ -107,7 +189,17 @@ public class ShaderProgram {
      * @param target name of uniform variable to which to upload vector
      */
     public void uploadVec3f(String target, float v0, float v1, float v2){
-        glUniform3f(glGetUniformLocation(id, target), v0, v1, v2);   // set vector as uniform value
+        uploadVec3f(getUniformLocation(target), v0, v1, v2);
+    }
+    /**
+     * Upload a 3-component vector (v0, v1, v2) to the uniform variable at the given location
+     * @param location location of uniform variable (see getUniformLocation())
+     * @param v0 1st component of vector
+     * @param v1 2nd component of vector
+     * @param v2 3rd component of vector
+     */
+    public void uploadVec3f(int location, float v0, float v1, float v2){
+        if(isActive(location)) glUniform3f(location, v0, v1, v2);   // set vector as uniform value
     }
     /**
      * Upload a 3-component vector 'vector' to 'target' shader uniform variable
@@ -115,7 +207,7 @@ public class ShaderProgram {
      * @param target name of uniform variable to which to upload vector
      */
     public void uploadVec3f(String target, Vector3f vector){
-        glUniform3f(glGetUniformLocation(id, target), vector.x, vector.y, vector.z);   // set vector as uniform value
+        uploadVec3f(getUniformLocation(target), vector.x, vector.y, vector.z);
     }
 
     /**
@@ -124,10 +216,17 @@ public class ShaderProgram {
      * @param target name of uniform variable to which to upload matrix
      */
     public void uploadMatrix3f(String target, Matrix3f m) {
-        int targetLocation = glGetUniformLocation(id, target);   // get location of target uniform
-        FloatBuffer buffer = BufferUtils.createFloatBuffer(9);
-        m.get(buffer);  // store matrix in column-major order into buffer
-        glUniformMatrix3fv(targetLocation, false, buffer);   // set matrix as uniform value
+        uploadMatrix3f(getUniformLocation(target), m);
+    }
+    /**
+     * Upload a 3x3 matrix 'm' to the uniform variable at the given location
+     * @param location location of uniform variable (see getUniformLocation())
+     * @param m {@link Matrix3f} to upload
+     */
+    public void uploadMatrix3f(int location, Matrix3f m) {
+        if(!isActive(location)) return;
+        m.get(0, matrixBuffer).limit(9);  // store matrix in column-major order into buffer
+        glUniformMatrix3fv(location, false, matrixBuffer);   // set matrix as uniform value
     }
     /**
      * Upload a 4x4 matrix 'm' to 'target' shader uniform variable
@@ -135,10 +234,17 @@ public class ShaderProgram {
      * @param target name of uniform variable to which to upload matrix
      */
     public void uploadMatrix4f(String target, Matrix4f m) {
-        int targetLocation = glGetUniformLocation(id, target);   // get location of target uniform
-        FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
-        m.get(buffer);  // store matrix in column-major order into buffer
-        glUniformMatrix4fv(targetLocation, false, buffer);   // set matrix as uniform value
+        uploadMatrix4f(getUniformLocation(target), m);
+    }
+    /**
+     * Upload a 4x4 matrix 'm' to the uniform variable at the given location
+     * @param location location of uniform variable (see getUniformLocation())
+     * @param m {@link Matrix4f} to upload
+     */
+    public void uploadMatrix4f(int location, Matrix4f m) {
+        if(!isActive(location)) return;
+        m.get(0, matrixBuffer).limit(16);  // store matrix in column-major order into buffer
+        glUniformMatrix4fv(location, false, matrixBuffer);   // set matrix as uniform value
     }
 
     /**
@@ -147,7 +253,8 @@ public class ShaderProgram {
      * @param target name of uniform variable to which to upload array
      */
     public void uploadFloatArray(String target, float[] arr){
-        glUniform1fv(glGetUniformLocation(id, target), arr);    // set array as uniform value
+        int location = getUniformLocation(target);
+        if(isActive(location)) glUniform1fv(location, arr);    // set array as uniform value
     }
     /**
      * Upload a int array to 'target' shader uniform variable
@@ -155,22 +262,8 @@ public class ShaderProgram {
      * @param target name of uniform variable to which to upload array
      */
     public void uploadIntArray(String target, int[] arr){
-        glUniform1iv(glGetUniformLocation(id, target), arr);    // set array as uniform value
-    }
-
-    /**
-     * Tell shader where it can find attributes (inputs...)
-     * @param location location of shader variable to which to bind given data
-     * @param arrayBufferHandle	handle to data (vertex positions, normals or texture coordinates)
-     * @param attribSize "dimensionality" of data/attrib (vertex & normals = 3, texture coords = 2)
-     */
-    public void bindDataToShader(int location, int arrayBufferHandle, int attribSize) {
-        glBindBuffer(GL_ARRAY_BUFFER, arrayBufferHandle); // bind given buffer
-
-        // specify how openGL should interpret the data
-        glVertexAttribPointer(location, attribSize, GL_FLOAT, false, 0, 0);
-        // enable attrib variable
-        glEnableVertexAttribArray(location);
+        int location = getUniformLocation(target);
+        if(isActive(location)) glUniform1iv(location, arr);    // set array as uniform value
     }
 
     public int getHandle(){
@@ -2,6 +2,7 @@ package graphics.shapes;
 
 import graphics.materials.Material;
 import graphics.shapes.meshes.CubeMesh;
+import graphics.shapes.meshes.VertexFormat;
 
 /**
  * Represents a unit cube.
@@ -12,6 +13,14 @@ public class Cube extends Shape {
         super(CubeMesh.getInstance(), material);
     }
 
+    /**
+     * @param material {@link Material} of the cube
+     * @param vertexFormat {@link VertexFormat} in which to store the mesh's vertex data
+     */
+    public Cube(Material material, VertexFormat vertexFormat){
+        super(CubeMesh.getInstance(vertexFormat), material);
+    }
+
     public Cube(){
         super(CubeMesh.getInstance(), new Material());
     }
@@ -1,9 +1,9 @@
 package graphics.shapes;
 
+import graphics.core.GLStateCache;
 import graphics.shapes.meshes.CubeMapCubeMesh;
 import graphics.textures.CubeMapTexture;
 
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL13.*;
 
 /**
@@ -22,8 +22,8 @@ public class CubeMapCube {
      * Bind the cube's cubemap texture to the appropriate texture units.
      */
     public void bindTexture(){
-        glActiveTexture(GL_TEXTURE0);                                       // activate proper texture unit before binding
-        glBindTexture(GL_TEXTURE_CUBE_MAP, cubeMapTexture.getHandle());     // bind texture to appropriate texture unit
+        GLStateCache.activeTexture(0);                                                 // activate proper texture unit before binding
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, cubeMapTexture.getHandle());     // bind texture to appropriate texture unit
     }
 
     public CubeMapCubeMesh getMesh() {
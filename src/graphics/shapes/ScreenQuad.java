@@ -1,9 +1,9 @@
 package graphics.shapes;
 
+import graphics.core.GLStateCache;
 import graphics.shapes.meshes.ScreenQuadMesh;
 import graphics.textures.Texture;
 
-import static org.lwjgl.opengl.GL11.glBindTexture;
 import static org.lwjgl.opengl.GL13.*;
 
 /**
@@ -28,8 +28,8 @@ public class ScreenQuad {
      * Bind the texture to tex unit 0
      */
     public void bindTexture(){
-        glActiveTexture(GL_TEXTURE0);                // activate proper texture unit before binding
-        glBindTexture(GL_TEXTURE_2D, texHandle);     // bind texture to appropriate texture unit
+        GLStateCache.activeTexture(0);                          // activate proper texture unit before binding
+        GLStateCache.bindTexture(GL_TEXTURE_2D, texHandle);     // bind texture to appropriate texture unit
     }
 
     public ScreenQuadMesh getMesh() {
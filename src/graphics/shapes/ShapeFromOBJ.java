@@ -2,6 +2,8 @@ package graphics.shapes;
 
 import graphics.materials.Material;
 import graphics.core.io.ModelLoader;
+import graphics.shapes.meshes.MeshFromOBJ;
+import graphics.shapes.meshes.VertexFormat;
 
 /**
  * Represents a shape whose mesh is loaded from a model/object file.
@@ -11,6 +13,39 @@ public class ShapeFromOBJ extends Shape {
         super(ModelLoader.loadModel(fileName, useFaceCulling), material);
     }
 
+    /**
+     * @param fileName filename/filepath of the model file
+     * @param material {@link Material} of the shape
+     * @param useFaceCulling true if face culling is to be used when rendering the shape
+     * @param vertexFormat {@link VertexFormat} in which to store the mesh's vertex data
+     */
+    public ShapeFromOBJ(String fileName, Material material, boolean useFaceCulling, VertexFormat vertexFormat) {
+        this(fileName, material, useFaceCulling, vertexFormat, false);
+    }
+
+    /**
+     * @param fileName filename/filepath of the model file
+     * @param material {@link Material} of the shape
+     * @param useFaceCulling true if face culling is to be used when rendering the shape
+     * @param vertexFormat {@link VertexFormat} in which to store the mesh's vertex data
+     * @param loadAsync true to load the mesh asynchronously (entities using the shape aren't drawn until
+     *                  it's loaded, see {@link ModelLoader#loadModelAsync})
+     */
+    public ShapeFromOBJ(String fileName, Material material, boolean useFaceCulling, VertexFormat vertexFormat, boolean loadAsync) {
+        super(loadAsync ? ModelLoader.loadModelAsync(fileName, useFaceCulling, vertexFormat)
+                        : ModelLoader.loadModel(fileName, useFaceCulling, vertexFormat),
+                material);
+    }
+
+    /**
+     * Create a shape for a mesh of a model that's already been loaded (e.g. by {@link ModelLoader#loadModelHierarchy}).
+     * @param mesh {@link MeshFromOBJ} of the shape
+     * @param material {@link Material} of the shape
+     */
+    public ShapeFromOBJ(MeshFromOBJ mesh, Material material) {
+        super(mesh, material);
+    }
+
     public ShapeFromOBJ(String fileName, boolean useFaceCulling) {
         super(ModelLoader.loadModel(fileName, useFaceCulling), new Material());
     }
@@ -2,6 +2,7 @@ package graphics.shapes;
 
 import graphics.materials.Material;
 import graphics.shapes.meshes.SquareMesh;
+import graphics.shapes.meshes.VertexFormat;
 
 /**
  * Represents a square shape. Edges are unit length.
@@ -11,6 +12,14 @@ public class Square extends Shape {
         super(SquareMesh.getInstance(), material);
     }
 
+    /**
+     * @param material {@link Material} of the square
+     * @param vertexFormat {@link VertexFormat} in which to store the mesh's vertex data
+     */
+    public Square(Material material, VertexFormat vertexFormat){
+        super(SquareMesh.getInstance(vertexFormat), material);
+    }
+
     public Square() {
         super(SquareMesh.getInstance(), new Material());
     }
@@ -1,5 +1,8 @@
 package graphics.shapes.meshes;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import static org.lwjgl.opengl.GL30.*;
 
 /**
@@ -7,18 +10,22 @@ import static org.lwjgl.opengl.GL30.*;
  */
 public class CubeMesh extends Mesh {
 
-    private static CubeMesh instance = null;
+    private static final Map<VertexFormat, CubeMesh> instances = new EnumMap<>(VertexFormat.class);  // 1 instance per format
 
-    private CubeMesh() {
-        super(GL_CW, true);
+    private CubeMesh(VertexFormat vertexFormat) {
+        super(GL_CW, true, vertexFormat);
         initialize();
     }
 
     public static CubeMesh getInstance(){
-        if(instance == null){
-            instance = new CubeMesh();
-        }
-        return instance;
+        return getInstance(VertexFormat.SEPARATE_FLOAT);
+    }
+
+    /**
+     * Returns the instance of the mesh whose vertex data is stored in the given {@link VertexFormat}.
+     */
+    public static CubeMesh getInstance(VertexFormat vertexFormat){
+        return instances.computeIfAbsent(vertexFormat, CubeMesh::new);
     }
 
     @Override
@@ -1,17 +1,45 @@
 package graphics.shapes.meshes;
 
+import graphics.core.FrameStats;
+import graphics.core.GLStateCache;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
+import static org.lwjgl.opengl.GL33.GL_INT_2_10_10_10_REV;
 
 /**
  * Abstract class encapsulating a 3D mesh object.
  * Should have 3D position (vertex positions), UV texture coordinates and normals.
  *
+ * The vertex attribute layout is recorded in the mesh's VAO when the mesh is loaded onto the GPU,
+ * using fixed attribute locations which all vertex shaders follow:
+ *      - location 0: vertex position
+ *      - location 1: vertex normal
+ *      - location 2: texture coordinates
+ * so drawing the mesh w/any shader only needs its VAO to be bound.
+ * The data is stored in the layout given by the mesh's {@link VertexFormat}.
+ *
  * Note: subclasses representing specific shapes/meshes should implement the singleton
  *      pattern, to avoid unnecessary creation & duplication of buffers.
  */
 public abstract class Mesh {
 
+    // vertex attribute locations used by all shaders
+    public static final int POSITION_LOCATION = 0;
+    public static final int NORMAL_LOCATION = 1;
+    public static final int TEX_COORDS_LOCATION = 2;
+
+    public static final int MAX_SHORT_INDEX_VERTICES = 65535;  // max nº of vertices for which 16 bit indices are used
+
     // shape/rendering properties
     private int vaoHandle;
     private int vertexVBOHandle;
@@ -19,8 +47,23 @@ public abstract class Mesh {
     private int texHandle = -1;
     private int num_of_triangles;
     private int eboHandle;
+    private int indexType;              // GL_UNSIGNED_SHORT if there are at most 65535 vertices, else GL_UNSIGNED_INT
     private int GLFrontFaceWinding;
     private boolean useFaceCulling;
+    private final VertexFormat vertexFormat;
+    private int vertexDataSize;         // nº of bytes of vertex data stored on the GPU
+    private boolean resident = false;   // true once the mesh's data is loaded onto the GPU (see initialize())
+    private List<Runnable> onResidentActions = new ArrayList<>();  // run once the mesh becomes resident
+
+    // maps quantized positions (in [0,1]) back to object coords (identity if positions aren't quantized)
+    private final Matrix4f dequantization_transform = new Matrix4f();
+
+    // bounds of the mesh in object coords
+    private final Vector3f boundsMin = new Vector3f();
+    private final Vector3f boundsMax = new Vector3f();
+    private final Vector3f boundsCentre = new Vector3f();  // centre of bounding sphere
+    private float boundsRadius;                             // radius of bounding sphere
+    private float uvDensity;                                // tex coord units per object coord unit (see MeshData)
 
     // abstract methods -- subclasses should implement them
     abstract float[]  initializeVertexPositions();
@@ -28,9 +71,21 @@ public abstract class Mesh {
     abstract float[]  initializeVertexNormals();
     abstract float[]  initializeTextureCoordinates();
 
+    /**
+     * Returns the nº of components of each vertex position (3 unless overridden, e.g. for 2D meshes).
+     */
+    int getPositionSize(){
+        return 3;
+    }
+
     Mesh(int GLFrontFaceWinding, boolean useFaceCulling){
+        this(GLFrontFaceWinding, useFaceCulling, VertexFormat.SEPARATE_FLOAT);
+    }
+
+    Mesh(int GLFrontFaceWinding, boolean useFaceCulling, VertexFormat vertexFormat){
         this.GLFrontFaceWinding = GLFrontFaceWinding;
         this.useFaceCulling = useFaceCulling;
+        this.vertexFormat = vertexFormat;
     }
 
      /**
@@ -42,68 +97,193 @@ public abstract class Mesh {
         int[] indices = initializeVertexIndices();
         float[] vertNormals = initializeVertexNormals();
         float[] textureCoordinates = initializeTextureCoordinates();
-        num_of_triangles = indices.length;
 
-        loadDataOntoGPU(vertPositions, indices, vertNormals, textureCoordinates);
+        MeshData data = MeshData.pack(vertPositions, getPositionSize(), indices, vertNormals, textureCoordinates, vertexFormat);
+        initialize(data);
+        data.free();
     }
 
     /**
-     * Move data from Java arrays to the corresponding OpenGL buffers.
-     * @param vertPositions array of vertex positions
-     * @param indices array of indeces for each vertex
-     * @param vertNormals array of normal vectors
-     * @param textureCoordinates array specifying tex coordinates
+     * Initialise mesh from data already packed in the mesh's vertex format (e.g. read from a file),
+     * instead of the arrays returned by the initializeX() methods. Must be called before using mesh.
+     * @param data {@link MeshData} to load onto the GPU (it can be freed afterwards)
      */
-    private void loadDataOntoGPU(float[] vertPositions, int[] indices, float[] vertNormals, float[] textureCoordinates) {
-        vaoHandle = glGenVertexArrays();    // create VAO obj
-        glBindVertexArray(vaoHandle);       // bind vertex array (VAO)
+    void initialize(MeshData data) {
+        if (data.getVertexFormat() != vertexFormat) throw new IllegalArgumentException("Mesh data isn't in the mesh's vertex format");
+        num_of_triangles = data.getNumOfIndices();
+        boundsMin.set(data.getBoundsMin());
+        boundsMax.set(data.getBoundsMax());
+        boundsCentre.set(data.getBoundsCentre());
+        boundsRadius = data.getBoundsRadius();
+        uvDensity = data.getUVDensity();
+        if (vertexFormat.isQuantized()) dequantization_transform.translation(boundsMin).scale(data.getQuantizationExtent());
+
+        loadDataOntoGPU(data);
+
+        resident = true;
+        for (Runnable action : onResidentActions) action.run();
+        onResidentActions = null;
+    }
+
+    /**
+     * Returns true if the mesh's data is loaded onto the GPU, & so the mesh can be drawn.
+     * (meshes whose data is loaded asynchronously, see {@link graphics.core.io.ModelLoader}, aren't resident at first)
+     */
+    public boolean isResident() {
+        return resident;
+    }
+
+    /**
+     * Run the given action once the mesh becomes resident (on the thread that loads it onto the GPU),
+     * or now if it's already resident. E.g. to update values which depend on the mesh's bounds.
+     */
+    public void whenResident(Runnable action) {
+        if (resident) action.run();
+        else onResidentActions.add(action);
+    }
 
-        // --- load vertex positions ---
-        vertexVBOHandle = glGenBuffers();                   // create an int buffer & return int ID (create VBO- vertex buffer obj)
-        glBindBuffer(GL_ARRAY_BUFFER, vertexVBOHandle);     // bind buffer (VBO)
-        glBufferData(GL_ARRAY_BUFFER, vertPositions, GL_STATIC_DRAW); // copy vertex data into currently bound buffer
+    /**
+     * Move the packed data onto the corresponding OpenGL buffers, & record the vertex attribute layout in the VAO.
+     * @param data {@link MeshData} to load
+     */
+    private void loadDataOntoGPU(MeshData data) {
+        vaoHandle = glGenVertexArrays();    // create VAO obj
+        GLStateCache.bindVertexArray(vaoHandle);    // bind vertex array (VAO)
 
-        // --- load vertex indexes ---
+        // --- load vertex indexes (16 bit indices if possible, halving their size) ---
         eboHandle = glGenBuffers();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboHandle);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, data.getIndexData(), GL_STATIC_DRAW);
+        indexType = data.getIndexType();
 
-        // --- load vertex normals ---
-        if (vertNormals != null) {
-            normalHandle = glGenBuffers(); // Get an OGL name for a buffer object
-            glBindBuffer(GL_ARRAY_BUFFER, normalHandle); // Bring that buffer object into existence on GPU
-            glBufferData(GL_ARRAY_BUFFER, vertNormals, GL_STATIC_DRAW); // Load the GPU buffer object with data
-        }
+        ByteBuffer vertexData = data.getVertexData();
+        vertexDataSize = vertexData.remaining();
+        int posSize = data.getPositionSize();
+        if (vertexFormat.isInterleaved()) {
+            // --- load interleaved vertex data onto a single buffer ---
+            int stride = data.getStride();
+            vertexVBOHandle = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vertexVBOHandle);
+            glBufferData(GL_ARRAY_BUFFER, vertexData, GL_STATIC_DRAW);
 
-        // --- load texture coordinates ---
-        if (textureCoordinates != null) {
-            texHandle = glGenBuffers();
-            glBindBuffer(GL_ARRAY_BUFFER, texHandle);
-            glBufferData(GL_ARRAY_BUFFER, textureCoordinates, GL_STATIC_DRAW);
+            if (vertexFormat.isQuantized()) {
+                setAttribute(POSITION_LOCATION, posSize, GL_UNSIGNED_SHORT, true, stride, 0);
+                if (data.hasNormals()) setAttribute(NORMAL_LOCATION, 4, GL_INT_2_10_10_10_REV, true, stride, data.getNormalOffset());
+                if (data.hasTexCoords()) setAttribute(TEX_COORDS_LOCATION, 2, GL_HALF_FLOAT, false, stride, data.getTexCoordsOffset());
+            } else {
+                setAttribute(POSITION_LOCATION, posSize, GL_FLOAT, false, stride, 0);
+                if (data.hasNormals()) setAttribute(NORMAL_LOCATION, 3, GL_FLOAT, false, stride, data.getNormalOffset());
+                if (data.hasTexCoords()) setAttribute(TEX_COORDS_LOCATION, 2, GL_FLOAT, false, stride, data.getTexCoordsOffset());
+            }
+        } else {
+            int normalOffset = data.getNormalOffset(), texOffset = data.getTexCoordsOffset();
+
+            // --- load vertex positions ---
+            vertexVBOHandle = glGenBuffers();                   // create an int buffer & return int ID (create VBO- vertex buffer obj)
+            glBindBuffer(GL_ARRAY_BUFFER, vertexVBOHandle);     // bind buffer (VBO)
+            glBufferData(GL_ARRAY_BUFFER, slice(vertexData, 0, normalOffset), GL_STATIC_DRAW); // copy vertex data into currently bound buffer
+            setAttribute(POSITION_LOCATION, posSize);
+
+            // --- load vertex normals ---
+            if (data.hasNormals()) {
+                normalHandle = glGenBuffers(); // Get an OGL name for a buffer object
+                glBindBuffer(GL_ARRAY_BUFFER, normalHandle); // Bring that buffer object into existence on GPU
+                glBufferData(GL_ARRAY_BUFFER, slice(vertexData, normalOffset, texOffset), GL_STATIC_DRAW); // Load the GPU buffer object with data
+                setAttribute(NORMAL_LOCATION, 3);
+            }
+
+            // --- load texture coordinates ---
+            if (data.hasTexCoords()) {
+                texHandle = glGenBuffers();
+                glBindBuffer(GL_ARRAY_BUFFER, texHandle);
+                glBufferData(GL_ARRAY_BUFFER, slice(vertexData, texOffset, vertexDataSize), GL_STATIC_DRAW);
+                setAttribute(TEX_COORDS_LOCATION, 2);
+            }
         }
+
+        GLStateCache.bindVertexArray(0);    // unbind VAO (the EBO binding stays recorded in it)
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Returns a view of the bytes [from, to) of the given buffer (relative to its position).
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        return MemoryUtil.memSlice(buffer, from, to - from);
+    }
+
+    /**
+     * Record in the bound VAO that the attribute at the given location is read from the
+     * buffer bound to GL_ARRAY_BUFFER (tightly packed floats), & enable it.
+     * @param location location of the attribute in the shaders
+     * @param attribSize "dimensionality" of the attrib (vertex & normals = 3, texture coords = 2)
+     */
+    private static void setAttribute(int location, int attribSize){
+        setAttribute(location, attribSize, GL_FLOAT, false, 0, 0);
+    }
+
+    private static void setAttribute(int location, int attribSize, int type, boolean normalized, int stride, long offset){
+        glVertexAttribPointer(location, attribSize, type, normalized, stride, offset);
+        glEnableVertexAttribArray(location);
     }
 
     /**
      * Draw the mesh using the currently active shader program.
      */
     public void render(){
-        if(!useFaceCulling) glDisable(GL_CULL_FACE);    // disable face culling
-        else glFrontFace(GLFrontFaceWinding);           // set front facing faces winding (for back face culling)
+        bind();
+        draw();
+        GLStateCache.bindVertexArray(0);
+    }
 
-        // draw mesh
-        glBindVertexArray(vaoHandle);
-        glDrawElements(GL_TRIANGLES, num_of_triangles, GL_UNSIGNED_INT, 0);
-        glBindVertexArray(0);
+    /**
+     * Bind the mesh's VAO, so that it can be drawn w/draw() or drawInstanced().
+     */
+    public void bind(){
+        GLStateCache.bindVertexArray(vaoHandle);
+    }
 
-        if(!useFaceCulling) glEnable(GL_CULL_FACE);     // enable face culling again (bc default is enabled)
+    /**
+     * Draw the mesh using the currently active shader program.
+     * ! The mesh's VAO must be bound (see bind()), it's left bound afterwards.
+     */
+    public void draw(){
+        setFaceCullingState();
+
+        glDrawElements(GL_TRIANGLES, num_of_triangles, indexType, 0);
+        FrameStats.increment(FrameStats.Counter.DRAW_CALLS);
+    }
+
+    /**
+     * Set the face culling state the mesh needs (redundant changes are filtered by {@link GLStateCache},
+     * so consecutive meshes w/the same settings don't toggle face culling on & off around each draw).
+     */
+    private void setFaceCullingState(){
+        GLStateCache.setEnabled(GL_CULL_FACE, useFaceCulling);
+        if(useFaceCulling) GLStateCache.frontFace(GLFrontFaceWinding);   // set front facing faces winding (for back face culling)
+    }
+
+    /**
+     * Draw the given nº of instances of the mesh, in a single draw call, using the currently active shader program.
+     * The per-instance attributes must have been set up in the mesh's VAO beforehand.
+     * ! The mesh's VAO must be bound (see bind()), it's left bound afterwards.
+     * @param numOfInstances nº of instances to draw
+     */
+    public void drawInstanced(int numOfInstances){
+        setFaceCullingState();
+
+        glDrawElementsInstanced(GL_TRIANGLES, num_of_triangles, indexType, 0, numOfInstances);
+        FrameStats.increment(FrameStats.Counter.DRAW_CALLS);
     }
 
     public void deallocateResources(){
+        if (!resident) return;
+        GLStateCache.invalidate();  // (VAO might be bound)
         glDeleteVertexArrays(vaoHandle);
         glDeleteBuffers(vertexVBOHandle);
         glDeleteBuffers(eboHandle);
-        if (normalHandle != -1) glDeleteVertexArrays(normalHandle);
-        if (texHandle != -1) glDeleteVertexArrays(texHandle);
+        if (normalHandle != -1) glDeleteBuffers(normalHandle);
+        if (texHandle != -1) glDeleteBuffers(texHandle);
     }
 
     public int getVAOHandle(){
@@ -124,6 +304,44 @@ public abstract class Mesh {
     public int getEboHandle() {
         return eboHandle;
     }
+    /**
+     * Returns the type of the indices in the EBO (GL_UNSIGNED_SHORT or GL_UNSIGNED_INT).
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+    /**
+     * Returns the nº of bytes of vertex data (not including indices) the mesh stores on the GPU.
+     */
+    public int getVertexDataSize() {
+        return vertexDataSize;
+    }
+    /**
+     * Returns the matrix which maps the mesh's (quantized) vertex positions to object coords.
+     * It's the identity if the positions aren't quantized. It must be applied before the world
+     * matrix (i.e. model matrix = world * dequantization), but not to normals.
+     */
+    public Matrix4f getDequantization_transform() {
+        return dequantization_transform;
+    }
+    public Vector3f getBoundsMin() {
+        return boundsMin;
+    }
+    public Vector3f getBoundsMax() {
+        return boundsMax;
+    }
+    public Vector3f getBoundsCentre() {
+        return boundsCentre;
+    }
+    public float getBoundsRadius() {
+        return boundsRadius;
+    }
+    public float getUVDensity() {
+        return uvDensity;
+    }
 
     public void setGLFrontFaceWinding(int GLFrontFaceWinding) {
         this.GLFrontFaceWinding = GLFrontFaceWinding;
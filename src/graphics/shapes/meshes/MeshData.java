@@ -0,0 +1,384 @@
+package graphics.shapes.meshes;
+
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * The data of a {@link Mesh}, packed in the layout in which it's loaded onto the GPU:
+ *      - vertex data: in the layout of the {@link VertexFormat}. For interleaved formats, the attributes of each
+ *        vertex are stored together. For SEPARATE_FLOAT, all positions are stored 1st, then all normals & then
+ *        all tex coords (each is loaded onto its own buffer)
+ *      - index data: 16 bit indices if there are at most {@link Mesh#MAX_SHORT_INDEX_VERTICES} vertices, else 32 bit
+ *      - bounds of the mesh in object coords (positions in quantized formats are relative to the bounding box)
+ *      - UV density: tex coord units per object coord unit (used to estimate the texture resolution needed to draw it)
+ * The buffers are in native byte order, & can be passed straight to glBufferData.
+ */
+public class MeshData {
+    private final VertexFormat vertexFormat;
+    private final int positionSize;         // nº of components of each vertex position (2 or 3)
+    private final boolean hasNormals, hasTexCoords;
+    private final int numOfVertices;
+    private final int numOfIndices;
+    private final ByteBuffer vertexData;
+    private final ByteBuffer indexData;
+    private final boolean ownsMemory;       // true if the buffers were allocated by pack() & must be freed w/free()
+
+    // bounds of the mesh in object coords
+    private final Vector3f boundsMin;
+    private final Vector3f boundsMax;
+    private final Vector3f boundsCentre;    // centre of bounding sphere
+    private final float boundsRadius;       // radius of bounding sphere
+    private final float uvDensity;          // sqrt(area in tex coords / area in object coords) (0 if no tex coords)
+
+    /**
+     * Create mesh data from already packed buffers (e.g. read from a file).
+     * The buffers aren't freed by free(), their owner is responsible for them.
+     */
+    public MeshData(VertexFormat vertexFormat, int positionSize, boolean hasNormals, boolean hasTexCoords,
+                    int numOfVertices, int numOfIndices, ByteBuffer vertexData, ByteBuffer indexData,
+                    Vector3f boundsMin, Vector3f boundsMax, Vector3f boundsCentre, float boundsRadius, float uvDensity){
+        this(vertexFormat, positionSize, hasNormals, hasTexCoords, numOfVertices, numOfIndices, vertexData, indexData,
+                boundsMin, boundsMax, boundsCentre, boundsRadius, uvDensity, false);
+    }
+
+    private MeshData(VertexFormat vertexFormat, int positionSize, boolean hasNormals, boolean hasTexCoords,
+                     int numOfVertices, int numOfIndices, ByteBuffer vertexData, ByteBuffer indexData,
+                     Vector3f boundsMin, Vector3f boundsMax, Vector3f boundsCentre, float boundsRadius, float uvDensity,
+                     boolean ownsMemory){
+        this.vertexFormat = vertexFormat;
+        this.positionSize = positionSize;
+        this.hasNormals = hasNormals;
+        this.hasTexCoords = hasTexCoords;
+        this.numOfVertices = numOfVertices;
+        this.numOfIndices = numOfIndices;
+        this.vertexData = vertexData;
+        this.indexData = indexData;
+        this.boundsMin = boundsMin;
+        this.boundsMax = boundsMax;
+        this.boundsCentre = boundsCentre;
+        this.boundsRadius = boundsRadius;
+        this.uvDensity = uvDensity;
+        this.ownsMemory = ownsMemory;
+    }
+
+    /**
+     * Pack the given vertex data into the layout of the given vertex format.
+     * The returned data must be freed w/free() once it's no longer needed (e.g. once loaded onto the GPU).
+     * @param vertPositions array of vertex positions
+     * @param positionSize nº of components of each vertex position (2 or 3)
+     * @param indices array of indices (3 per triangle)
+     * @param vertNormals array of normal vectors (may be null)
+     * @param textureCoordinates array specifying tex coordinates (may be null)
+     * @param vertexFormat {@link VertexFormat} to pack the data in
+     * @return {@link MeshData} w/the packed data
+     */
+    public static MeshData pack(float[] vertPositions, int positionSize, int[] indices, float[] vertNormals,
+                                float[] textureCoordinates, VertexFormat vertexFormat){
+        return pack(vertPositions.length / positionSize, positionSize, indices, null, vertexFormat,
+                FloatBuffer.wrap(vertPositions), positionSize,
+                vertNormals == null ? null : FloatBuffer.wrap(vertNormals), 3,
+                textureCoordinates == null ? null : FloatBuffer.wrap(textureCoordinates), 2);
+    }
+
+    /**
+     * Pack the given vertex data, given as arrays of 3D vectors (3 floats per vertex, e.g. views of Assimp's
+     * native AIVector3D arrays, which are read in place), into the layout of the given vertex format, storing
+     * the vertices in the given order.
+     * The returned data must be freed w/free() once it's no longer needed (e.g. once loaded onto the GPU).
+     * @param positions buffer of vertex positions
+     * @param indices array of indices (3 per triangle), referring to the vertices in their new order
+     * @param vertexOrder new order of the vertices: packed vertex i is vertex vertexOrder[i] in the buffers
+     *                    (null to keep them in order)
+     * @param normals buffer of normal vectors (may be null)
+     * @param texCoords buffer of tex coords (only their 1st 2 components are used; may be null)
+     * @param vertexFormat {@link VertexFormat} to pack the data in
+     * @return {@link MeshData} w/the packed data
+     */
+    public static MeshData packVectors(FloatBuffer positions, int[] indices, int[] vertexOrder, FloatBuffer normals,
+                                       FloatBuffer texCoords, VertexFormat vertexFormat){
+        return pack(positions.remaining() / 3, 3, indices, vertexOrder, vertexFormat, positions, 3, normals, 3, texCoords, 3);
+    }
+
+    /**
+     * Pack the given vertex data (each attribute w/the given nº of floats per vertex in its buffer) into the layout
+     * of the given vertex format, storing the vertices in the given order (null to keep them in order).
+     * Attributes which don't need reordering nor converting are copied in bulk.
+     */
+    private static MeshData pack(int numOfVertices, int positionSize, int[] indices, int[] vertexOrder, VertexFormat vertexFormat,
+                                 FloatBuffer positions, int positionStride, FloatBuffer normals, int normalStride,
+                                 FloatBuffer texCoords, int texCoordsStride){
+        boolean hasNormals = normals != null, hasTexCoords = texCoords != null;
+
+        // bounds
+        Vector3f boundsMin = new Vector3f(), boundsMax = new Vector3f(), boundsCentre = new Vector3f();
+        float boundsRadius = calcBounds(positions, numOfVertices, positionSize, positionStride, boundsMin, boundsMax, boundsCentre);
+        float uvDensity = hasTexCoords ? calcUVDensity(positions, positionSize, positionStride, texCoords, texCoordsStride, indices, vertexOrder) : 0.0f;
+
+        // indices
+        ByteBuffer indexData;
+        if (numOfVertices <= Mesh.MAX_SHORT_INDEX_VERTICES) {
+            indexData = MemoryUtil.memAlloc(indices.length * Short.BYTES);
+            for (int i = 0; i < indices.length; i++) indexData.putShort(i * Short.BYTES, (short) indices[i]);  // (read as unsigned)
+        } else {
+            indexData = MemoryUtil.memAlloc(indices.length * Integer.BYTES);
+            indexData.asIntBuffer().put(indices);
+        }
+
+        // vertex data
+        int stride = vertexFormat.getBytesPerVertex(positionSize, hasNormals, hasTexCoords);
+        ByteBuffer vertexData = MemoryUtil.memAlloc(numOfVertices * stride);
+        MeshData data = new MeshData(vertexFormat, positionSize, hasNormals, hasTexCoords, numOfVertices, indices.length,
+                vertexData, indexData, boundsMin, boundsMax, boundsCentre, boundsRadius, uvDensity, true);
+
+        if (!vertexFormat.isInterleaved()) {
+            copyAttribute(positions, positionStride, positionSize, vertexOrder, numOfVertices, vertexData, 0);
+            if (hasNormals) copyAttribute(normals, normalStride, 3, vertexOrder, numOfVertices, vertexData, data.getNormalOffset());
+            if (hasTexCoords) copyAttribute(texCoords, texCoordsStride, 2, vertexOrder, numOfVertices, vertexData, data.getTexCoordsOffset());
+            return data;
+        }
+
+        boolean quantized = vertexFormat.isQuantized();
+        int normalOffset = data.getNormalOffset(), texOffset = data.getTexCoordsOffset();
+        Vector3f extent = data.getQuantizationExtent();
+        for (int v = 0; v < numOfVertices; v++) {
+            int base = v * stride;
+            int src = vertexOrder == null ? v : vertexOrder[v];
+            for (int c = 0; c < positionSize; c++) {
+                float pos = positions.get(src * positionStride + c);
+                if (quantized) vertexData.putShort(base + c * Short.BYTES, VertexFormat.toUnsignedNormShort((pos - boundsMin.get(c)) / extent.get(c)));
+                else vertexData.putFloat(base + c * Float.BYTES, pos);
+            }
+            if (quantized) {    // pad unused components
+                for (int c = positionSize; c < 4; c++) vertexData.putShort(base + c * Short.BYTES, (short) 0);
+            }
+            if (hasNormals) {
+                int n = src * normalStride;
+                if (quantized) vertexData.putInt(base + normalOffset, VertexFormat.packNormal(normals.get(n), normals.get(n + 1), normals.get(n + 2)));
+                else for (int c = 0; c < 3; c++) vertexData.putFloat(base + normalOffset + c * Float.BYTES, normals.get(n + c));
+            }
+            if (hasTexCoords) {
+                for (int c = 0; c < 2; c++) {
+                    float texCoord = texCoords.get(src * texCoordsStride + c);
+                    if (quantized) vertexData.putShort(base + texOffset + c * Short.BYTES, VertexFormat.toHalfFloat(texCoord));
+                    else vertexData.putFloat(base + texOffset + c * Float.BYTES, texCoord);
+                }
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Copy the 1st 'size' floats of each vertex's attribute in the given buffer (w/'srcStride' floats per vertex),
+     * tightly packed & in the given vertex order, to the given offset of the vertex data.
+     */
+    private static void copyAttribute(FloatBuffer src, int srcStride, int size, int[] vertexOrder, int numOfVertices,
+                                      ByteBuffer vertexData, int offset){
+        vertexData.position(offset);
+        FloatBuffer dst = vertexData.asFloatBuffer();
+        vertexData.position(0);
+
+        if (vertexOrder == null && srcStride == size) {     // same layout: bulk copy
+            FloatBuffer values = src.duplicate();
+            values.limit(values.position() + numOfVertices * size);
+            dst.put(values);
+            return;
+        }
+        for (int v = 0; v < numOfVertices; v++) {
+            int s = (vertexOrder == null ? v : vertexOrder[v]) * srcStride;
+            for (int c = 0; c < size; c++) dst.put(v * size + c, src.get(s + c));
+        }
+    }
+
+    /**
+     * Calculate the axis-aligned bounding box and bounding sphere of the mesh from its vertex positions.
+     * @return radius of the bounding sphere
+     */
+    private static float calcBounds(FloatBuffer positions, int numOfVertices, int posSize, int posStride,
+                                    Vector3f boundsMin, Vector3f boundsMax, Vector3f boundsCentre) {
+        boundsMin.set(Float.POSITIVE_INFINITY);
+        boundsMax.set(Float.NEGATIVE_INFINITY);
+        Vector3f pos = new Vector3f();
+        for (int i = 0; i < numOfVertices; i++) {
+            readPosition(positions, i * posStride, posSize, pos);
+            boundsMin.min(pos);
+            boundsMax.max(pos);
+        }
+        if (numOfVertices == 0) {
+            boundsMin.set(0.0f);
+            boundsMax.set(0.0f);
+        }
+
+        // sphere centred at the box's centre, enclosing all vertices
+        boundsMin.add(boundsMax, boundsCentre).mul(0.5f);
+        float maxDistSquared = 0.0f;
+        for (int i = 0; i < numOfVertices; i++) {
+            readPosition(positions, i * posStride, posSize, pos);
+            maxDistSquared = Math.max(maxDistSquared, pos.distanceSquared(boundsCentre));
+        }
+        return (float) Math.sqrt(maxDistSquared);
+    }
+
+    /**
+     * Calculate the mesh's UV density: the square root of the ratio between the total area of its triangles in
+     * tex coords & in object coords, i.e. how many tex coord units 1 object coord unit spans, on average.
+     * @return UV density (0 if the mesh has no area)
+     */
+    private static float calcUVDensity(FloatBuffer positions, int posSize, int posStride, FloatBuffer texCoords,
+                                       int texCoordsStride, int[] indices, int[] vertexOrder){
+        double area = 0.0, uvArea = 0.0;
+        Vector3f p0 = new Vector3f(), p1 = new Vector3f(), p2 = new Vector3f();
+        for (int i = 0; i + 2 < indices.length; i += 3) {
+            int v0 = vertexOrder == null ? indices[i] : vertexOrder[indices[i]];
+            int v1 = vertexOrder == null ? indices[i + 1] : vertexOrder[indices[i + 1]];
+            int v2 = vertexOrder == null ? indices[i + 2] : vertexOrder[indices[i + 2]];
+            readPosition(positions, v0 * posStride, posSize, p0);
+            readPosition(positions, v1 * posStride, posSize, p1);
+            readPosition(positions, v2 * posStride, posSize, p2);
+            area += p1.sub(p0).cross(p2.sub(p0)).length() * 0.5;
+
+            float u0 = texCoords.get(v0 * texCoordsStride), t0 = texCoords.get(v0 * texCoordsStride + 1);
+            float u1 = texCoords.get(v1 * texCoordsStride) - u0, t1 = texCoords.get(v1 * texCoordsStride + 1) - t0;
+            float u2 = texCoords.get(v2 * texCoordsStride) - u0, t2 = texCoords.get(v2 * texCoordsStride + 1) - t0;
+            uvArea += Math.abs(u1 * t2 - u2 * t1) * 0.5;
+        }
+        return area > 0.0 ? (float) Math.sqrt(uvArea / area) : 0.0f;
+    }
+
+    private static void readPosition(FloatBuffer positions, int index, int posSize, Vector3f pos){
+        pos.set(positions.get(index), positions.get(index + 1), posSize > 2 ? positions.get(index + 2) : 0.0f);
+    }
+
+    /**
+     * Returns the vertex positions, unpacked from the vertex data (dequantized if the format is quantized,
+     * so then only accurate to within the quantization step).
+     * @return array of vertex positions (positionSize floats per vertex)
+     */
+    public float[] unpackPositions(){
+        float[] positions = new float[numOfVertices * positionSize];
+        int stride = getStride();
+        boolean quantized = vertexFormat.isQuantized();
+        Vector3f extent = quantized ? getQuantizationExtent() : null;
+        for (int v = 0; v < numOfVertices; v++) {
+            for (int c = 0; c < positionSize; c++) {
+                int i = v * positionSize + c;
+                if (!vertexFormat.isInterleaved()) positions[i] = vertexData.getFloat(i * Float.BYTES);
+                else if (!quantized) positions[i] = vertexData.getFloat(v * stride + c * Float.BYTES);
+                else {
+                    float normalized = (vertexData.getShort(v * stride + c * Short.BYTES) & 0xFFFF) / 65535.0f;
+                    positions[i] = boundsMin.get(c) + normalized * extent.get(c);
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Returns the indices, unpacked from the index data.
+     * @return array of indices (3 per triangle)
+     */
+    public int[] unpackIndices(){
+        int[] indices = new int[numOfIndices];
+        if (getIndexType() == GL_UNSIGNED_SHORT) {
+            for (int i = 0; i < numOfIndices; i++) indices[i] = indexData.getShort(i * Short.BYTES) & 0xFFFF;
+        } else indexData.duplicate().order(indexData.order()).asIntBuffer().get(indices);
+        return indices;
+    }
+
+    /**
+     * Free the buffers, if they were allocated by pack(). The data can't be used afterwards.
+     */
+    public void free(){
+        if (ownsMemory) {
+            MemoryUtil.memFree(vertexData);
+            MemoryUtil.memFree(indexData);
+        }
+    }
+
+    /**
+     * Returns the extent of the bounding box used to quantize positions (axes along which the mesh is flat
+     * have an extent of 1, so that the mapping stays well defined).
+     */
+    Vector3f getQuantizationExtent(){
+        Vector3f extent = new Vector3f(boundsMax).sub(boundsMin);
+        if (extent.x == 0.0f) extent.x = 1.0f;  // (flat along an axis, e.g. a square)
+        if (extent.y == 0.0f) extent.y = 1.0f;
+        if (extent.z == 0.0f) extent.z = 1.0f;
+        return extent;
+    }
+
+    /**
+     * Returns the nº of bytes between consecutive vertices' attributes (0 if the attributes are tightly packed in
+     * separate arrays, as in SEPARATE_FLOAT).
+     */
+    int getStride(){
+        return vertexFormat.isInterleaved() ? vertexFormat.getBytesPerVertex(positionSize, hasNormals, hasTexCoords) : 0;
+    }
+
+    /**
+     * Returns the byte offset of the 1st vertex normal in the vertex data.
+     */
+    int getNormalOffset(){
+        if (!vertexFormat.isInterleaved()) return numOfVertices * positionSize * Float.BYTES;
+        return vertexFormat.isQuantized() ? 4 * Short.BYTES : positionSize * Float.BYTES;
+    }
+
+    /**
+     * Returns the byte offset of the 1st tex coord in the vertex data.
+     */
+    int getTexCoordsOffset(){
+        if (!vertexFormat.isInterleaved()) return getNormalOffset() + (hasNormals ? numOfVertices * 3 * Float.BYTES : 0);
+        return getNormalOffset() + (hasNormals ? (vertexFormat.isQuantized() ? Integer.BYTES : 3 * Float.BYTES) : 0);
+    }
+
+    public VertexFormat getVertexFormat() {
+        return vertexFormat;
+    }
+    public int getPositionSize() {
+        return positionSize;
+    }
+    public boolean hasNormals() {
+        return hasNormals;
+    }
+    public boolean hasTexCoords() {
+        return hasTexCoords;
+    }
+    public int getNumOfVertices() {
+        return numOfVertices;
+    }
+    public int getNumOfIndices() {
+        return numOfIndices;
+    }
+    /**
+     * Returns the type of the indices (GL_UNSIGNED_SHORT or GL_UNSIGNED_INT).
+     */
+    public int getIndexType() {
+        return numOfVertices <= Mesh.MAX_SHORT_INDEX_VERTICES ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+    }
+    public ByteBuffer getVertexData() {
+        return vertexData;
+    }
+    public ByteBuffer getIndexData() {
+        return indexData;
+    }
+    public Vector3f getBoundsMin() {
+        return boundsMin;
+    }
+    public Vector3f getBoundsMax() {
+        return boundsMax;
+    }
+    public Vector3f getBoundsCentre() {
+        return boundsCentre;
+    }
+    public float getBoundsRadius() {
+        return boundsRadius;
+    }
+    public float getUVDensity() {
+        return uvDensity;
+    }
+}
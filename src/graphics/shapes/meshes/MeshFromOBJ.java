@@ -14,7 +14,11 @@ public class MeshFromOBJ extends Mesh {
     private float[] texCoords;
 
     public MeshFromOBJ(float[] vPositions, int[] vIndeces, float[] vNormals, float[] texCoords, boolean useFaceCulling){
-        super(GL_CCW, useFaceCulling);
+        this(vPositions, vIndeces, vNormals, texCoords, useFaceCulling, VertexFormat.SEPARATE_FLOAT);
+    }
+
+    public MeshFromOBJ(float[] vPositions, int[] vIndeces, float[] vNormals, float[] texCoords, boolean useFaceCulling, VertexFormat vertexFormat){
+        super(GL_CCW, useFaceCulling, vertexFormat);
         this.vPositions = vPositions;
         this.vIndeces = vIndeces;
         this.vNormals = vNormals;
@@ -22,6 +26,59 @@ public class MeshFromOBJ extends Mesh {
         initialize();
     }
 
+    /**
+     * Create a mesh from data already packed in its vertex format (e.g. read from the mesh cache).
+     * @param data {@link MeshData} to load onto the GPU (it can be freed afterwards)
+     * @param useFaceCulling true if face culling is to be used when rendering the mesh
+     */
+    public MeshFromOBJ(MeshData data, boolean useFaceCulling){
+        super(GL_CCW, useFaceCulling, data.getVertexFormat());
+        initialize(data);
+    }
+
+    /**
+     * Create a mesh whose data will be loaded later (w/load()), e.g. once it's been imported asynchronously.
+     * The mesh isn't resident (& so isn't drawn) until then.
+     * @param useFaceCulling true if face culling is to be used when rendering the mesh
+     * @param vertexFormat {@link VertexFormat} of the data that will be loaded
+     */
+    public MeshFromOBJ(boolean useFaceCulling, VertexFormat vertexFormat){
+        super(GL_CCW, useFaceCulling, vertexFormat);
+    }
+
+    /**
+     * Load the given data onto the GPU, making the mesh resident. Must be called on the GL thread.
+     * @param data {@link MeshData} to load (it can be freed afterwards)
+     */
+    public void load(MeshData data){
+        if (isResident()) throw new IllegalStateException("Mesh is already loaded");
+        initialize(data);
+    }
+
+    /**
+     * Keep a copy of the mesh's vertex positions & indices on the CPU (e.g. for collision detection), unpacked
+     * from the given data (see {@link MeshData#unpackPositions()}).
+     * @param data {@link MeshData} of the mesh
+     */
+    public void keepCPUData(MeshData data){
+        vPositions = data.unpackPositions();
+        vIndeces = data.unpackIndices();
+    }
+
+    /**
+     * Returns the vertex positions of the mesh kept on the CPU (3 floats per vertex), or null if they weren't kept.
+     */
+    public float[] getVertexPositions() {
+        return vPositions;
+    }
+
+    /**
+     * Returns the indices of the mesh kept on the CPU (3 per triangle), or null if they weren't kept.
+     */
+    public int[] getVertexIndices() {
+        return vIndeces;
+    }
+
     @Override
     float[] initializeVertexPositions() {
         return vPositions;
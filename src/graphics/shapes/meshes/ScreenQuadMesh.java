@@ -21,6 +21,11 @@ public class ScreenQuadMesh extends Mesh {
         return instance;
     }
 
+    @Override
+    int getPositionSize() {
+        return 2;
+    }
+
     @Override
     float[] initializeVertexPositions() {
         return new float[]{
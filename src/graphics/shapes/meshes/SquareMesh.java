@@ -1,5 +1,8 @@
 package graphics.shapes.meshes;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import static org.lwjgl.opengl.GL30.*;
 
 /**
@@ -7,18 +10,22 @@ import static org.lwjgl.opengl.GL30.*;
  */
 public class SquareMesh extends Mesh {
 
-    private static SquareMesh instance = null;
+    private static final Map<VertexFormat, SquareMesh> instances = new EnumMap<>(VertexFormat.class);  // 1 instance per format
 
-    private SquareMesh() {
-        super(GL_CW, false);
+    private SquareMesh(VertexFormat vertexFormat) {
+        super(GL_CW, false, vertexFormat);
         initialize();
     }
 
     public static SquareMesh getInstance(){
-        if(instance == null){
-            instance = new SquareMesh();
-        }
-        return instance;
+        return getInstance(VertexFormat.SEPARATE_FLOAT);
+    }
+
+    /**
+     * Returns the instance of the mesh whose vertex data is stored in the given {@link VertexFormat}.
+     */
+    public static SquareMesh getInstance(VertexFormat vertexFormat){
+        return instances.computeIfAbsent(vertexFormat, SquareMesh::new);
     }
 
     @Override
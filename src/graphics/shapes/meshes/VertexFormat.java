@@ -0,0 +1,96 @@
+package graphics.shapes.meshes;
+
+/**
+ * Layouts in which a {@link Mesh} can store its vertex data on the GPU.
+ * All of them are read by the same vertex shaders (as vec3 positions & normals and vec2 tex coords),
+ * the GPU converts the data to floats when fetching it.
+ */
+public enum VertexFormat {
+    /**
+     * Positions, normals & tex coords as floats, each in its own buffer (32 bytes per 3D vertex).
+     */
+    SEPARATE_FLOAT(false, false),
+
+    /**
+     * Positions, normals & tex coords as floats, interleaved in a single buffer (32 bytes per 3D vertex).
+     */
+    INTERLEAVED_FLOAT(true, false),
+
+    /**
+     * Quantized attributes, interleaved in a single buffer (16 bytes per vertex):
+     *      - positions as normalised unsigned shorts relative to the mesh's bounding box (8 bytes, padded)
+     *      - normals packed into 10 bits per component (GL_INT_2_10_10_10_REV, 4 bytes)
+     *      - tex coords as half floats (4 bytes), so that coords outside [0,1] (e.g. for tiling) are kept
+     * The model matrix of entities using the mesh must include {@link Mesh#getDequantization_transform()}.
+     */
+    INTERLEAVED_QUANTIZED(true, true);
+
+    private final boolean interleaved;
+    private final boolean quantized;
+
+    VertexFormat(boolean interleaved, boolean quantized){
+        this.interleaved = interleaved;
+        this.quantized = quantized;
+    }
+
+    public boolean isInterleaved() {
+        return interleaved;
+    }
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+    /**
+     * Returns the nº of bytes each vertex takes in this format.
+     * @param positionSize nº of components of each vertex position (2 or 3)
+     * @param hasNormals true if the vertices have normals
+     * @param hasTexCoords true if the vertices have tex coords
+     */
+    public int getBytesPerVertex(int positionSize, boolean hasNormals, boolean hasTexCoords){
+        if(quantized) return 4 * Short.BYTES + (hasNormals ? Integer.BYTES : 0) + (hasTexCoords ? 2 * Short.BYTES : 0);
+        return (positionSize + (hasNormals ? 3 : 0) + (hasTexCoords ? 2 : 0)) * Float.BYTES;
+    }
+
+    /**
+     * Quantize the given value in [0,1] to a normalised unsigned short.
+     */
+    static short toUnsignedNormShort(float value){
+        return (short) Math.round(Math.min(Math.max(value, 0.0f), 1.0f) * 65535.0f);
+    }
+
+    /**
+     * Pack the given normal into the GL_INT_2_10_10_10_REV format (x in the lowest 10 bits, then y, then z).
+     */
+    static int packNormal(float x, float y, float z){
+        return packSigned10(x) | (packSigned10(y) << 10) | (packSigned10(z) << 20);
+    }
+
+    private static int packSigned10(float value){
+        return Math.round(Math.min(Math.max(value, -1.0f), 1.0f) * 511.0f) & 0x3FF;
+    }
+
+    /**
+     * Convert the given float to a half float (IEEE 754 binary16), rounding to nearest.
+     * Values too large for a half float become infinity, & values too small become 0 (or subnormals).
+     */
+    static short toHalfFloat(float value){
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;  // re-biased exponent
+        int mantissa = bits & 0x7FFFFF;
+
+        if(((bits >>> 23) & 0xFF) == 0xFF) return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0)); // inf/NaN
+        if(exponent >= 0x1F) return (short) (sign | 0x7C00);   // overflow -> infinity
+        if(exponent <= 0){
+            if(exponent < -10) return (short) sign;             // underflow -> 0
+            mantissa |= 0x800000;                               // subnormal: make implicit 1 explicit
+            int shift = 14 - exponent;
+            int half = mantissa >>> shift;
+            if(((mantissa >>> (shift - 1)) & 1) != 0) half++;   // round
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >>> 13);
+        if((mantissa & 0x1000) != 0) half++;                    // round (may carry into exponent, which is correct)
+        return (short) half;
+    }
+}
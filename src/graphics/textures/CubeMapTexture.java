@@ -1,17 +1,26 @@
 package graphics.textures;
 
+import graphics.core.GLStateCache;
 import graphics.core.io.ImageData;
-import graphics.core.io.ImageLoader;
+import graphics.core.io.TextureLoader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL13.*;
 
 /**
  *  Represents a cubemap.
+ *  Its faces are streamed onto the GPU by the {@link TextureUploader}, & until they've all been uploaded the
+ *  cubemap is drawn w/a 1x1 (mid grey) placeholder cubemap.
  */
 public class CubeMapTexture {
     private String[] filenames;
     private int id;
+    private long sizeInBytes = 0;   // (estimated) GPU memory used by the texture
+    private boolean isUploaded = false; // if all the faces have been uploaded (else the placeholder is used)
 
     /**
      * @param filenames must be in the following order:
@@ -23,46 +32,78 @@ public class CubeMapTexture {
     }
 
     /**
-     * Load cubemap texture from images for all 6 files & create OpenGL texture object
+     * Create OpenGL texture object & load cubemap texture from images for all 6 files.
+     * The 6 images are decoded concurrently by {@link TextureLoader}, & streamed to the texture obj once all decoded.
      */
     private void loadTextures(){
         // create OpenGL texture obj (get it's id)
         id = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, id);  // bind texture
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, id);  // bind texture
+
+        // set the texture wrapping & filtering parameters
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, 0); // unbind texture
 
-        ImageLoader.setFlipVertically(false);    // must not flip imgs vertically
+        // load images from files (must not flip imgs vertically)
+        TextureLoader.load(filenames, false, false, this::uploadImages);
+    }
 
-        for(int n = 0; n < filenames.length; n++) {
-            // load image from file
-            ImageData imageData = ImageLoader.loadImage(filenames[n], false);
+    /**
+     * Allocate the storage of the faces of the cubemap texture obj for the given (decoded) images, & queue the
+     * images to be streamed to them.
+     */
+    private void uploadImages(ImageData[] images){
+        if (id == 0) return;    // deleted before its images were decoded
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, id);  // bind texture
 
-            // generate texture
+        List<TextureUploader.Region> regions = new ArrayList<>();
+        for(int n = 0; n < images.length; n++) {
+            // allocate texture storage
             /*
-             *  generate texture using glTexImage2D.
+             *  allocate texture storage using glTexImage2D (w/no data: it's uploaded by the TextureUploader).
              *  1st arg: texture target -- GL_TEXTURE_CUBE_MAP_POSITIVE_X + n
-             *          => will generate texture on the currently bound texture obj at the same target
+             *          => will allocate storage for the currently bound texture obj at the same target
              *          (target is GL_TEXTURE_CUBE_MAP_POSITIVE_X + n -- each int value of the enum  + n represents a dif cube face)
              */
             glTexImage2D(
                     GL_TEXTURE_CUBE_MAP_POSITIVE_X + n,
-                    0, GL_RGB, imageData.getWidth(), imageData.getHeight(),
-                    0, GL_RGB, GL_UNSIGNED_BYTE, imageData.getByteBuffer()
+                    0, GL_RGB, images[n].getWidth(), images[n].getHeight(),
+                    0, GL_RGB, GL_UNSIGNED_BYTE, (ByteBuffer) null
             );
+            regions.add(TextureUploader.Region.pixels(GL_TEXTURE_CUBE_MAP_POSITIVE_X + n, 0, GL_RGB,
+                    images[n].getWidth(), images[n].getHeight(), images[n].getByteBuffer()));
+            sizeInBytes += (long) images[n].getWidth() * images[n].getHeight() * 3;
         }
 
-        ImageLoader.setFlipVertically(true);   // set back to default
-
-        // set the texture wrapping & filtering parameters
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_WRAP_R, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        glTexParameteri(GL_TEXTURE_CUBE_MAP, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        GLStateCache.bindTexture(GL_TEXTURE_CUBE_MAP, 0); // unbind texture
+        TextureRegistry.addResidentBytes(sizeInBytes, 1);
+        TextureUploader.upload(id, GL_TEXTURE_CUBE_MAP, regions, () -> isUploaded = true);
+    }
 
-        glBindTexture(GL_TEXTURE_CUBE_MAP, 0); // unbind texture
+    /**
+     * Delete the OpenGL texture obj, freeing its GPU storage. The texture can't be used afterwards.
+     */
+    public void delete(){
+        if (id == 0) return;
+        TextureUploader.cancel(id);
+        GLStateCache.invalidate();  // (texture might be bound, & its id reused)
+        glDeleteTextures(id);
+        id = 0;
+        if (sizeInBytes != 0) TextureRegistry.addResidentBytes(-sizeInBytes, -1);
+        sizeInBytes = 0;
     }
 
+    /**
+     * Returns the id of the OpenGL texture obj to draw w/: the placeholder's until all the faces have been
+     * uploaded (0 once deleted).
+     */
     public int getHandle(){
-        return id;
+        if (id == 0 || isUploaded) return id;
+        return TexturePlaceholders.get(GL_TEXTURE_CUBE_MAP, TextureType.DIFFUSE);    // (mid grey)
     }
 }
@@ -1,20 +1,55 @@
 package graphics.textures;
 
+import graphics.core.GLStateCache;
 import graphics.core.io.ImageData;
-import graphics.core.io.ImageLoader;
+import graphics.core.io.TextureData;
+import graphics.core.io.TextureLoader;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.*;
+import static org.lwjgl.opengl.EXTTextureSRGB.*;
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_BASE_LEVEL;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL13.glCompressedTexImage2D;
 import static org.lwjgl.opengl.GL30.*;
 
 /**
  *  Represents a texture loaded from an image file.
+ *  Textures are reference counted by the materials that use them: a texture is deleted (& its GPU storage freed)
+ *  when the last material using it releases it. Textures shared between materials should be obtained from the
+ *  {@link TextureRegistry}, so that each image is only loaded once.
+ *  If the driver supports S3TC, textures are uploaded block compressed (BC1 for RGB, BC3 for RGBA) w/a mipmap
+ *  precomputed when the image is 1st loaded (& then cached on disk), instead of generating it at runtime.
+ *  Image data is streamed onto the GPU by the {@link TextureUploader} (a budget per frame), & until it's all been
+ *  uploaded the texture is drawn w/a 1x1 placeholder texture (e.g. grey for diffuse maps).
+ *  The finer mipmap levels of compressed textures are streamed in & out by the {@link TextureStreamer}, to keep
+ *  textures' GPU memory under a budget.
  */
 public class Texture {
+    private static boolean useCompression = true;   // if should use block compressed textures (when supported)
+
     private String filename;
     private int width;
     private int height;
     private int id;
     private TextureType type;
+    private long sizeInBytes = 0;   // (estimated) GPU memory used by the texture, incl. its mipmap
+    private int refCount = 0;       // nº of users (materials) of the texture
+    private String registryKey;     // key of the texture in the TextureRegistry (null if not shared through it)
+    private boolean isUploaded = false; // if all the texture's data has been uploaded (else the placeholder is used)
+
+    // --- streaming of mipmap levels (block compressed textures only, see TextureStreamer) ---
+    private TextureData compressedData;     // baked texture (backed by its cache file), to stream levels from
+    private int compressedFormat;
+    private int residentLevel = 0;          // finest mipmap level resident on the GPU (its GL_TEXTURE_BASE_LEVEL)
+    private boolean isLoadingLevels = false;    // if finer levels are being uploaded
+    private float demandedResolution = 0;   // max resolution (texels per tex coord unit) demanded by the entities using it
 
     public Texture(String filename, boolean isRGBA, TextureType type){
         this.filename = filename;
@@ -23,68 +58,305 @@ public class Texture {
     }
 
     /**
-     * Load texture image from specified file & create OpenGL texture object
+     * Create OpenGL texture object & load texture image from specified file.
+     * The image is decoded asynchronously by {@link TextureLoader}, & streamed to the texture obj by the
+     * {@link TextureUploader} once decoded (until then, the placeholder is used instead).
      */
     private void loadTexture(boolean isRGBA){
+        // create OpenGL texture obj (get it's id)
+        id = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_2D, id);  // bind texture
+
+        // set the texture wrapping & filtering parameters
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0); // unbind texture
+
+        // load image from file (block compressed w/a baked mipmap, if supported)
+        if (useCompression && isCompressionSupported(type == TextureType.DIFFUSE))
+            TextureLoader.loadCompressed(filename, isRGBA, type == TextureType.DIFFUSE, this::uploadCompressed);
+        else
+            TextureLoader.load(new String[]{filename}, isRGBA, true, images -> uploadImage(images[0], isRGBA));
+    }
 
-        // load image from file
-        ImageData imgData = ImageLoader.loadImage(filename, isRGBA);
+    /**
+     * Returns true if the driver supports the block compressed (S3TC) texture formats (& their sRGB variants, if sRGB).
+     */
+    private static boolean isCompressionSupported(boolean isSRGB){
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.GL_EXT_texture_compression_s3tc && (!isSRGB || caps.GL_EXT_texture_sRGB);
+    }
+
+    /**
+     * Allocate the texture obj's storage for the given (decoded) image, & queue the image to be streamed to it.
+     * Its mipmap is generated once the image has been uploaded.
+     */
+    private void uploadImage(ImageData imgData, boolean isRGBA){
+        if (id == 0) return;    // deleted before its image was decoded
         width = imgData.getWidth();
         height = imgData.getHeight();
+        int format = isRGBA ? GL_RGBA : GL_RGB;
 
-        // create OpenGL texture obj (get it's id)
-        id = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, id);  // bind texture
+        GLStateCache.bindTexture(GL_TEXTURE_2D, id);  // bind texture
 
-        // generate texture
+        // allocate texture storage
         /*
-         *  generate texture using glTexImage2D. Args:
-         *      - texture target: GL_TEXTURE_2D => will generate texture on the currently bound texture
+         *  allocate texture storage using glTexImage2D (w/no data: it's uploaded by the TextureUploader). Args:
+         *      - texture target: GL_TEXTURE_2D => will allocate storage for the currently bound texture
          *                                         obj at the same target (target is GL_TEXTURE_2D)
          *      - mipmap level (0 is base level)
          *      - format to store the texture in
          *      - width & height of the resulting texture
          *      - always 0
          *      - format and datatype of the source image
-         *      - actual image data
+         *      - no image data
          */
         if(type == TextureType.DIFFUSE) // tex in sRGB space -- so sRGB values transformed to linear before any calcs
-            glTexImage2D(GL_TEXTURE_2D, 0, (isRGBA ? GL_SRGB_ALPHA : GL_SRGB), width, height, 0, (isRGBA ? GL_RGBA : GL_RGB), GL_UNSIGNED_BYTE, imgData.getByteBuffer());
+            glTexImage2D(GL_TEXTURE_2D, 0, (isRGBA ? GL_SRGB_ALPHA : GL_SRGB), width, height, 0, format, GL_UNSIGNED_BYTE, (ByteBuffer) null);
         else // tex in linear space
-            glTexImage2D(GL_TEXTURE_2D, 0, (isRGBA ? GL_RGBA : GL_RGB), width, height, 0, (isRGBA ? GL_RGBA : GL_RGB), GL_UNSIGNED_BYTE, imgData.getByteBuffer());
-        glGenerateMipmap(GL_TEXTURE_2D);    // generate mipmap
+            glTexImage2D(GL_TEXTURE_2D, 0, format, width, height, 0, format, GL_UNSIGNED_BYTE, (ByteBuffer) null);
 
-        // set the texture wrapping & filtering parameters
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0); // unbind texture
+
+        // mipmap chain adds 1/3 of the base level's size
+        setSizeInBytes((long) width * height * (isRGBA ? 4 : 3) * 4 / 3);
 
-        glBindTexture(GL_TEXTURE_2D, 0); // unbind texture
+        List<TextureUploader.Region> regions = new ArrayList<>();
+        regions.add(TextureUploader.Region.pixels(GL_TEXTURE_2D, 0, format, width, height, imgData.getByteBuffer()));
+        TextureUploader.upload(id, GL_TEXTURE_2D, regions, () -> {
+            GLStateCache.bindTexture(GL_TEXTURE_2D, id);
+            glGenerateMipmap(GL_TEXTURE_2D);    // generate mipmap
+            GLStateCache.bindTexture(GL_TEXTURE_2D, 0);
+            isUploaded = true;
+        });
+    }
+
+    /**
+     * Allocate the texture obj's storage for the given block compressed texture, & queue its mipmap levels to be
+     * streamed to it. If texture streaming is enabled, only its coarsest levels are uploaded at first, & the
+     * {@link TextureStreamer} loads finer ones when they're needed.
+     */
+    private void uploadCompressed(TextureData data){
+        if (id == 0) return;    // deleted before its image was loaded
+        width = data.getWidth();
+        height = data.getHeight();
+        compressedData = data;
+
+        if(data.isSRGB()) // tex in sRGB space -- so sRGB values transformed to linear before any calcs
+            compressedFormat = data.hasAlpha() ? GL_COMPRESSED_SRGB_ALPHA_S3TC_DXT5_EXT : GL_COMPRESSED_SRGB_S3TC_DXT1_EXT;
+        else // tex in linear space
+            compressedFormat = data.hasAlpha() ? GL_COMPRESSED_RGBA_S3TC_DXT5_EXT : GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+
+        residentLevel = TextureStreamer.getInitialLevel(data.getNumOfLevels(), Math.max(width, height));
+        GLStateCache.bindTexture(GL_TEXTURE_2D, id);  // bind texture
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, residentLevel);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, data.getNumOfLevels() - 1);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0); // unbind texture
+
+        setSizeInBytes(getSizeOfLevels(residentLevel));
+        queueLevels(residentLevel, data.getNumOfLevels(), () -> isUploaded = true);
+        TextureRegistry.addCompressed(this);
+    }
+
+    /**
+     * Allocate the storage of the mipmap levels [from, to) of the (compressed) texture obj, & queue their data to
+     * be streamed to them.
+     */
+    private void queueLevels(int from, int to, Runnable onUploaded){
+        int blockSize = compressedData.hasAlpha() ? 16 : 8;
+        List<TextureUploader.Region> regions = new ArrayList<>();
+
+        GLStateCache.bindTexture(GL_TEXTURE_2D, id);  // bind texture
+        for (int level = from; level < to; level++) {
+            int levelWidth = compressedData.getLevelWidth(level), levelHeight = compressedData.getLevelHeight(level);
+            ByteBuffer levelData = compressedData.getLevel(level);
+            glCompressedTexImage2D(GL_TEXTURE_2D, level, compressedFormat, levelWidth, levelHeight, 0, levelData.remaining(), 0L);
+            regions.add(TextureUploader.Region.blocks(GL_TEXTURE_2D, level, compressedFormat, levelWidth, levelHeight, blockSize, levelData));
+        }
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0); // unbind texture
+
+        TextureUploader.upload(id, GL_TEXTURE_2D, regions, onUploaded);
+    }
+
+    /**
+     * Returns true if the texture's mipmap levels can be streamed in & out (i.e. it's block compressed, all its
+     * initial data has been uploaded, & no levels are being loaded).
+     */
+    boolean isStreamable(){
+        return compressedData != null && isUploaded && !isLoadingLevels;
+    }
+
+    int getNumOfLevels(){
+        return compressedData.getNumOfLevels();
+    }
+
+    int getResidentLevel(){
+        return residentLevel;
+    }
+
+    /**
+     * Returns the size of the mipmap levels from the given one down to 1x1, in bytes.
+     */
+    long getSizeOfLevels(int from){
+        long size = 0;
+        for (int level = from; level < compressedData.getNumOfLevels(); level++) size += compressedData.getLevel(level).remaining();
+        return size;
+    }
+
+    /**
+     * Make the mipmap levels from the given one resident: they're streamed in by the {@link TextureUploader}, &
+     * the texture's base level is only lowered to the given level once they've all been uploaded.
+     */
+    void loadLevels(int level){
+        if (level >= residentLevel || !isStreamable()) return;
+        isLoadingLevels = true;
+        setSizeInBytes(getSizeOfLevels(level));
+        queueLevels(level, residentLevel, () -> {
+            GLStateCache.bindTexture(GL_TEXTURE_2D, id);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, level);
+            GLStateCache.bindTexture(GL_TEXTURE_2D, 0);
+            residentLevel = level;
+            isLoadingLevels = false;
+        });
+    }
+
+    /**
+     * Evict the mipmap levels finer than the given one: the texture's base level is raised to it, & the finer
+     * levels are respecified as empty, freeing their storage.
+     */
+    void evictLevels(int level){
+        if (level <= residentLevel || !isStreamable()) return;
+        GLStateCache.bindTexture(GL_TEXTURE_2D, id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, level);
+        for (int l = residentLevel; l < level; l++) glCompressedTexImage2D(GL_TEXTURE_2D, l, compressedFormat, 0, 0, 0, 0, 0L);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0);
+        residentLevel = level;
+        setSizeInBytes(getSizeOfLevels(level));
+    }
+
+    /**
+     * Record that an entity using this texture needs (at least) the given resolution, in texels per tex coord unit.
+     */
+    void addDemand(float resolution){
+        demandedResolution = Math.max(demandedResolution, resolution);
+    }
+
+    /**
+     * Returns the max resolution demanded since the last call, & resets it.
+     */
+    float takeDemand(){
+        float demand = demandedResolution;
+        demandedResolution = 0;
+        return demand;
+    }
+
+    private void setSizeInBytes(long sizeInBytes){
+        TextureRegistry.addResidentBytes(sizeInBytes - this.sizeInBytes, this.sizeInBytes == 0 ? 1 : 0);
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    /**
+     * Add a user (e.g. a material) of this texture.
+     */
+    public void retain(){
+        refCount++;
+    }
+
+    /**
+     * Remove a user (e.g. a material) of this texture. When it has no users left, it's deleted.
+     */
+    public void release(){
+        if (refCount <= 0) throw new IllegalStateException("Texture " + filename + " released more times than retained");
+        if (--refCount == 0) delete();
+    }
+
+    /**
+     * Delete the OpenGL texture obj, freeing its GPU storage. The texture can't be used afterwards.
+     * (called automatically when the last user releases the texture)
+     */
+    public void delete(){
+        if (id == 0) return;
+        TextureUploader.cancel(id);
+        GLStateCache.invalidate();  // (texture might be bound, & its id reused)
+        glDeleteTextures(id);
+        id = 0;
+        if (sizeInBytes != 0) TextureRegistry.addResidentBytes(-sizeInBytes, -1);
+        sizeInBytes = 0;
+        TextureRegistry.remove(this);
+    }
+
+    /**
+     * Set the wrapping method to the given one (e.g. GL_REPEAT, GL_CLAMP_TO_EDGE)
+     */
+    void setTexWrap(int wrapMode){
+        GLStateCache.bindTexture(GL_TEXTURE_2D, id);  // bind texture
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, wrapMode);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, wrapMode);
+        GLStateCache.bindTexture(GL_TEXTURE_2D, 0); // unbind texture
     }
 
     /**
      * Set the wrapping method to GL_REPEAT
      */
     public void setTexWrapToRepeat(){
-        glBindTexture(GL_TEXTURE_2D, id);  // bind texture
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_REPEAT);
-        glBindTexture(GL_TEXTURE_2D, 0); // unbind texture
+        setTexWrap(GL_REPEAT);
     }
 
     /**
      * Set the wrapping method to GL_CLAMP_TO_EDGE
      */
     public void setTexWrapToClampToEdge(){
-        glBindTexture(GL_TEXTURE_2D, id);  // bind texture
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-        glBindTexture(GL_TEXTURE_2D, 0); // unbind texture
+        setTexWrap(GL_CLAMP_TO_EDGE);
+    }
+
+    /**
+     * Set whether textures created from now on should be block compressed w/a precomputed mipmap (if supported by
+     * the driver), or uploaded uncompressed w/a mipmap generated at runtime. (true by default)
+     */
+    public static void setUseCompression(boolean useCompression){
+        Texture.useCompression = useCompression;
     }
 
+    /**
+     * Returns the id of the OpenGL texture obj to draw w/: the placeholder's until all the image data has been
+     * uploaded (0 once deleted).
+     */
     public int getHandle(){
-        return id;
+        if (id == 0 || isUploaded) return id;
+        return TexturePlaceholders.get(GL_TEXTURE_2D, type);
+    }
+
+    /**
+     * Returns true if all the texture's image data has been uploaded (i.e. it's no longer drawn w/the placeholder).
+     */
+    public boolean isUploaded() {
+        return isUploaded;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    String getRegistryKey() {
+        return registryKey;
+    }
+    void setRegistryKey(String registryKey) {
+        this.registryKey = registryKey;
     }
 
     public TextureType getType() {
@@ -0,0 +1,195 @@
+package graphics.textures;
+
+import graphics.core.GLStateCache;
+import graphics.core.io.ImageData;
+import graphics.core.io.TextureLoader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ *  Represents a 2D array texture (GL_TEXTURE_2D_ARRAY): images of the same size & type, each loaded into a layer.
+ *  Materials using layers of the same arrays (see {@link TextureLayer}) bind the same texture objs, so their draws
+ *  can be batched (& instanced) together, w/the layer to sample passed per draw instead of binding another texture.
+ *  Textures are usually packed into arrays by a {@link TextureArrayPacker}.
+ *  Like textures, arrays are reference counted by the materials that use them, streamed onto the GPU by the
+ *  {@link TextureUploader}, & drawn w/a 1x1x1 placeholder until all their layers have been uploaded.
+ *  (layers are always uploaded uncompressed, w/a mipmap generated at runtime)
+ */
+public class TextureArray {
+    private static int numOfArrays = 0;
+    private final int arrayId = numOfArrays++;  // unique id (e.g. to batch the materials using the same arrays)
+
+    private final String[] filenames;   // image file of each layer
+    private final boolean isRGBA;
+    private final TextureType type;
+    private int width;
+    private int height;
+    private int id;
+    private long sizeInBytes = 0;   // (estimated) GPU memory used by the array, incl. its mipmap
+    private int refCount = 0;       // nº of users (materials) of the array
+    private boolean isUploaded = false; // if all the layers have been uploaded (else the placeholder is used)
+
+    /**
+     * @param filenames filenames/filepaths of the image files to load into the layers, in order (the images must
+     *                  all have the same size)
+     * @param isRGBA true if should interpret image data as RGBA instead of RGB
+     * @param type {@link TextureType} of all the layers
+     */
+    public TextureArray(String[] filenames, boolean isRGBA, TextureType type){
+        if (filenames.length == 0) throw new IllegalArgumentException("A texture array needs at least 1 layer");
+        this.filenames = filenames.clone();
+        this.isRGBA = isRGBA;
+        this.type = type;
+        loadTextures();
+    }
+
+    /**
+     * Create OpenGL texture object & load the layers' images from their files.
+     * The images are decoded concurrently by {@link TextureLoader}, & streamed to the texture obj once all decoded.
+     */
+    private void loadTextures(){
+        // create OpenGL texture obj (get it's id)
+        id = glGenTextures();
+        GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, id);  // bind texture
+
+        // set the texture wrapping & filtering parameters
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_REPEAT);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+
+        GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, 0); // unbind texture
+
+        TextureLoader.load(filenames, isRGBA, true, this::uploadImages);
+    }
+
+    /**
+     * Allocate the storage of all the layers of the array texture obj for the given (decoded) images, & queue the
+     * images to be streamed to them. Its mipmap is generated once they've all been uploaded.
+     * @throws IllegalArgumentException if the images don't all have the same size
+     */
+    private void uploadImages(ImageData[] images){
+        if (id == 0) return;    // deleted before its images were decoded
+        width = images[0].getWidth();
+        height = images[0].getHeight();
+        for (int i = 1; i < images.length; i++) {
+            if (images[i].getWidth() != width || images[i].getHeight() != height)
+                throw new IllegalArgumentException("Image " + filenames[i] + " isn't " + width + "x" + height + " like the other layers of its texture array");
+        }
+        int format = isRGBA ? GL_RGBA : GL_RGB;
+
+        // allocate the storage of all the layers (w/no data: it's uploaded by the TextureUploader)
+        GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, id);  // bind texture
+        if(type == TextureType.DIFFUSE) // tex in sRGB space -- so sRGB values transformed to linear before any calcs
+            glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, (isRGBA ? GL_SRGB_ALPHA : GL_SRGB), width, height, images.length, 0, format, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        else // tex in linear space
+            glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, format, width, height, images.length, 0, format, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, 0); // unbind texture
+
+        // mipmap chain adds 1/3 of the base level's size
+        sizeInBytes = (long) width * height * (isRGBA ? 4 : 3) * images.length * 4 / 3;
+        TextureRegistry.addResidentBytes(sizeInBytes, 1);
+
+        List<TextureUploader.Region> regions = new ArrayList<>();
+        for (int layer = 0; layer < images.length; layer++)
+            regions.add(TextureUploader.Region.pixelsOfLayer(GL_TEXTURE_2D_ARRAY, 0, layer, format, width, height, images[layer].getByteBuffer()));
+        TextureUploader.upload(id, GL_TEXTURE_2D_ARRAY, regions, () -> {
+            GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, id);
+            glGenerateMipmap(GL_TEXTURE_2D_ARRAY);  // generate mipmap (of every layer)
+            GLStateCache.bindTexture(GL_TEXTURE_2D_ARRAY, 0);
+            isUploaded = true;
+        });
+    }
+
+    /**
+     * Returns the index of the layer loaded from the given image file, or -1 if none is.
+     * @param filename filename/filepath of the image file, as given when creating the array
+     */
+    public int getLayer(String filename){
+        return Arrays.asList(filenames).indexOf(filename);
+    }
+
+    /**
+     * Add a user (e.g. a material) of this array.
+     */
+    public void retain(){
+        refCount++;
+    }
+
+    /**
+     * Remove a user (e.g. a material) of this array. When it has no users left, it's deleted.
+     */
+    public void release(){
+        if (refCount <= 0) throw new IllegalStateException("Texture array " + String.join(", ", filenames) + " released more times than retained");
+        if (--refCount == 0) delete();
+    }
+
+    /**
+     * Delete the OpenGL texture obj, freeing its GPU storage. The array can't be used afterwards.
+     * (called automatically when the last user releases the array)
+     */
+    public void delete(){
+        if (id == 0) return;
+        TextureUploader.cancel(id);
+        GLStateCache.invalidate();  // (texture might be bound, & its id reused)
+        glDeleteTextures(id);
+        id = 0;
+        if (sizeInBytes != 0) TextureRegistry.addResidentBytes(-sizeInBytes, -1);
+        sizeInBytes = 0;
+    }
+
+    /**
+     * Returns the id of the OpenGL texture obj to draw w/: the placeholder's until all the layers have been
+     * uploaded (0 once deleted).
+     */
+    public int getHandle(){
+        if (id == 0 || isUploaded) return id;
+        return TexturePlaceholders.get(GL_TEXTURE_2D_ARRAY, type);
+    }
+
+    /**
+     * Returns true if the array has been deleted (e.g. bc its last user released it).
+     */
+    boolean isDeleted(){
+        return id == 0;
+    }
+
+    public int getArrayId() {
+        return arrayId;
+    }
+
+    public boolean isUploaded() {
+        return isUploaded;
+    }
+
+    public int getNumOfLayers() {
+        return filenames.length;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public TextureType getType() {
+        return type;
+    }
+}
@@ -0,0 +1,146 @@
+package graphics.textures;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Packs the textures in a directory (e.g. ./resources/textures) into {@link TextureArray}s: images of the same size
+ * & type are grouped into the layers of the same array, so that materials using them can be batched together.
+ * The type of each image is guessed from its filename (see guessType()), & its size read from its header (without
+ * decoding it). Subdirectories (e.g. skyboxes) aren't packed.
+ * Each array is only created (& its images loaded) when a layer of it is 1st requested (see getLayer()).
+ * ! getLayer() & getLayers() must be called from the GL thread.
+ */
+public class TextureArrayPacker {
+
+    private final boolean isRGBA;
+    private final Map<String, List<String>> mapKeyToGroup = new TreeMap<>();    // group key (size & type) to the image files in the group
+    private final Map<String, String> mapFileToKey = new HashMap<>();           // (normalised) image file to the key of its group
+    private final Map<String, TextureArray> mapKeyToArray = new HashMap<>();    // group key to the group's array (once created)
+
+    /**
+     * Group the images in the given directory by size & type.
+     * @param directory path of the directory whose images to pack
+     * @param isRGBA true if should interpret image data as RGBA instead of RGB (for all the arrays)
+     * @throws RuntimeException if the directory can't be read
+     */
+    public TextureArrayPacker(String directory, boolean isRGBA){
+        this.isRGBA = isRGBA;
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(directory))) {
+            for (Path file : stream) if (Files.isRegularFile(file)) files.add(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read texture directory " + directory + ": " + e.getMessage(), e);
+        }
+        files.sort(null);   // (so that the layers are always in the same order)
+
+        for (Path file : files) {
+            int[] size = readImageSize(file);
+            if (size == null) continue;     // not an image
+            String key = size[0] + "x" + size[1] + "#" + guessType(file.getFileName().toString());
+            mapKeyToGroup.computeIfAbsent(key, k -> new ArrayList<>()).add(file.toString());
+            mapFileToKey.put(normalise(file.toString()), key);
+        }
+    }
+
+    /**
+     * Returns the width & height of the given image file, read from its header, or null if it isn't an image.
+     */
+    private static int[] readImageSize(Path file){
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            System.err.println("Couldn't read size of image " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Returns the type of texture the given image file is, from its name: specular (or metallic) maps, reflection
+     * & refraction maps have it in their names (e.g. container2_specular.png), anything else is a diffuse map.
+     */
+    static TextureType guessType(String filename){
+        String name = filename.toLowerCase();
+        if (name.contains("specular") || name.contains("metallic")) return TextureType.SPECULAR;
+        if (name.contains("reflection")) return TextureType.REFLECTION;
+        if (name.contains("refraction")) return TextureType.REFRACTION;
+        return TextureType.DIFFUSE;
+    }
+
+    private static String normalise(String filename){
+        return Paths.get(filename).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Returns the layer the given image file was packed into, creating its array if needed (or if it was deleted
+     * since, bc all its users released it).
+     * @param filename filename/filepath of an image file in the packed directory
+     * @return {@link TextureLayer} of the image, or null if it wasn't packed (e.g. it isn't in the directory)
+     */
+    public TextureLayer getLayer(String filename){
+        String key = mapFileToKey.get(normalise(filename));
+        if (key == null) return null;
+
+        List<String> group = mapKeyToGroup.get(key);
+        TextureArray array = mapKeyToArray.get(key);
+        if (array == null || array.isDeleted()) {
+            array = new TextureArray(group.toArray(new String[0]), isRGBA, TextureType.valueOf(key.substring(key.indexOf('#') + 1)));
+            mapKeyToArray.put(key, array);
+        }
+        for (int layer = 0; layer < group.size(); layer++) {
+            if (normalise(group.get(layer)).equals(normalise(filename))) return new TextureLayer(array, layer);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the layers the given image files were packed into (e.g. to create a material w/them).
+     * @throws IllegalArgumentException if an image file wasn't packed
+     */
+    public TextureLayer[] getLayers(String... filenames){
+        TextureLayer[] layers = new TextureLayer[filenames.length];
+        for (int i = 0; i < filenames.length; i++) {
+            layers[i] = getLayer(filenames[i]);
+            if (layers[i] == null) throw new IllegalArgumentException("Image " + filenames[i] + " wasn't packed into a texture array");
+        }
+        return layers;
+    }
+
+    /**
+     * Returns the nº of arrays the images are packed into (created or not).
+     */
+    public int getNumOfArrays(){
+        return mapKeyToGroup.size();
+    }
+
+    /**
+     * Returns a report of how the images were packed, e.g. "500x500 SPECULAR: 1 layers" for each array.
+     */
+    public String getReport(){
+        StringBuilder report = new StringBuilder("Texture arrays:");
+        for (Map.Entry<String, List<String>> entry : mapKeyToGroup.entrySet())
+            report.append("\n\t").append(entry.getKey().replace('#', ' ')).append(": ").append(entry.getValue().size()).append(" layers");
+        return report.toString();
+    }
+}
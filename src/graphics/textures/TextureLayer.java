@@ -0,0 +1,30 @@
+package graphics.textures;
+
+/**
+ * A layer of a {@link TextureArray}: what a material uses instead of a {@link Texture} when its textures are packed
+ * into arrays (see {@link TextureArrayPacker}).
+ * Materials using layers can only be drawn w/shaders that sample texture arrays (see the Material constructors).
+ */
+public class TextureLayer {
+    private final TextureArray array;
+    private final int layer;    // index of the layer in the array
+
+    public TextureLayer(TextureArray array, int layer){
+        if (layer < 0 || layer >= array.getNumOfLayers())
+            throw new IllegalArgumentException("Layer " + layer + " out of range for a texture array of " + array.getNumOfLayers() + " layers");
+        this.array = array;
+        this.layer = layer;
+    }
+
+    public TextureArray getArray() {
+        return array;
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+
+    public TextureType getType() {
+        return array.getType();
+    }
+}
@@ -0,0 +1,66 @@
+package graphics.textures;
+
+import graphics.core.GLStateCache;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE_CUBE_MAP_POSITIVE_X;
+import static org.lwjgl.opengl.GL21.GL_SRGB8;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+
+/**
+ * 1x1 placeholder textures, drawn instead of textures whose data hasn't been uploaded yet: mid grey for diffuse maps,
+ * black (no contribution) for the other types. There's 1 placeholder per texture target & type, created when 1st
+ * needed & shared by all the textures of that target & type.
+ * ! All methods must be called from the GL thread.
+ */
+class TexturePlaceholders {
+
+    // map of texture targets to the placeholder for each type
+    private static final Map<Integer, Map<TextureType, Integer>> mapTargetToPlaceholders = new HashMap<>();
+
+    /**
+     * Returns the placeholder for textures of the given target & type (created when 1st needed).
+     * @param target GL_TEXTURE_2D, GL_TEXTURE_2D_ARRAY (1 layer) or GL_TEXTURE_CUBE_MAP (stored linear, like cubemaps)
+     * @param type {@link TextureType} of the textures
+     * @return id of the placeholder's OpenGL texture obj
+     */
+    static int get(int target, TextureType type){
+        Map<TextureType, Integer> placeholders = mapTargetToPlaceholders.computeIfAbsent(target, t -> new EnumMap<>(TextureType.class));
+        Integer placeholder = placeholders.get(type);
+        if (placeholder == null) {
+            placeholder = create(target, type);
+            placeholders.put(type, placeholder);
+        }
+        return placeholder;
+    }
+
+    private static int create(int target, TextureType type){
+        byte value = type == TextureType.DIFFUSE ? (byte) 0x80 : 0;
+        ByteBuffer pixel = ByteBuffer.allocateDirect(3).put(0, value).put(1, value).put(2, value);
+        int internalFormat = type == TextureType.DIFFUSE && target != GL_TEXTURE_CUBE_MAP ? GL_SRGB8 : GL_RGB8;
+
+        int placeholder = glGenTextures();
+        GLStateCache.bindTexture(target, placeholder);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        if (target == GL_TEXTURE_2D_ARRAY) {
+            glTexImage3D(target, 0, internalFormat, 1, 1, 1, 0, GL_RGB, GL_UNSIGNED_BYTE, pixel);
+        } else if (target == GL_TEXTURE_CUBE_MAP) {
+            for (int n = 0; n < 6; n++)
+                glTexImage2D(GL_TEXTURE_CUBE_MAP_POSITIVE_X + n, 0, internalFormat, 1, 1, 0, GL_RGB, GL_UNSIGNED_BYTE, pixel);
+        } else {
+            glTexImage2D(target, 0, internalFormat, 1, 1, 0, GL_RGB, GL_UNSIGNED_BYTE, pixel);
+        }
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+        glTexParameteri(target, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(target, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        GLStateCache.bindTexture(target, 0);
+        return placeholder;
+    }
+}
@@ -0,0 +1,114 @@
+package graphics.textures;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL11.GL_REPEAT;
+
+/**
+ * Registry of shared textures, so that each image file is only loaded once (per format & sampler settings).
+ * Textures are reference counted by the materials that use them (see {@link Texture#retain()}), & deleted,
+ * freeing their GPU storage, when the last material using them releases them.
+ * Also keeps track of the GPU memory used by all textures (shared or not), & of the block compressed ones, whose
+ * mipmap levels are streamed by the {@link TextureStreamer}.
+ * ! All methods must be called from the GL thread.
+ */
+public class TextureRegistry {
+
+    // map of texture keys (filepath, format, type & wrapping method) to shared textures
+    private static final Map<String, Texture> mapKeyToTexture = new HashMap<>();
+
+    // block compressed textures (shared or not), whether any entity uses them or not
+    private static final Set<Texture> compressedTextures = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private static long residentBytes = 0;  // (estimated) GPU memory used by all textures
+    private static int numOfResidentTextures = 0;
+
+    /**
+     * Returns the shared texture for the given image file (w/GL_REPEAT wrapping), loading it if needed.
+     * @param filename filename/filepath of the image file
+     * @param isRGBA true if should interpret image data as RGBA instead of RGB
+     * @param type {@link TextureType} of the texture
+     * @return shared {@link Texture}
+     */
+    public static Texture get(String filename, boolean isRGBA, TextureType type){
+        return get(filename, isRGBA, type, GL_REPEAT);
+    }
+
+    /**
+     * Returns the shared texture for the given image file, loading it if needed.
+     * @param filename filename/filepath of the image file
+     * @param isRGBA true if should interpret image data as RGBA instead of RGB
+     * @param type {@link TextureType} of the texture
+     * @param wrapMode wrapping method of the texture (GL_REPEAT or GL_CLAMP_TO_EDGE)
+     * @return shared {@link Texture} (! mustn't be modified, e.g. its wrapping method, as it's shared)
+     */
+    public static Texture get(String filename, boolean isRGBA, TextureType type, int wrapMode){
+        String key = Paths.get(filename).toAbsolutePath().normalize() + "#" + (isRGBA ? "rgba" : "rgb") + "#" + type + "#" + wrapMode;
+        Texture texture = mapKeyToTexture.get(key);
+
+        if (texture == null) {
+            texture = new Texture(filename, isRGBA, type);
+            texture.setTexWrap(wrapMode);
+            texture.setRegistryKey(key);
+            mapKeyToTexture.put(key, texture);
+        }
+        return texture;
+    }
+
+    /**
+     * Remove the given (deleted) texture from the registry.
+     */
+    static void remove(Texture texture){
+        if (texture.getRegistryKey() != null) mapKeyToTexture.remove(texture.getRegistryKey());
+        compressedTextures.remove(texture);
+    }
+
+    /**
+     * Add the given block compressed texture to the textures whose levels are streamed (once its data is loaded).
+     */
+    static void addCompressed(Texture texture){
+        compressedTextures.add(texture);
+    }
+
+    /**
+     * Returns the block compressed textures (not deleted), shared or not.
+     */
+    static Set<Texture> getCompressedTextures(){
+        return compressedTextures;
+    }
+
+    /**
+     * Add the given nº of bytes to the GPU memory used by textures (negative when a texture is deleted).
+     */
+    static void addResidentBytes(long bytes, int numOfTextures){
+        residentBytes += bytes;
+        numOfResidentTextures += numOfTextures;
+    }
+
+    /**
+     * Returns the (estimated) GPU memory used by all textures, in bytes.
+     */
+    public static long getResidentBytes(){
+        return residentBytes;
+    }
+
+    /**
+     * Returns the nº of shared textures in the registry.
+     */
+    public static int getNumOfSharedTextures(){
+        return mapKeyToTexture.size();
+    }
+
+    /**
+     * Returns a report of the textures' memory, e.g. "Textures: 12 resident (8 shared), 45.3 MB".
+     */
+    public static String getReport(){
+        return String.format("Textures: %d resident (%d shared), %.1f MB",
+                numOfResidentTextures, mapKeyToTexture.size(), residentBytes / (1024.0 * 1024.0));
+    }
+}
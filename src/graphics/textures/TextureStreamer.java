@@ -0,0 +1,185 @@
+package graphics.textures;
+
+import graphics.renderEngine.RenderContext;
+import graphics.scene.DrawableEntity;
+import graphics.scene.Scene;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams the finer mipmap levels of (block compressed) textures in & out, so that the textures' GPU memory stays
+ * under a budget while each texture has the resolution needed to draw it.
+ * Each frame (see update()):
+ *      - the resolution demanded of each texture is estimated from the entities that use it: the nº of texels per
+ *        tex coord unit needed for 1 texel to cover ~1 pixel, from the entity's distance to the camera & its mesh's
+ *        UV density (tex coord units per world unit)
+ *      - each texture's target level is the coarsest one w/that resolution; if the targets don't fit in the budget,
+ *        all of them are made coarser (1 level at a time) until they do. Textures no entity demands (e.g. whose
+ *        entities were removed from the scene) target their coarsest level
+ *      - textures needing finer levels load them (through the {@link TextureUploader}, from their cache file), &
+ *        while over the budget, textures w/finer levels than their target evict them (see GL_TEXTURE_BASE_LEVEL),
+ *        the undemanded textures first
+ * The levels whose largest side is at most MIN_RESIDENT_RESOLUTION are always resident.
+ * Only textures baked into block compressed files are streamed; the others are always fully resident (& counted
+ * as such against the budget).
+ * ! All methods must be called from the GL thread.
+ */
+public class TextureStreamer {
+    private static final int MIN_RESIDENT_RESOLUTION = 64;  // largest side of the coarsest level ever evicted to
+    private static final float MIN_DISTANCE = 0.1f;         // (near plane)
+
+    private static boolean enabled = true;
+    private static long budget = 512L * 1024 * 1024;        // max GPU memory used by textures, in bytes
+
+    private static final List<DrawableEntity> entities = new ArrayList<>();
+    private static final Map<Texture, Integer> targetLevels = new IdentityHashMap<>();  // streamed textures & their target levels
+    private static final List<Texture> undemanded = new ArrayList<>();  // streamed textures no entity demanded (last update)
+    private static final Vector3f scale = new Vector3f();
+    private static int numOfLevelsEvicted = 0;  // nº of levels below the finest ones, over all streamed textures (last update)
+
+    /**
+     * Update the demand for each streamed texture from the given scene's entities, & load/evict their mipmap levels
+     * to match it while staying under the budget. Should be called once per frame, after the camera's render context
+     * has been set.
+     * @param scene {@link Scene} whose textures to stream
+     * @param screenHeight height of the screen, in pixels
+     */
+    public static void update(Scene scene, int screenHeight){
+        if (!enabled) return;
+
+        // --- demand: resolution needed by each entity from its distance & UV density ---
+        Vector3f cameraPos = RenderContext.getCameraPos();
+        float pixelsPerUnit = screenHeight * RenderContext.getProjMatrix().m11() * 0.5f;   // pixels per world unit at distance 1
+        entities.clear();
+        scene.queryAll(entities);
+        targetLevels.clear();
+        for (Texture texture : TextureRegistry.getCompressedTextures()) {
+            if (texture.isStreamable()) targetLevels.put(texture, 0);
+        }
+        for (DrawableEntity entity : entities) {
+            List<Texture> textures = entity.getShape().getMaterial().getTexturesList();
+            if (textures == null || !entity.isDrawable()) continue;
+
+            float distance = Math.max(distanceToBox(cameraPos, entity.getWorldBoundsMin(), entity.getWorldBoundsMax()), MIN_DISTANCE);
+            entity.getWorld_transform().getScale(scale);
+            float uvDensity = entity.getShape().getMesh().getUVDensity() / Math.max(scale.get(scale.maxComponent()), 1e-6f);
+            float resolution = uvDensity > 0.0f ? pixelsPerUnit / (distance * uvDensity) : Float.MAX_VALUE;
+
+            for (Texture texture : textures) {
+                if (texture.isStreamable()) texture.addDemand(resolution);
+            }
+        }
+
+        // --- targets: coarsest levels w/the resolution demanded, made coarser until they fit in the budget ---
+        long fixedBytes = TextureRegistry.getResidentBytes();   // (memory of the textures that aren't streamed)
+        undemanded.clear();
+        for (Map.Entry<Texture, Integer> entry : targetLevels.entrySet()) {
+            Texture texture = entry.getKey();
+            fixedBytes -= texture.getSizeInBytes();
+            float demand = texture.takeDemand();
+            if (demand == 0.0f) {   // not used by any drawable entity
+                entry.setValue(getCoarsestLevel(texture));
+                undemanded.add(texture);
+                continue;
+            }
+            float levels = (float) (Math.log(Math.max(texture.getWidth(), texture.getHeight()) / demand) / Math.log(2));
+            entry.setValue(Math.min((int) Math.max(Math.floor(levels), 0), getCoarsestLevel(texture)));
+        }
+        int bias = 0;
+        while (fixedBytes + getSizeOfTargets(bias) > budget && bias < 16) bias++;
+
+        // --- load/evict levels (undemanded textures evicted 1st, so that the others keep theirs if that's enough) ---
+        for (Texture texture : undemanded) {
+            if (TextureRegistry.getResidentBytes() <= budget) break;
+            texture.evictLevels(targetLevels.get(texture));
+        }
+        boolean overBudget = TextureRegistry.getResidentBytes() > budget;
+        numOfLevelsEvicted = 0;
+        for (Map.Entry<Texture, Integer> entry : targetLevels.entrySet()) {
+            Texture texture = entry.getKey();
+            int target = Math.min(entry.getValue() + bias, getCoarsestLevel(texture));
+            if (target < texture.getResidentLevel()) texture.loadLevels(target);
+            else if (target > texture.getResidentLevel() && overBudget) texture.evictLevels(target);
+            numOfLevelsEvicted += texture.getResidentLevel();
+        }
+    }
+
+    /**
+     * Returns the total size of the streamed textures' target levels, if made coarser by the given nº of levels.
+     */
+    private static long getSizeOfTargets(int bias){
+        long size = 0;
+        for (Map.Entry<Texture, Integer> entry : targetLevels.entrySet()) {
+            Texture texture = entry.getKey();
+            size += texture.getSizeOfLevels(Math.min(entry.getValue() + bias, getCoarsestLevel(texture)));
+        }
+        return size;
+    }
+
+    /**
+     * Returns the coarsest level the given texture's levels are ever evicted to (the 1st level whose largest side
+     * is at most MIN_RESIDENT_RESOLUTION).
+     */
+    private static int getCoarsestLevel(Texture texture){
+        return getCoarsestLevel(texture.getNumOfLevels(), Math.max(texture.getWidth(), texture.getHeight()));
+    }
+
+    private static int getCoarsestLevel(int numOfLevels, int maxResolution){
+        int level = 0;
+        while ((maxResolution >> level) > MIN_RESIDENT_RESOLUTION && level < numOfLevels - 1) level++;
+        return level;
+    }
+
+    /**
+     * Returns the 1st mipmap level to upload for a new texture w/the given nº of levels & largest side: its coarsest
+     * level if streaming is enabled (finer ones are loaded when needed), else 0.
+     */
+    static int getInitialLevel(int numOfLevels, int maxResolution){
+        return enabled ? getCoarsestLevel(numOfLevels, maxResolution) : 0;
+    }
+
+    /**
+     * Returns the distance from the given point to the given axis-aligned box (0 if inside it).
+     */
+    private static float distanceToBox(Vector3f point, Vector3f boxMin, Vector3f boxMax){
+        float dx = Math.max(Math.max(boxMin.x - point.x, point.x - boxMax.x), 0.0f);
+        float dy = Math.max(Math.max(boxMin.y - point.y, point.y - boxMax.y), 0.0f);
+        float dz = Math.max(Math.max(boxMin.z - point.z, point.z - boxMax.z), 0.0f);
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Set whether textures are streamed. Must be set before textures are created: when disabled, new textures
+     * are uploaded w/all their levels, & existing ones keep their current levels.
+     */
+    public static void setEnabled(boolean enabled){
+        TextureStreamer.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set the max GPU memory to be used by textures, in bytes.
+     */
+    public static void setBudget(long budget){
+        TextureStreamer.budget = budget;
+    }
+
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns a report of the streaming state, e.g. "Texture streaming: 12 textures, 5 levels evicted, budget 512.0 MB".
+     */
+    public static String getReport(){
+        return String.format("Texture streaming: %d textures, %d levels evicted, budget %.1f MB",
+                targetLevels.size(), numOfLevelsEvicted, budget / (1024.0 * 1024.0));
+    }
+}
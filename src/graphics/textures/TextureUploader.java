@@ -0,0 +1,272 @@
+package graphics.textures;
+
+import graphics.core.FrameStats;
+import graphics.core.GLStateCache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.glTexSubImage3D;
+import static org.lwjgl.opengl.GL13.glCompressedTexSubImage2D;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL21.GL_PIXEL_UNPACK_BUFFER;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * Streams texture data onto the GPU through a ring of pixel buffer objects (PBOs), so that uploading textures
+ * doesn't stall the GL thread while the driver copies the data from client memory.
+ * Each texture's data is split into strips of rows (or of rows of blocks, for compressed textures), each copied
+ * into the next PBO of the ring & then transferred into the texture by glTex(Compressed)SubImage2D from the PBO
+ * (glTexSubImage3D for a layer of a 2D array texture), which the driver does asynchronously. A PBO is only reused
+ * once the GPU is done w/its previous transfer (checked w/a fence, without waiting for it).
+ * At most a given nº of bytes is uploaded per frame (see uploadPending()), & textures are drawn w/a placeholder
+ * until all their data has been uploaded.
+ * ! All methods must be called from the GL thread.
+ */
+public class TextureUploader {
+    private static final int NUM_OF_BUFFERS = 3;                // nº of PBOs in the ring
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;     // size of each PBO (max bytes per strip)
+
+    private static int[] buffers;               // PBOs of the ring (created when 1st needed)
+    private static final long[] fences = new long[NUM_OF_BUFFERS];    // fence after each PBO's last transfer (0 if none)
+    private static int nextBuffer = 0;
+
+    private static final Deque<Upload> uploads = new ArrayDeque<>();  // textures being uploaded, in request order
+
+    /**
+     * Part of a texture to upload: a mipmap level of a 2D texture (or of a cubemap face, or of a layer of a 2D array texture).
+     */
+    static class Region {
+        final int target, level, format;    // target (e.g. GL_TEXTURE_2D), mipmap level & format of the data
+        final int layer;                    // layer of a 2D array texture (-1 if not an array texture)
+        final int width, height;
+        final boolean isCompressed;
+        final int rowsPerStripRow;          // rows of pixels per row of data (4 for rows of compressed blocks)
+        final int bytesPerRow;              // bytes per row of data
+        final ByteBuffer data;
+        int rowsUploaded = 0;               // rows of data uploaded so far
+
+        private Region(int target, int level, int layer, int format, int width, int height, boolean isCompressed,
+                       int rowsPerStripRow, int bytesPerRow, ByteBuffer data){
+            this.target = target;
+            this.level = level;
+            this.layer = layer;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.isCompressed = isCompressed;
+            this.rowsPerStripRow = rowsPerStripRow;
+            this.bytesPerRow = bytesPerRow;
+            this.data = data;
+        }
+
+        /**
+         * Returns a region of uncompressed pixels (1 byte per component, e.g. GL_RGB or GL_RGBA).
+         */
+        static Region pixels(int target, int level, int format, int width, int height, ByteBuffer pixels){
+            int numOfComponents = format == GL_RGBA ? 4 : 3;
+            return new Region(target, level, -1, format, width, height, false, 1, width * numOfComponents, pixels);
+        }
+
+        /**
+         * Returns a region of uncompressed pixels of the given layer of a 2D array texture (GL_TEXTURE_2D_ARRAY).
+         */
+        static Region pixelsOfLayer(int target, int level, int layer, int format, int width, int height, ByteBuffer pixels){
+            int numOfComponents = format == GL_RGBA ? 4 : 3;
+            return new Region(target, level, layer, format, width, height, false, 1, width * numOfComponents, pixels);
+        }
+
+        /**
+         * Returns a region of compressed blocks (4x4 pixels each) of the given compressed format.
+         */
+        static Region blocks(int target, int level, int compressedFormat, int width, int height, int blockSize, ByteBuffer blocks){
+            return new Region(target, level, -1, compressedFormat, width, height, true, 4, ((width + 3) / 4) * blockSize, blocks);
+        }
+
+        int getNumOfRows(){
+            return (height + rowsPerStripRow - 1) / rowsPerStripRow;
+        }
+    }
+
+    /**
+     * Regions of a texture obj being uploaded, & what to do once they've all been uploaded.
+     */
+    private static class Upload {
+        final int textureId, bindTarget;    // texture obj & the target to bind it to (e.g. GL_TEXTURE_2D or GL_TEXTURE_CUBE_MAP)
+        final List<Region> regions;
+        final Runnable onUploaded;
+        int currentRegion = 0;
+
+        Upload(int textureId, int bindTarget, List<Region> regions, Runnable onUploaded){
+            this.textureId = textureId;
+            this.bindTarget = bindTarget;
+            this.regions = regions;
+            this.onUploaded = onUploaded;
+        }
+    }
+
+    /**
+     * Queue the given regions to be uploaded to the given texture obj (whose storage must already be allocated).
+     * @param textureId id of the texture obj
+     * @param bindTarget target to bind the texture obj to (GL_TEXTURE_2D, GL_TEXTURE_2D_ARRAY or GL_TEXTURE_CUBE_MAP)
+     * @param regions regions to upload, in order
+     * @param onUploaded called once all the regions have been uploaded (e.g. to swap out the placeholder)
+     */
+    static void upload(int textureId, int bindTarget, List<Region> regions, Runnable onUploaded){
+        uploads.add(new Upload(textureId, bindTarget, regions, onUploaded));
+    }
+
+    /**
+     * Cancel the pending uploads to the given texture obj (e.g. bc it's being deleted).
+     */
+    static void cancel(int textureId){
+        uploads.removeIf(upload -> upload.textureId == textureId);
+    }
+
+    /**
+     * Upload pending texture data, until the given budget is used up or all PBOs are busy. Should be called once
+     * per frame. (at least 1 strip is uploaded if a PBO is free, even if it's larger than the budget)
+     * @param budget max nº of bytes to upload
+     * @return nº of bytes uploaded
+     */
+    public static long uploadPending(long budget){
+        return upload(budget, false);
+    }
+
+    /**
+     * Upload all pending texture data, waiting for the PBOs to be free if needed (e.g. at the end of the scene's
+     * setup, so that the 1st frame is drawn w/all its textures).
+     */
+    public static void finishUploads(){
+        upload(Long.MAX_VALUE, true);
+    }
+
+    /**
+     * Returns the nº of textures whose data is waiting to be uploaded.
+     */
+    public static int getNumOfPendingUploads(){
+        return uploads.size();
+    }
+
+    private static long upload(long budget, boolean wait){
+        if (uploads.isEmpty()) return 0;
+        if (buffers == null) createBuffers();
+
+        long uploaded = 0;
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);  // (rows of RGB pixels needn't be 4 byte aligned)
+        while (!uploads.isEmpty() && (uploaded == 0 || uploaded < budget)) {
+            Upload upload = uploads.peek();
+            Region region = upload.regions.get(upload.currentRegion);
+
+            // strip: as many rows as fit in a PBO & in the budget left (at least 1 row)
+            int maxRows = (int) Math.min(BUFFER_SIZE, budget - uploaded) / region.bytesPerRow;
+            int rows = Math.min(Math.max(1, maxRows), region.getNumOfRows() - region.rowsUploaded);
+            int stripSize = rows * region.bytesPerRow;
+
+            if (stripSize > BUFFER_SIZE) {
+                GLStateCache.bindTexture(upload.bindTarget, upload.textureId);
+                uploadStrip(region, rows, memSlice(region, stripSize));     // (row too large for a PBO: from client memory)
+            } else {
+                int buffer = acquireBuffer(wait);
+                if (buffer < 0) break;  // (all PBOs busy: carry on next frame)
+
+                GLStateCache.bindTexture(upload.bindTarget, upload.textureId);
+                glBindBuffer(GL_PIXEL_UNPACK_BUFFER, buffers[buffer]);
+                ByteBuffer mapped = glMapBufferRange(GL_PIXEL_UNPACK_BUFFER, 0, stripSize,
+                        GL_MAP_WRITE_BIT | GL_MAP_INVALIDATE_BUFFER_BIT | GL_MAP_UNSYNCHRONIZED_BIT);
+                if (mapped == null) throw new RuntimeException("Failed to map pixel buffer for texture upload");
+                mapped.put(memSlice(region, stripSize));
+                glUnmapBuffer(GL_PIXEL_UNPACK_BUFFER);
+                uploadStrip(region, rows, null);    // (from the bound PBO, at offset 0)
+                glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+                fences[buffer] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            }
+            GLStateCache.bindTexture(upload.bindTarget, 0);
+            uploaded += stripSize;
+
+            // move on to the next region/texture once uploaded
+            region.rowsUploaded += rows;
+            if (region.rowsUploaded == region.getNumOfRows() && ++upload.currentRegion == upload.regions.size()) {
+                uploads.poll();
+                upload.onUploaded.run();
+            }
+        }
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);  // (back to the default)
+
+        FrameStats.add(FrameStats.Counter.TEXTURE_BYTES_UPLOADED, uploaded);
+        return uploaded;
+    }
+
+    /**
+     * Returns the next strip of the given region's data (of the given size).
+     */
+    private static ByteBuffer memSlice(Region region, int size){
+        ByteBuffer slice = region.data.duplicate();
+        int offset = region.data.position() + region.rowsUploaded * region.bytesPerRow;
+        slice.position(offset).limit(offset + size);
+        return slice;
+    }
+
+    /**
+     * Transfer the next strip of the given region (of the given nº of rows) into the bound texture obj, from the
+     * given data, or from the bound PBO if null.
+     */
+    private static void uploadStrip(Region region, int rows, ByteBuffer data){
+        int yOffset = region.rowsUploaded * region.rowsPerStripRow;
+        int height = Math.min(rows * region.rowsPerStripRow, region.height - yOffset);
+        int size = rows * region.bytesPerRow;
+        if (region.isCompressed) {
+            if (data == null) glCompressedTexSubImage2D(region.target, region.level, 0, yOffset, region.width, height, region.format, size, 0L);
+            else glCompressedTexSubImage2D(region.target, region.level, 0, yOffset, region.width, height, region.format, data);
+        } else if (region.layer >= 0) {
+            if (data == null) glTexSubImage3D(region.target, region.level, 0, yOffset, region.layer, region.width, height, 1, region.format, GL_UNSIGNED_BYTE, 0L);
+            else glTexSubImage3D(region.target, region.level, 0, yOffset, region.layer, region.width, height, 1, region.format, GL_UNSIGNED_BYTE, data);
+        } else {
+            if (data == null) glTexSubImage2D(region.target, region.level, 0, yOffset, region.width, height, region.format, GL_UNSIGNED_BYTE, 0L);
+            else glTexSubImage2D(region.target, region.level, 0, yOffset, region.width, height, region.format, GL_UNSIGNED_BYTE, data);
+        }
+    }
+
+    /**
+     * Returns the index of the next PBO of the ring if the GPU is done w/it, else -1 (or waits for it, if wait).
+     */
+    private static int acquireBuffer(boolean wait){
+        int buffer = nextBuffer;
+        if (fences[buffer] != 0) {
+            int status = glClientWaitSync(fences[buffer], GL_SYNC_FLUSH_COMMANDS_BIT, wait ? Long.MAX_VALUE : 0);
+            if (status == GL_TIMEOUT_EXPIRED) return -1;
+            glDeleteSync(fences[buffer]);
+            fences[buffer] = 0;
+        }
+        nextBuffer = (nextBuffer + 1) % NUM_OF_BUFFERS;
+        return buffer;
+    }
+
+    private static void createBuffers(){
+        buffers = new int[NUM_OF_BUFFERS];
+        glGenBuffers(buffers);
+        for (int buffer : buffers) {
+            glBindBuffer(GL_PIXEL_UNPACK_BUFFER, buffer);
+            glBufferData(GL_PIXEL_UNPACK_BUFFER, BUFFER_SIZE, GL_STREAM_DRAW);
+        }
+        glBindBuffer(GL_PIXEL_UNPACK_BUFFER, 0);
+    }
+
+    /**
+     * Delete the PBOs of the ring (pending uploads are dropped).
+     */
+    public static void deleteBuffers(){
+        uploads.clear();
+        if (buffers == null) return;
+        for (int i = 0; i < NUM_OF_BUFFERS; i++) {
+            if (fences[i] != 0) glDeleteSync(fences[i]);
+            fences[i] = 0;
+        }
+        glDeleteBuffers(buffers);
+        buffers = null;
+    }
+}
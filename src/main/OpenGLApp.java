@@ -2,7 +2,11 @@ package main;
 
 import graphics.camera.Camera;
 import graphics.camera.CameraMovement;
+import graphics.core.FrameStats;
+import graphics.core.GLStateCache;
 import graphics.core.WindowManager;
+import graphics.core.io.ModelLoader;
+import graphics.core.io.TextureLoader;
 import graphics.lights.DirLight;
 import graphics.lights.FlashLight;
 import graphics.lights.PointLight;
@@ -15,11 +19,16 @@ import graphics.scene.DrawableEntity;
 import graphics.scene.Entity;
 import graphics.scene.Scene;
 import graphics.shapes.*;
+import graphics.shapes.meshes.VertexFormat;
 import graphics.shaders.Shader;
 import graphics.shaders.ShaderProgram;
 import graphics.textures.CubeMapTexture;
 import graphics.textures.Texture;
+import graphics.textures.TextureArrayPacker;
+import graphics.textures.TextureRegistry;
+import graphics.textures.TextureStreamer;
 import graphics.textures.TextureType;
+import graphics.textures.TextureUploader;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
@@ -48,7 +57,13 @@ class OpenGLApp {
     private ShaderProgram toDepthCubeMapShaderProgram;      // shader prog to use for rendering to depth texture
     private Scene scene;                                // scene to render
     private ScreenQuad screenQuad;                      // quad filling entire screen (scene displayed as it's colour texture...)
+    private TextureArrayPacker texturePacker;           // packs the textures into texture arrays (so materials can be batched)
+    private Shape cube;                                 // shape of the wooden cubes
+    private Material cubeMaterial, cubeLayersMaterial;  // material of the cubes w/textures & w/layers of texture arrays
 
+    final private long MESH_UPLOAD_BUDGET = 8 * 1024 * 1024;    // max bytes of mesh data uploaded per frame
+    final private long TEXTURE_UPLOAD_BUDGET = 8 * 1024 * 1024; // max bytes of texture data uploaded per frame
+    final private long TEXTURE_MEMORY_BUDGET = 512L * 1024 * 1024;  // max GPU memory used by (streamed) textures
     final private int SCR_WIDTH = WindowManager.getScrWidth();  // screen size settings
     final private int SCR_HEIGHT = WindowManager.getScrHeight();
 
@@ -67,11 +82,11 @@ class OpenGLApp {
         // --- GLFW window creation (& init GLFW context)---
         WindowManager.createWindow();
 
-        glEnable(GL_MULTISAMPLE);   // enable MSAA
-        glEnable(GL_DEPTH_TEST);    // enable depth testing
-        glEnable(GL_CULL_FACE);     // enable culling
-        glCullFace(GL_BACK);        // cull back faces
-        glFrontFace(GL_CCW);        // initially set front faces as those w/counter clockwise winding
+        GLStateCache.setEnabled(GL_MULTISAMPLE, true);  // enable MSAA
+        GLStateCache.setEnabled(GL_DEPTH_TEST, true);   // enable depth testing
+        GLStateCache.setEnabled(GL_CULL_FACE, true);    // enable culling
+        GLStateCache.cullFace(GL_BACK);                 // cull back faces
+        GLStateCache.frontFace(GL_CCW);                 // initially set front faces as those w/counter clockwise winding
 
         // --- callback functions registered after window is created & before render loop is init ---
         setCallbacks();
@@ -87,8 +102,10 @@ class OpenGLApp {
      * Create any shaders here.
      */
     private void setUpShaders() {
+        // (entity & shadow map shaders use the instanced vertex shaders, entities sharing a mesh & material are drawn together)
+
         // create (blinn-)phong shaders
-        Shader phong_vs = new Shader(GL_VERTEX_SHADER, "./resources/shaders/phong_shadowMaps_vs.glsl");
+        Shader phong_vs = new Shader(GL_VERTEX_SHADER, "./resources/shaders/phong_shadowMaps_instanced_vs.glsl");
         Shader phong_fs = new Shader(GL_FRAGMENT_SHADER, "./resources/shaders/blinnPhong_wReflectionRefraction_ALLshadowMaps_fs.glsl");
         phongShaderProgram = new ShaderProgram(phong_vs, phong_fs);
 
@@ -108,12 +125,12 @@ class OpenGLApp {
         quadShaderProgram = new ShaderProgram(quad_vs, quad_fs);
 
         // create to depth texture shaders
-        Shader toDepthMap_vs = new Shader(GL_VERTEX_SHADER, "./resources/shaders/toDepthMap_vs.glsl");
+        Shader toDepthMap_vs = new Shader(GL_VERTEX_SHADER, "./resources/shaders/toDepthMap_instanced_vs.glsl");
         Shader toDepthMap_fs = new Shader(GL_FRAGMENT_SHADER, "./resources/shaders/toDepthMap_fs.glsl");
         toDepthTexShaderProgram = new ShaderProgram(toDepthMap_vs, toDepthMap_fs);
 
         // create to depth cubemap shaders
-        Shader toDepthCubeMap_vs = new Shader(GL_VERTEX_SHADER, "./resources/shaders/toDepthCubeMap_vs.glsl");
+        Shader toDepthCubeMap_vs = new Shader(GL_VERTEX_SHADER, "./resources/shaders/toDepthCubeMap_instanced_vs.glsl");
         Shader toDepthCubeMap_fs = new Shader(GL_FRAGMENT_SHADER, "./resources/shaders/toDepthCubeMap_fs.glsl");
         Shader toDepthCubeMap_gs = new Shader(GL_GEOMETRY_SHADER, "./resources/shaders/toDepthCubeMap_gs.glsl");
         toDepthCubeMapShaderProgram = new ShaderProgram(toDepthCubeMap_vs, toDepthCubeMap_fs, toDepthCubeMap_gs);
@@ -123,6 +140,8 @@ class OpenGLApp {
      * Set-up the scene to render here.
      */
     private void setUpScene() {
+        TextureStreamer.setBudget(TEXTURE_MEMORY_BUDGET);
+
         // --- SET UP SKYBOX ---
         String filepath = "./resources/textures/sky_skybox/";
         String[] facesFileNames = new String[]{
@@ -204,14 +223,22 @@ class OpenGLApp {
 
         // --- SET UP ENTITIES ---
         // WOODEN CUBES
+        // (w/separate textures, or w/the layers the textures were packed into: toggled w/T)
         List<Texture> woodenCube_texList = Arrays.asList(
-                new Texture("./resources/textures/container2.png", false, TextureType.DIFFUSE),
-                new Texture("./resources/textures/container2_specular.png", false, TextureType.SPECULAR),
-                new Texture("./resources/textures/container2_reflection2.png", false, TextureType.REFLECTION)
+                TextureRegistry.get("./resources/textures/container2.png", false, TextureType.DIFFUSE),
+                TextureRegistry.get("./resources/textures/container2_specular.png", false, TextureType.SPECULAR),
+                TextureRegistry.get("./resources/textures/container2_reflection2.png", false, TextureType.REFLECTION)
         );
-        Material cubeMaterial = new ReflectiveMaterial(woodenCube_texList);
+        cubeMaterial = new ReflectiveMaterial(woodenCube_texList);
         cubeMaterial.setK_spec(0.5f);
-        Shape cube = new Cube(cubeMaterial);
+        texturePacker = new TextureArrayPacker("./resources/textures", false);
+        cubeLayersMaterial = new ReflectiveMaterial(texturePacker.getLayers(
+                "./resources/textures/container2.png",
+                "./resources/textures/container2_specular.png",
+                "./resources/textures/container2_reflection2.png"
+        ));
+        cubeLayersMaterial.setK_spec(0.5f);
+        cube = new Cube(cubeLayersMaterial, VertexFormat.INTERLEAVED_QUANTIZED);
 
         // calc local transform matrix for cube 1
         Matrix4f cube1_local_transform = new Matrix4f();
@@ -241,9 +268,10 @@ class OpenGLApp {
 
         // FLOOR PLANE
         //Shape square = new Square(new ReflectiveMaterial(0.2f, 0.8f, 0.01f, 4f, new Vector3f(51/255f, 56/255f, 62/255f), new Vector3f(1f)));
-        Texture woodenFloorTex = new Texture("./resources/textures/floor.png", true, TextureType.DIFFUSE);
+        Texture woodenFloorTex = TextureRegistry.get("./resources/textures/floor.png", true, TextureType.DIFFUSE);
         Shape square = new Square(
-                new Material(Arrays.asList(woodenFloorTex))
+                new Material(Arrays.asList(woodenFloorTex)),
+                VertexFormat.INTERLEAVED_QUANTIZED
         );
 
         // calc local transform matrix for square
@@ -265,7 +293,9 @@ class OpenGLApp {
                         new Vector3f(1.0f)//,
                         //1f
                         ),
-                true); // red glass dragon
+                true,
+                VertexFormat.INTERLEAVED_QUANTIZED, // quantized: half the vertex data
+                true);  // red glass dragon (streamed in once loaded)
 
 
         // calc local transform matrix for dragon
@@ -277,10 +307,9 @@ class OpenGLApp {
         Entity dragon = new DrawableEntity(null, dragon_local_transform, new Vector3f(0.25f), dragonShape);
 
         // GRASS
-        Texture grassTex = new Texture("./resources/textures/grass.png", true, TextureType.DIFFUSE);
-        grassTex.setTexWrapToClampToEdge();
+        Texture grassTex = TextureRegistry.get("./resources/textures/grass.png", true, TextureType.DIFFUSE, GL_CLAMP_TO_EDGE);
         Material grassMaterial = new Material(0.5f, 0.99f, 0.01f, 64f, Collections.singletonList(grassTex));
-        Shape grassShape = new Square(grassMaterial);
+        Shape grassShape = new Square(grassMaterial, VertexFormat.INTERLEAVED_QUANTIZED);
 
         List<Entity> grassEntities = new ArrayList<>();
         for(int i = 0; i < 3; i++){
@@ -298,6 +327,9 @@ class OpenGLApp {
         // --- CREATE SCENE ---
         scene = new Scene(components, dirLight, flashLight, pointLightsList, ambientIntensity, skybox);
 
+        // --- UPLOAD TEXTURES: wait for all textures (decoded concurrently) & upload them before the 1st frame
+        TextureLoader.finishLoading();
+        TextureUploader.finishUploads();
     }
 
     /**
@@ -311,8 +343,8 @@ class OpenGLApp {
         Renderer skyboxRenderer = new SkyboxRenderer(skyboxShaderProgram);
         ScreenQuadRenderer screenQuadRenderer = new ScreenQuadRenderer(quadShaderProgram);
         ToColourTextureRenderer toColourTextureRenderer = new ToColourTextureRenderer();
-        ToDepthTextureRenderer toDepthTextureRenderer = new ToDepthTextureRenderer(toDepthTexShaderProgram, 1024, 1024);
-        ToDepthCubeMapRenderer toDepthCubeMapRenderer = new ToDepthCubeMapRenderer(toDepthCubeMapShaderProgram, 1024, 1024);
+        ToDepthTextureRenderer toDepthTextureRenderer = new ToDepthTextureRenderer(toDepthTexShaderProgram, 1024, 1024, true);
+        ToDepthCubeMapRenderer toDepthCubeMapRenderer = new ToDepthCubeMapRenderer(toDepthCubeMapShaderProgram, 1024, 1024, true);
 
         // --------- SET UP SCENE ---------
         setUpScene();
@@ -375,7 +407,7 @@ class OpenGLApp {
         toDepthTextureRenderer.prepare(scene);
         toDepthCubeMapRenderer.prepare(scene);
 
-        entityRenderer = new EntityPhongWAllShadowMapsRenderer(phongShaderProgram, toDepthTextureRenderer.getDepthTex(), toDepthCubeMapRenderer.getDepthCubeMap());
+        entityRenderer = new EntityPhongWAllShadowMapsRenderer(phongShaderProgram, toDepthTextureRenderer.getDepthTex(), toDepthCubeMapRenderer.getDepthCubeMap(), true);
         entityRenderer.prepare(scene);
 
         lightSourceRenderer.prepare(scene);
@@ -402,6 +434,14 @@ class OpenGLApp {
             processAWSDInput(deltaTime);
             currentKeyFState = processFlashLightToggle(scene.getFlashLight(), currentKeyFState);
 
+            // --- upload asynchronously loaded meshes & textures (w/a budget per frame) ---
+            ModelLoader.uploadImportedMeshes(MESH_UPLOAD_BUDGET);
+            TextureLoader.uploadDecodedTextures();
+            TextureUploader.uploadPending(TEXTURE_UPLOAD_BUDGET);
+
+            // --- update scene ---
+            scene.updateWorldTransforms();
+
             // --- clear screen ---
             WindowManager.clearScreen();
 
@@ -420,6 +460,7 @@ class OpenGLApp {
             projection.setPerspective((float) Math.toRadians(camera.getFOV()), (float) SCR_WIDTH / SCR_HEIGHT, 0.1f, 100.0f);
 
             RenderContext.setContext(view, projection, camera.getCameraPos(), camera.getCameraFront());
+            TextureStreamer.update(scene, SCR_HEIGHT);   // (stream textures' mipmap levels in/out for this view)
 
             entityRenderer.render(scene);
             lightSourceRenderer.render(scene);
@@ -427,23 +468,31 @@ class OpenGLApp {
 
 
             // bind default framebuffer & render quad
-            glBindFramebuffer(GL_FRAMEBUFFER, 0);
-            glDisable(GL_DEPTH_TEST);       // so that screen-space quad isn't discarded bc of depth test
+            GLStateCache.bindFramebuffer(0);
+            GLStateCache.setEnabled(GL_DEPTH_TEST, false);  // so that screen-space quad isn't discarded bc of depth test
             // clear relevant buffers
             WindowManager.clearColour(1.0f, 1.0f, 1.0f); // optional, to correctly see quad in wireframe mode
             WindowManager.clearColourBuffer();
 
             screenQuadRenderer.render();    // render screen quad
-            glEnable(GL_DEPTH_TEST);
+            GLStateCache.setEnabled(GL_DEPTH_TEST, true);
 
 
+            FrameStats.endFrame();
+            GLStateCache.endFrame();
+
             // --- check events & swap buffers ---
             WindowManager.updateWindow();
             glfwPollEvents(); // checks if any events are triggered, updates window state, & calls corresponding funcs
         }
 
         glBindBuffer(GL_ARRAY_BUFFER, 0);    // unbind any VBO
-        glBindVertexArray(0);                       // unbind any VAO
+        GLStateCache.bindVertexArray(0);     // unbind any VAO
+
+        // de-allocate renderers' resources
+        entityRenderer.deallocateResources();
+        toDepthTextureRenderer.deallocateResources();
+        toDepthCubeMapRenderer.deallocateResources();
     }
 
     /**
@@ -453,7 +502,7 @@ class OpenGLApp {
         long win = WindowManager.getWindowHandle();
 
         // whenever window is resized, call given funct -- adjusts viewport
-        glfwSetFramebufferSizeCallback(win, (long window, int width, int height) -> glViewport(0, 0, width, height));
+        glfwSetFramebufferSizeCallback(win, (long window, int width, int height) -> GLStateCache.viewport(0, 0, width, height));
 
         // whenever key is pressed, repeated or released.
         glfwSetKeyCallback(win, (window, key, scancode, action, mods) -> {
@@ -465,6 +514,19 @@ class OpenGLApp {
                 if (action == GLFW_PRESS) glPolygonMode(GL_FRONT_AND_BACK, GL_LINE);
                 else if (action == GLFW_RELEASE) glPolygonMode(GL_FRONT_AND_BACK, GL_FILL);
             }
+            // toggle frustum culling when C is released
+            if (key == GLFW_KEY_C && action == GLFW_RELEASE) RenderContext.setFrustumCullingEnabled(!RenderContext.isFrustumCullingEnabled());
+            // toggle drawing the cubes w/layers of texture arrays (instead of separate textures) when T is released
+            if (key == GLFW_KEY_T && action == GLFW_RELEASE) cube.setMaterial(cube.getMaterial() == cubeMaterial ? cubeLayersMaterial : cubeMaterial);
+            // print the stats of the last frame when P is released
+            if (key == GLFW_KEY_P && action == GLFW_RELEASE) {
+                System.out.println(FrameStats.getLastFrameReport());
+                System.out.println(GLStateCache.getLastFrameReport());
+                System.out.println(TextureRegistry.getReport());
+                System.out.println(TextureStreamer.getReport());
+                System.out.println(ModelLoader.getReport());
+                System.out.println(texturePacker.getReport());
+            }
             // -> AWSD used to move camera (in processArrowsInput() method)
             // number keys used to set post-processing effects
             for(int i = 0; i < EffectsManager.getNumOfEffects(); i++){
@@ -525,6 +587,8 @@ class OpenGLApp {
 
         // de-allocate all resources
         scene.deallocateMeshResources();
+        scene.deallocateTextureResources();
+        TextureUploader.deleteBuffers();
         screenQuad.getMesh().deallocateResources();
         phongShaderProgram.delete();
         lightShaderProgram.delete();